@@ -0,0 +1,41 @@
+package mergesort;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+final class BenchmarkFiles {
+    private BenchmarkFiles() {
+    }
+
+    static File createDirectory() throws IOException {
+        return Files.createTempDirectory("mergesort-jmh").toFile();
+    }
+
+    static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    static MergeEngine<?> createMergeEngine(String mode) {
+        switch (mode) {
+            case "numbers":
+                return new LongMergeEngine(new DecimalLongConverter(), Long::compare);
+            case "raw":
+                return new ByteMergeEngine(new UnsignedByteComparator());
+            case "strings":
+                return new LineMergeEngine<>(line -> line, String::compareTo);
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+    }
+
+    static SortedDataGenerator.LineType getLineType(String mode) {
+        return mode.equals("numbers") ? SortedDataGenerator.LineType.NUMBERS : SortedDataGenerator.LineType.STRINGS;
+    }
+}
@@ -0,0 +1,92 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of converting a line and comparing it with the previous one, in lines per second,
+ * for the converters and comparators of the string and number modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConverterBenchmark {
+    private static final int LINES_NUMBER = 100_000;
+
+    private String[] numberLines = new String[LINES_NUMBER];
+    private ByteBuffer[] numberBuffers = new ByteBuffer[LINES_NUMBER];
+    private String[] stringLines = new String[LINES_NUMBER];
+    private ByteBuffer[] stringBuffers = new ByteBuffer[LINES_NUMBER];
+
+    private LineConverter<Long> boxedNumberConverter = line -> {
+        try {
+            return Long.parseLong(line);
+        } catch (NumberFormatException e) {
+            throw new LineConverterException(e);
+        }
+    };
+    private Comparator<Long> boxedNumberComparator = Long::compareTo;
+    private LongLineConverter numberConverter = new DecimalLongConverter();
+    private LongComparator numberComparator = Long::compare;
+    private Comparator<String> stringComparator = String::compareTo;
+    private ByteLineComparator byteComparator = new UnsignedByteComparator();
+
+    @Setup(Level.Trial)
+    public void generateLines() {
+        java.util.Random random = new java.util.Random(3);
+        for (int i = 0; i < LINES_NUMBER; ++i) {
+            numberLines[i] = Long.toString(random.nextLong());
+            numberBuffers[i] = ByteBuffer.wrap(numberLines[i].getBytes());
+            stringLines[i] = "https://example.com/data/" + Long.toHexString(random.nextLong());
+            stringBuffers[i] = ByteBuffer.wrap(stringLines[i].getBytes());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES_NUMBER)
+    public void boxedNumbers(Blackhole blackhole) throws LineConverterException {
+        Long prevValue = boxedNumberConverter.convertLine(numberLines[0]);
+        for (int i = 1; i < LINES_NUMBER; ++i) {
+            Long value = boxedNumberConverter.convertLine(numberLines[i]);
+            blackhole.consume(boxedNumberComparator.compare(prevValue, value));
+            prevValue = value;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES_NUMBER)
+    public void primitiveNumbers(Blackhole blackhole) throws LineConverterException {
+        ByteBuffer line = numberBuffers[0];
+        long prevValue = numberConverter.convertLine(line, 0, line.limit());
+        for (int i = 1; i < LINES_NUMBER; ++i) {
+            line = numberBuffers[i];
+            long value = numberConverter.convertLine(line, 0, line.limit());
+            blackhole.consume(numberComparator.compare(prevValue, value));
+            prevValue = value;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES_NUMBER)
+    public void strings(Blackhole blackhole) {
+        for (int i = 1; i < LINES_NUMBER; ++i) {
+            blackhole.consume(stringComparator.compare(stringLines[i - 1], stringLines[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES_NUMBER)
+    public void rawStrings(Blackhole blackhole) {
+        for (int i = 1; i < LINES_NUMBER; ++i) {
+            blackhole.consume(byteComparator.compare(stringBuffers[i - 1], stringBuffers[i]));
+        }
+    }
+}
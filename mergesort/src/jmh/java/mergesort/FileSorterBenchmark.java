@@ -0,0 +1,85 @@
+package mergesort;
+
+import mergesort.exceptions.FileMergerException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link FileSorter#mergeSortedFiles} over a matrix of file number, file size, size skew
+ * and ratio of lost (invalid and out-of-order) lines. Larger matrices can be run with -p.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileSorterBenchmark {
+    @Param({"strings", "raw", "numbers"})
+    private String mode;
+
+    @Param({"4", "64"})
+    private int filesNumber;
+
+    @Param({"100000"})
+    private int linesPerFile;
+
+    @Param({"0", "1"})
+    private double sizeSkew;
+
+    @Param({"0", "0.01"})
+    private double lostLinesRatio;
+
+    private File directory;
+    private String[] inputFilenames;
+    private String resultFilename;
+    private FileSorter<?> fileSorter;
+    private PrintStream standardErr;
+
+    @Setup(Level.Trial)
+    public void generateFiles() throws IOException {
+        directory = BenchmarkFiles.createDirectory();
+        SortedDataGenerator generator = new SortedDataGenerator(4, BenchmarkFiles.getLineType(mode));
+        generator.setInvalidLinesRatio(lostLinesRatio / 2);
+        generator.setUnorderedLinesRatio(lostLinesRatio / 2);
+
+        List<File> inputFiles = generator.generateFiles(directory, filesNumber, linesPerFile, sizeSkew);
+        inputFilenames = inputFiles.stream().map(File::getPath).toArray(String[]::new);
+        resultFilename = new File(directory, "result.txt").getPath();
+        fileSorter = createFileSorter(mode);
+
+        // the warnings about lost lines would be printed on every invocation
+        standardErr = System.err;
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        System.setErr(standardErr);
+        BenchmarkFiles.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void mergeSortedFiles() throws FileMergerException {
+        fileSorter.mergeSortedFiles(resultFilename, inputFilenames);
+    }
+
+    private static FileSorter<?> createFileSorter(String mode) {
+        switch (mode) {
+            case "numbers":
+                return FileSorter.forLongs(new DecimalLongConverter(), Long::compare);
+            case "raw":
+                return FileSorter.forByteStrings(new UnsignedByteComparator());
+            case "strings":
+                return new FileSorter<>(line -> line, String::compareTo);
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package mergesort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link MergeEngine#mergeTwoFiles} in merged lines per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MergeTwoFilesBenchmark {
+    private static final int LINES_PER_FILE = 500_000;
+
+    @Param({"strings", "raw", "numbers"})
+    private String mode;
+
+    private File directory;
+    private List<File> inputFiles;
+    private File resultFile;
+    private MergeEngine<?> mergeEngine;
+
+    @Setup(Level.Trial)
+    public void generateFiles() throws IOException {
+        directory = BenchmarkFiles.createDirectory();
+        inputFiles = new SortedDataGenerator(2, BenchmarkFiles.getLineType(mode))
+                .generateFiles(directory, 2, LINES_PER_FILE, 0);
+        resultFile = new File(directory, "result.txt");
+        mergeEngine = BenchmarkFiles.createMergeEngine(mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        BenchmarkFiles.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2 * LINES_PER_FILE)
+    public void mergeTwoFiles() throws IOException {
+        mergeEngine.mergeTwoFiles(resultFile, new FileSegment(inputFiles.get(0)), new FileSegment(inputFiles.get(1)),
+                new LostLinesReport(), new TaskStatistics(null, "merge"));
+    }
+}
@@ -0,0 +1,90 @@
+package mergesort;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates sorted test files. The same seed and parameters always produce the same files.
+ */
+public class SortedDataGenerator {
+    public enum LineType {
+        NUMBERS,
+        STRINGS
+    }
+
+    private static final long MAX_STEP = 1000;
+    private static final String STRING_PREFIX = "https://example.com/data/";
+
+    private Random random;
+    private LineType lineType;
+    private double invalidLinesRatio = 0;
+    private double unorderedLinesRatio = 0;
+
+    public SortedDataGenerator(long seed, LineType lineType) {
+        random = new Random(seed);
+        this.lineType = lineType;
+    }
+
+    public void setInvalidLinesRatio(double invalidLinesRatio) {
+        this.invalidLinesRatio = invalidLinesRatio;
+    }
+
+    public void setUnorderedLinesRatio(double unorderedLinesRatio) {
+        this.unorderedLinesRatio = unorderedLinesRatio;
+    }
+
+    /**
+     * Generates files whose sizes follow a power law: the i-th file (counting from 1) has
+     * linesPerFile / i^sizeSkew lines, so zero skew gives files of equal size.
+     */
+    public List<File> generateFiles(File directory, int filesNumber, int linesPerFile, double sizeSkew)
+            throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < filesNumber; ++i) {
+            File file = new File(directory, "sorted" + i + ".txt");
+            generateFile(file, (int) Math.max(1, linesPerFile / Math.pow(i + 1, sizeSkew)));
+            files.add(file);
+        }
+        return files;
+    }
+
+    public void generateFile(File file, int linesNumber) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+            long value = (long) (random.nextDouble() * MAX_STEP * linesNumber) - MAX_STEP * linesNumber / 2;
+            for (int i = 0; i < linesNumber; ++i) {
+                value += 1 + (long) (random.nextDouble() * MAX_STEP);
+
+                double lineKind = random.nextDouble();
+                if (lineKind < invalidLinesRatio) {
+                    writer.write(formatInvalidLine(value));
+                } else if (lineKind < invalidLinesRatio + unorderedLinesRatio) {
+                    writer.write(formatLine(value - MAX_STEP * (1 + random.nextInt(100))));
+                } else {
+                    writer.write(formatLine(value));
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    private String formatLine(long value) {
+        if (lineType == LineType.NUMBERS) {
+            return Long.toString(value);
+        }
+        // zero padding of a non-negative number keeps the lexicographic order equal to the numeric one
+        return STRING_PREFIX + String.format("%020d", value - Long.MIN_VALUE / 2);
+    }
+
+    private String formatInvalidLine(long value) {
+        if (lineType == LineType.NUMBERS) {
+            return "#" + value;
+        }
+        // any string is valid, so an empty line is used instead
+        return "";
+    }
+}
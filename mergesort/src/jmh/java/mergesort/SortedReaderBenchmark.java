@@ -0,0 +1,58 @@
+package mergesort;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Line throughput of the sorted file readers of every mode, in lines per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SortedReaderBenchmark {
+    private static final int LINES_NUMBER = 1_000_000;
+
+    @Param({"strings", "raw", "numbers"})
+    private String mode;
+
+    private File directory;
+    private File file;
+    private MergeEngine<?> mergeEngine;
+
+    @Setup(Level.Trial)
+    public void generateFile() throws IOException {
+        directory = BenchmarkFiles.createDirectory();
+        file = new File(directory, "sorted.txt");
+        new SortedDataGenerator(1, BenchmarkFiles.getLineType(mode)).generateFile(file, LINES_NUMBER);
+        mergeEngine = BenchmarkFiles.createMergeEngine(mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() {
+        BenchmarkFiles.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES_NUMBER)
+    public long readLines() throws IOException {
+        return readLines(mergeEngine, new FileSegment(file));
+    }
+
+    private static <R extends SortedReader> long readLines(MergeEngine<R> mergeEngine, FileSegment segment)
+            throws IOException {
+        long linesNumber = 0;
+        try (R reader = mergeEngine.openReader(segment, new TaskStatistics(null, "read"))) {
+            while (!reader.hasReachedEnd()) {
+                reader.moveToNextLineInOrder();
+                ++linesNumber;
+            }
+        }
+        return linesNumber;
+    }
+}
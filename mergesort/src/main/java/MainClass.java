@@ -3,27 +3,38 @@ import commandline.CommandLineData;
 import commandline.exceptions.CommandLineParsingException;
 import commandline.CommandLineProcessor;
 import mergesort.exceptions.FileMergerException;
-import mergesort.exceptions.LineConverterException;
+import mergesort.ByteLineComparator;
+import mergesort.CollationKeyComparator;
+import mergesort.DecimalLongConverter;
+import mergesort.DecimalStringComparator;
 import mergesort.FileSorter;
 import mergesort.LineConverter;
+import mergesort.LongComparator;
+import mergesort.LongLineConverter;
+import mergesort.PrefixComparator;
+import mergesort.StringPrefixComparator;
+import mergesort.UnsignedByteComparator;
 
-import java.util.Comparator;
+import java.nio.charset.Charset;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 
 public class MainClass {
     private static final int FAILURE_EXIT_CODE = 1;
 
-    private static final Comparator<String> stringComparator = String::compareTo;
-    private static final Comparator<Long> numberComparator = Long::compareTo;
+    private static final PrefixComparator<String> stringComparator = new StringPrefixComparator(false);
+    private static final PrefixComparator<String> caseInsensitiveComparator = new StringPrefixComparator(true);
+    private static final PrefixComparator<CollationKey> collationKeyComparator = new CollationKeyComparator();
+    private static final LongComparator numberComparator = Long::compare;
+    private static final ByteLineComparator rawStringComparator = new UnsignedByteComparator();
+    private static final ByteLineComparator decimalNumberComparator = new DecimalStringComparator();
 
     private static final LineConverter<String> stringExtractor = line -> line;
-    private static final LineConverter<Long> numberExtractor = line -> {
-        try {
-            return Long.parseLong(line);
-        } catch (NumberFormatException e) {
-            throw new LineConverterException(e);
-        }
-    };
+    private static final LongLineConverter numberExtractor = new DecimalLongConverter();
 
     public static void main(String[] args) {
         try {
@@ -34,14 +45,75 @@ public class MainClass {
             }
 
             FileSorter<?> fileSorter;
-            if (commandLineData.isStringFile()) {
+            if (commandLineData.isRawStrings()) {
+                fileSorter = FileSorter.forByteStrings(commandLineData.isAscendingOrder() ?
+                                                            rawStringComparator : rawStringComparator.reversed());
+            } else if (commandLineData.isDecimalNumbers()) {
+                fileSorter = FileSorter.forByteStrings(commandLineData.isAscendingOrder() ?
+                                                            decimalNumberComparator : decimalNumberComparator.reversed());
+            } else if (commandLineData.getLocale() != null) {
+                fileSorter = createCollatingSorter(commandLineData);
+            } else if (commandLineData.isStringFile()) {
+                PrefixComparator<String> lineComparator = commandLineData.isCaseInsensitive() ?
+                                                            caseInsensitiveComparator : stringComparator;
                 fileSorter = new FileSorter<>(stringExtractor, commandLineData.isAscendingOrder() ?
-                                                            stringComparator : stringComparator.reversed());
+                                                            lineComparator : lineComparator.reversed());
             } else {
-                fileSorter = new FileSorter<>(numberExtractor, commandLineData.isAscendingOrder() ?
+                fileSorter = FileSorter.forLongs(numberExtractor, commandLineData.isAscendingOrder() ?
                                                             numberComparator : numberComparator.reversed());
             }
 
+            fileSorter.setExternalSort(commandLineData.isSortRequired());
+            fileSorter.setInputTrusted(commandLineData.isInputTrusted());
+            if (commandLineData.getSortMemoryMb() > 0) {
+                fileSorter.setSortMemory(commandLineData.getSortMemoryMb() * 1024L * 1024L);
+            }
+            if (commandLineData.getMemoryMb() > 0) {
+                fileSorter.setMemoryBudget(commandLineData.getMemoryMb() * 1024L * 1024L);
+            }
+            fileSorter.setMaxFanIn(commandLineData.getMaxFanIn());
+            fileSorter.setRangePlanning(commandLineData.isRangePlanning());
+            fileSorter.setPartitionsNumber(commandLineData.getPartitionsNumber());
+            if (commandLineData.getThreadsNumber() > 0) {
+                fileSorter.setThreadsNumber(commandLineData.getThreadsNumber());
+            }
+            fileSorter.setIoParallelism(commandLineData.getIoParallelism());
+            fileSorter.setVirtualThreads(commandLineData.isVirtualThreads());
+            if (commandLineData.getBufferSizeKb() > 0) {
+                fileSorter.setBufferSize(commandLineData.getBufferSizeKb() * 1024);
+            }
+            fileSorter.setQueueDepth(commandLineData.getQueueDepth());
+            fileSorter.setAsynchronousIo(commandLineData.isAsyncIo());
+            fileSorter.setTemporaryCompression(commandLineData.isTemporaryCompression());
+            fileSorter.setOutputCompression(commandLineData.isOutputCompression());
+            fileSorter.setAppend(commandLineData.isAppend());
+            fileSorter.setIndexInterval(commandLineData.getIndexIntervalKb() * 1024);
+            fileSorter.setLimit(commandLineData.getLimit());
+            fileSorter.setKeyRange(commandLineData.getFromLine(), commandLineData.getToLine());
+            fileSorter.setTemporaryDirectories(commandLineData.getTemporaryDirectories());
+            fileSorter.setWorkDirectory(commandLineData.getWorkDirectory());
+            fileSorter.setJobDescription(getJobDescription(commandLineData));
+            fileSorter.setStatisticsFile(commandLineData.getStatisticsFilename());
+            fileSorter.setProgressInterval(commandLineData.getProgressInterval());
+            if (commandLineData.getWorkersNumber() > 1) {
+                fileSorter.setWorkerProcesses(commandLineData.getWorkersNumber(), buildWorkerCommand(commandLineData));
+            }
+            fileSorter.setWorker(commandLineData.isWorker());
+            for (Map.Entry<String, long[]> inputSegment : commandLineData.getInputSegments().entrySet()) {
+                fileSorter.setInputSegment(inputSegment.getKey(), inputSegment.getValue()[0],
+                        inputSegment.getValue()[1]);
+            }
+            Map.Entry<String, long[]> shardFromLine = commandLineData.getShardFromLine();
+            Map.Entry<String, long[]> shardToLine = commandLineData.getShardToLine();
+            if (shardFromLine != null || shardToLine != null) {
+                fileSorter.setShardRange(
+                        (shardFromLine != null) ? shardFromLine.getKey() : null,
+                        (shardFromLine != null) ? shardFromLine.getValue()[0] : 0,
+                        (shardFromLine != null) ? shardFromLine.getValue()[1] : 0,
+                        (shardToLine != null) ? shardToLine.getKey() : null,
+                        (shardToLine != null) ? shardToLine.getValue()[0] : 0,
+                        (shardToLine != null) ? shardToLine.getValue()[1] : 0);
+            }
             fileSorter.mergeSortedFiles(commandLineData.getOutputFilename(), commandLineData.getInputFiles());
         } catch (CommandLineParsingException e) {
             System.err.println(e.getMessage());
@@ -52,4 +124,51 @@ public class MainClass {
             System.exit(FAILURE_EXIT_CODE);
         }
     }
+
+    /**
+     * Creates a sorter which converts every line to the collation key of the locale once
+     * and compares the keys instead of collating the lines at every comparison.
+     */
+    private static FileSorter<CollationKey> createCollatingSorter(CommandLineData commandLineData) {
+        Collator collator = Collator.getInstance(commandLineData.getLocale());
+        if (commandLineData.isCaseInsensitive()) {
+            collator.setStrength(Collator.SECONDARY);
+        }
+        // collators are synchronized, so every merger thread converts lines with its own copy
+        ThreadLocal<Collator> collators = ThreadLocal.withInitial(() -> (Collator) collator.clone());
+        return new FileSorter<>(line -> collators.get().getCollationKey(line), commandLineData.isAscendingOrder() ?
+                                        collationKeyComparator : collationKeyComparator.reversed());
+    }
+
+    /**
+     * Builds the command starting a worker of a sharded merge: this class run by the same Java executable
+     * and class path as this process, decoding lines by the same charset.
+     */
+    private static List<String> buildWorkerCommand(CommandLineData commandLineData) {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-Dfile.encoding=" + Charset.defaultCharset().name());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MainClass.class.getName());
+        command.addAll(CommandLineProcessor.buildWorkerArguments(commandLineData));
+        return command;
+    }
+
+    /**
+     * Describes the type and the order of the lines for the journal of the work directory
+     * and the index of the output file.
+     */
+    private static String getJobDescription(CommandLineData commandLineData) {
+        String datatype = commandLineData.isRawStrings() ? "raw strings" :
+                commandLineData.isDecimalNumbers() ? "decimal numbers" :
+                commandLineData.isStringFile() ? "strings" : "numbers";
+        if (commandLineData.isCaseInsensitive()) {
+            datatype += " ignoring case";
+        }
+        if (commandLineData.getLocale() != null) {
+            datatype += " collated for " + commandLineData.getLocale().toLanguageTag();
+        }
+        return datatype + (commandLineData.isAscendingOrder() ? " ascending" : " descending");
+    }
 }
\ No newline at end of file
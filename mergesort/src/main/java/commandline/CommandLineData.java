@@ -1,12 +1,57 @@
 package commandline;
 
+import mergesort.FileSorter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
 public class CommandLineData {
+    public static final int DEFAULT_BUFFER_SIZE_KB = 64;
+    public static final int DEFAULT_QUEUE_DEPTH = 4;
+
     private boolean isAscendingOrder = false;
     private boolean isDescendingOrder = false;
     private boolean isStringFile = false;
     private boolean isNumberFile = false;
+    private boolean isRawStrings = false;
+    private boolean isDecimalNumbers = false;
+    private boolean isCaseInsensitive = false;
+    private Locale locale;
     private boolean isHelpRequired = false;
-
+    private boolean isSortRequired = false;
+    private boolean isInputTrusted = false;
+    private int sortMemoryMb = 0;
+    private int memoryMb = 0;
+    private int maxFanIn = FileSorter.DEFAULT_MAX_FAN_IN;
+    private int partitionsNumber = 1;
+    private int threadsNumber = 0;
+    private int ioParallelism = 0;
+    private boolean isVirtualThreads = false;
+    private boolean isAsyncIo = false;
+    private boolean isRangePlanning = false;
+    private boolean isTemporaryCompression = false;
+    private boolean isOutputCompression = false;
+    private List<String> temporaryDirectories = new ArrayList<>();
+    private String workDirectory;
+    private boolean isAppend = false;
+    private int indexIntervalKb = 0;
+    private long limit = 0;
+    private String fromLine;
+    private String toLine;
+    private int bufferSizeKb = 0;
+    private int queueDepth = DEFAULT_QUEUE_DEPTH;
+    private String statisticsFilename;
+    private int progressInterval = 0;
+    private int workersNumber = 1;
+    private boolean isWorker = false;
+    // the byte ranges {start, end} of the input files merged by a worker, by the file names
+    private Map<String, long[]> inputSegments = new HashMap<>();
+    // the lines bounding the key range [from, to) of a worker, as byte ranges {start, end} of files; null if open
+    private Map.Entry<String, long[]> shardFromLine;
+    private Map.Entry<String, long[]> shardToLine;
 
     private String outputFilename;
     private String[] inputFiles;
@@ -47,6 +92,38 @@ public class CommandLineData {
         isStringFile = false;
     }
 
+    public boolean isRawStrings() {
+        return isRawStrings;
+    }
+
+    void setRawStrings() {
+        isRawStrings = true;
+    }
+
+    public boolean isDecimalNumbers() {
+        return isDecimalNumbers;
+    }
+
+    void setDecimalNumbers() {
+        isDecimalNumbers = true;
+    }
+
+    public boolean isCaseInsensitive() {
+        return isCaseInsensitive;
+    }
+
+    void setCaseInsensitive() {
+        isCaseInsensitive = true;
+    }
+
+    public Locale getLocale() {
+        return locale;
+    }
+
+    void setLocale(Locale locale) {
+        this.locale = locale;
+    }
+
     public String getOutputFilename() {
         return outputFilename;
     }
@@ -63,6 +140,262 @@ public class CommandLineData {
         this.inputFiles = inputFiles;
     }
 
+    public boolean isSortRequired() {
+        return isSortRequired;
+    }
+
+    void setSortRequired() {
+        isSortRequired = true;
+    }
+
+    public boolean isInputTrusted() {
+        return isInputTrusted;
+    }
+
+    void setInputTrusted() {
+        isInputTrusted = true;
+    }
+
+    /**
+     * Returns 0 if the sort memory has not been specified.
+     */
+    public int getSortMemoryMb() {
+        return sortMemoryMb;
+    }
+
+    void setSortMemoryMb(int sortMemoryMb) {
+        this.sortMemoryMb = sortMemoryMb;
+    }
+
+    /**
+     * Returns 0 if the memory budget has not been specified.
+     */
+    public int getMemoryMb() {
+        return memoryMb;
+    }
+
+    void setMemoryMb(int memoryMb) {
+        this.memoryMb = memoryMb;
+    }
+
+    public int getMaxFanIn() {
+        return maxFanIn;
+    }
+
+    void setMaxFanIn(int maxFanIn) {
+        this.maxFanIn = maxFanIn;
+    }
+
+    public int getPartitionsNumber() {
+        return partitionsNumber;
+    }
+
+    void setPartitionsNumber(int partitionsNumber) {
+        this.partitionsNumber = partitionsNumber;
+    }
+
+    /**
+     * Returns 0 if the number of threads is not specified.
+     */
+    public int getThreadsNumber() {
+        return threadsNumber;
+    }
+
+    void setThreadsNumber(int threadsNumber) {
+        this.threadsNumber = threadsNumber;
+    }
+
+    /**
+     * Returns 0 if I/O parallelism is not limited.
+     */
+    public int getIoParallelism() {
+        return ioParallelism;
+    }
+
+    void setIoParallelism(int ioParallelism) {
+        this.ioParallelism = ioParallelism;
+    }
+
+    public boolean isVirtualThreads() {
+        return isVirtualThreads;
+    }
+
+    void setVirtualThreads() {
+        isVirtualThreads = true;
+    }
+
+    public boolean isAsyncIo() {
+        return isAsyncIo;
+    }
+
+    void setAsyncIo() {
+        isAsyncIo = true;
+    }
+
+    public boolean isRangePlanning() {
+        return isRangePlanning;
+    }
+
+    void setRangePlanning() {
+        isRangePlanning = true;
+    }
+
+    public boolean isTemporaryCompression() {
+        return isTemporaryCompression;
+    }
+
+    void setTemporaryCompression() {
+        isTemporaryCompression = true;
+    }
+
+    public boolean isOutputCompression() {
+        return isOutputCompression;
+    }
+
+    void setOutputCompression() {
+        isOutputCompression = true;
+    }
+
+    /**
+     * Returns 0 if the buffer size has not been specified.
+     */
+    public int getBufferSizeKb() {
+        return bufferSizeKb;
+    }
+
+    void setBufferSizeKb(int bufferSizeKb) {
+        this.bufferSizeKb = bufferSizeKb;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    public boolean isAppend() {
+        return isAppend;
+    }
+
+    void setAppend() {
+        isAppend = true;
+    }
+
+    /**
+     * Returns 0 if the number of lines is not limited.
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    void setLimit(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Returns null if the lines are not bounded from below.
+     */
+    public String getFromLine() {
+        return fromLine;
+    }
+
+    void setFromLine(String fromLine) {
+        this.fromLine = fromLine;
+    }
+
+    /**
+     * Returns null if the lines are not bounded from above.
+     */
+    public String getToLine() {
+        return toLine;
+    }
+
+    void setToLine(String toLine) {
+        this.toLine = toLine;
+    }
+
+    public int getIndexIntervalKb() {
+        return indexIntervalKb;
+    }
+
+    void setIndexIntervalKb(int indexIntervalKb) {
+        this.indexIntervalKb = indexIntervalKb;
+    }
+
+    public List<String> getTemporaryDirectories() {
+        return temporaryDirectories;
+    }
+
+    void setTemporaryDirectories(List<String> temporaryDirectories) {
+        this.temporaryDirectories = temporaryDirectories;
+    }
+
+    public String getWorkDirectory() {
+        return workDirectory;
+    }
+
+    void setWorkDirectory(String workDirectory) {
+        this.workDirectory = workDirectory;
+    }
+
+    public String getStatisticsFilename() {
+        return statisticsFilename;
+    }
+
+    void setStatisticsFilename(String statisticsFilename) {
+        this.statisticsFilename = statisticsFilename;
+    }
+
+    public int getProgressInterval() {
+        return progressInterval;
+    }
+
+    void setProgressInterval(int progressInterval) {
+        this.progressInterval = progressInterval;
+    }
+
+    public int getWorkersNumber() {
+        return workersNumber;
+    }
+
+    void setWorkersNumber(int workersNumber) {
+        this.workersNumber = workersNumber;
+    }
+
+    public boolean isWorker() {
+        return isWorker;
+    }
+
+    void setWorker() {
+        isWorker = true;
+    }
+
+    public Map<String, long[]> getInputSegments() {
+        return inputSegments;
+    }
+
+    void addInputSegment(String filename, long start, long end) {
+        inputSegments.put(filename, new long[] {start, end});
+    }
+
+    public Map.Entry<String, long[]> getShardFromLine() {
+        return shardFromLine;
+    }
+
+    void setShardFromLine(Map.Entry<String, long[]> shardFromLine) {
+        this.shardFromLine = shardFromLine;
+    }
+
+    public Map.Entry<String, long[]> getShardToLine() {
+        return shardToLine;
+    }
+
+    void setShardToLine(Map.Entry<String, long[]> shardToLine) {
+        this.shardToLine = shardToLine;
+    }
+
     public boolean isHelpRequired() {
         return isHelpRequired;
     }
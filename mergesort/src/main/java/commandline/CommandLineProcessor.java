@@ -1,10 +1,14 @@
 package commandline;
 
 import commandline.exceptions.CommandLineParsingException;
+import mergesort.FileSorter;
 import org.apache.commons.cli.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Locale;
 
 public class CommandLineProcessor {
     private static final String STRING_DATATYPE_OPTION = "s";
@@ -19,10 +23,157 @@ public class CommandLineProcessor {
     private static final String DESCENDING_ORDER_OPTION = "d";
     private static final String DESCENDING_ORDER_OPTION_DESCRIPTION = "sort in descending order";
 
+    private static final String RAW_OPTION = "raw";
+    private static final String RAW_OPTION_DESCRIPTION = "compare strings as raw UTF-8 bytes without decoding them";
+
+    private static final String DECIMAL_OPTION = "decimal";
+    private static final String DECIMAL_OPTION_DESCRIPTION = "compare numbers of any length, with optional " +
+            "fractions, digit by digit without parsing them";
+
+    private static final String IGNORE_CASE_OPTION = "ignore-case";
+    private static final String IGNORE_CASE_OPTION_DESCRIPTION = "compare strings ignoring the case of letters";
+
+    private static final String LOCALE_OPTION = "locale";
+    private static final String LOCALE_OPTION_ARGUMENT = "tag";
+    private static final String LOCALE_OPTION_DESCRIPTION = "compare strings by the collation rules of the locale " +
+            "with the given language tag, such as de-DE";
+
+    private static final String SORT_OPTION = "sort";
+    private static final String SORT_OPTION_DESCRIPTION = "sort unsorted input files instead of skipping " +
+            "out-of-order lines";
+
+    private static final String TRUSTED_OPTION = "trusted";
+    private static final String TRUSTED_OPTION_DESCRIPTION = "trust input files to be sorted and valid: " +
+            "lines are not checked and runs of lines are copied as raw bytes";
+
+    private static final String SORT_MEMORY_OPTION = "sort-memory";
+    private static final String SORT_MEMORY_OPTION_ARGUMENT = "MiB";
+    private static final String SORT_MEMORY_OPTION_DESCRIPTION = "memory used to sort a run of lines with --" +
+            SORT_OPTION + " (a quarter of the maximum heap size by default)";
+
+    private static final String MEMORY_OPTION = "memory";
+    private static final String MEMORY_OPTION_ARGUMENT = "MiB";
+    private static final String MEMORY_OPTION_DESCRIPTION = "memory budget for buffers and sorting runs; " +
+            "the buffer size, the fan-in and the number of mergers running at once are fitted into it";
+
+    private static final String FAN_IN_OPTION = "fan-in";
+    private static final String FAN_IN_OPTION_ARGUMENT = "n";
+    private static final String FAN_IN_OPTION_DESCRIPTION = "maximum number of files merged at once; " +
+            "more input files are merged in several passes (" + FileSorter.DEFAULT_MAX_FAN_IN + " by default)";
+
+    private static final String RANGE_PLAN_OPTION = "range-plan";
+    private static final String RANGE_PLAN_OPTION_DESCRIPTION = "plan mergers by the key ranges of the input files, " +
+            "concatenating the files whose ranges do not overlap instead of merging them";
+
+    private static final String PARTITIONS_OPTION = "partitions";
+    private static final String PARTITIONS_OPTION_ARGUMENT = "n";
+    private static final String PARTITIONS_OPTION_DESCRIPTION = "split the final merger into n key ranges " +
+            "merged in parallel (1 by default)";
+
+    private static final String THREADS_OPTION = "threads";
+    private static final String THREADS_OPTION_ARGUMENT = "n";
+    private static final String THREADS_OPTION_DESCRIPTION = "maximum number of mergers running at once " +
+            "(the number of processors by default)";
+
+    private static final String IO_PARALLELISM_OPTION = "io-parallelism";
+    private static final String IO_PARALLELISM_OPTION_ARGUMENT = "n";
+    private static final String IO_PARALLELISM_OPTION_DESCRIPTION = "maximum number of file reads and writes " +
+            "issued at once, including the loads of memory-mapped windows (unlimited by default)";
+
+    private static final String VIRTUAL_THREADS_OPTION = "virtual-threads";
+    private static final String VIRTUAL_THREADS_OPTION_DESCRIPTION = "run mergers and background I/O " +
+            "in virtual threads (Java 21 or newer)";
+
+    private static final String ASYNC_IO_OPTION = "async-io";
+    private static final String ASYNC_IO_OPTION_DESCRIPTION = "read input files ahead and write output files " +
+            "in background threads";
+
+    private static final String COMPRESS_TEMP_OPTION = "compress-temp";
+    private static final String COMPRESS_TEMP_OPTION_DESCRIPTION = "compress temporary files of intermediate mergers";
+
+    private static final String COMPRESS_OUTPUT_OPTION = "compress-output";
+    private static final String COMPRESS_OUTPUT_OPTION_DESCRIPTION = "write the output file compressed with gzip";
+
+    private static final String APPEND_OPTION = "append";
+    private static final String APPEND_OPTION_DESCRIPTION = "merge the input files into the existing sorted " +
+            "output file, merging again only its part after the first lines of the input files";
+
+    private static final String INDEX_INTERVAL_OPTION = "index-interval";
+    private static final String INDEX_INTERVAL_OPTION_ARGUMENT = "KiB";
+    private static final String INDEX_INTERVAL_OPTION_DESCRIPTION = "write a sparse index of the output file " +
+            "next to it, with an entry every given number of KiB (used by --" + APPEND_OPTION + ")";
+
+    private static final String LIMIT_OPTION = "limit";
+    private static final String LIMIT_OPTION_ARGUMENT = "n";
+    private static final String LIMIT_OPTION_DESCRIPTION = "write only the first n merged lines, " +
+            "stopping the merger as soon as they are written";
+
+    private static final String FROM_OPTION = "from";
+    private static final String FROM_OPTION_ARGUMENT = "line";
+    private static final String FROM_OPTION_DESCRIPTION = "write only the lines going after the given one " +
+            "or equal to it; sorted input files are searched for it instead of being read from the beginning";
+
+    private static final String TO_OPTION = "to";
+    private static final String TO_OPTION_ARGUMENT = "line";
+    private static final String TO_OPTION_DESCRIPTION = "write only the lines going before the given one " +
+            "or equal to it, stopping the merger at the first greater line";
+
+    private static final String TMPDIR_OPTION = "tmpdir";
+    private static final String TMPDIR_OPTION_ARGUMENT = "dir";
+    private static final String TMPDIR_OPTION_DESCRIPTION = "directory of temporary files; repeated, it spreads " +
+            "them over several directories or devices (the default temporary directory by default)";
+
+    private static final String WORK_DIR_OPTION = "work-dir";
+    private static final String WORK_DIR_OPTION_ARGUMENT = "dir";
+    private static final String WORK_DIR_OPTION_DESCRIPTION = "keep temporary files and a journal of completed " +
+            "mergers in the directory, so that an interrupted job restarted with it resumes";
+
+    private static final String BUFFER_SIZE_OPTION = "buffer-size";
+    private static final String BUFFER_SIZE_OPTION_ARGUMENT = "KiB";
+    private static final String BUFFER_SIZE_OPTION_DESCRIPTION = "size of read and write buffers in KiB (" +
+            CommandLineData.DEFAULT_BUFFER_SIZE_KB + " by default, fitted into --" + MEMORY_OPTION + " if it is given)";
+
+    private static final String QUEUE_DEPTH_OPTION = "queue-depth";
+    private static final String QUEUE_DEPTH_OPTION_ARGUMENT = "n";
+    private static final String QUEUE_DEPTH_OPTION_DESCRIPTION = "number of buffers read ahead or written behind " +
+            "per file with --" + ASYNC_IO_OPTION + " (" + CommandLineData.DEFAULT_QUEUE_DEPTH + " by default)";
+
+    private static final String STATS_OPTION = "stats";
+    private static final String STATS_OPTION_ARGUMENT = "file";
+    private static final String STATS_OPTION_DESCRIPTION = "write a JSON report with line, byte and time counters " +
+            "of the merger to the file";
+
+    private static final String PROGRESS_OPTION = "progress";
+    private static final String PROGRESS_OPTION_ARGUMENT = "seconds";
+    private static final String PROGRESS_OPTION_DESCRIPTION = "print the progress and the estimated remaining time " +
+            "every given number of seconds";
+
+    private static final String WORKERS_OPTION = "workers";
+    private static final String WORKERS_OPTION_ARGUMENT = "n";
+    private static final String WORKERS_OPTION_DESCRIPTION = "merge sorted input files by n worker processes " +
+            "on this machine, each one merging a key range of them into its own file, restarting failed workers " +
+            "(1 by default)";
+
+    private static final String WORKER_OPTION = "worker";
+    private static final String WORKER_OPTION_DESCRIPTION = "run as a worker of --" + WORKERS_OPTION +
+            " (internal): the input files are given as file@start:end byte ranges";
+
+    private static final String WORKER_FROM_OPTION = "worker-from";
+    private static final String WORKER_FROM_OPTION_ARGUMENT = "file@start:end";
+    private static final String WORKER_FROM_OPTION_DESCRIPTION = "merge as a worker (internal) only the lines " +
+            "going after the line at the given byte range or equal to it";
+
+    private static final String WORKER_TO_OPTION = "worker-to";
+    private static final String WORKER_TO_OPTION_ARGUMENT = "file@start:end";
+    private static final String WORKER_TO_OPTION_DESCRIPTION = "merge as a worker (internal) only the lines " +
+            "going before the line at the given byte range";
+
     private static final String HELP_OPTION = "h";
     private static final String HELP_OPTION_LONG = "help";
     private static final String HELP_OPTION_DESCRIPTION = "show help";
 
+    private static final int MAX_BUFFER_SIZE_KB = 1 << 20;
+
     private static final Options options = buildOptions();
     private static final Options optionsForHelpCheck = buildOptionsForHelpCheck();
     private static final HelpFormatter helpFormatter = new HelpFormatter();
@@ -54,6 +205,219 @@ public class CommandLineProcessor {
                 commandLineData.setNumberFile();
             }
 
+            if (commandLine.hasOption(RAW_OPTION)) {
+                if (commandLineData.isNumberFile()) {
+                    throw new CommandLineParsingException("Option --" + RAW_OPTION + " can only be used with strings");
+                }
+                commandLineData.setRawStrings();
+            }
+
+            if (commandLine.hasOption(DECIMAL_OPTION)) {
+                if (commandLineData.isStringFile()) {
+                    throw new CommandLineParsingException("Option --" + DECIMAL_OPTION +
+                            " can only be used with numbers");
+                }
+                commandLineData.setDecimalNumbers();
+            }
+
+            if (commandLine.hasOption(IGNORE_CASE_OPTION)) {
+                checkCollationOption(commandLineData, IGNORE_CASE_OPTION);
+                commandLineData.setCaseInsensitive();
+            }
+
+            if (commandLine.hasOption(LOCALE_OPTION)) {
+                checkCollationOption(commandLineData, LOCALE_OPTION);
+                Locale locale = Locale.forLanguageTag(commandLine.getOptionValue(LOCALE_OPTION));
+                if (locale.getLanguage().isEmpty()) {
+                    throw new CommandLineParsingException("Option --" + LOCALE_OPTION +
+                            " requires a language tag, such as en-US");
+                }
+                commandLineData.setLocale(locale);
+            }
+
+            if (commandLine.hasOption(SORT_OPTION)) {
+                commandLineData.setSortRequired();
+            }
+
+            if (commandLine.hasOption(TRUSTED_OPTION)) {
+                if (commandLineData.isSortRequired()) {
+                    throw new CommandLineParsingException("Options --" + TRUSTED_OPTION + " and --" + SORT_OPTION +
+                            " cannot be used together");
+                }
+                commandLineData.setInputTrusted();
+            }
+
+            if (commandLine.hasOption(SORT_MEMORY_OPTION)) {
+                int sortMemoryMb = parseIntegerOption(commandLine, SORT_MEMORY_OPTION);
+                if (sortMemoryMb <= 0) {
+                    throw new CommandLineParsingException("Sort memory has to be positive");
+                }
+                commandLineData.setSortMemoryMb(sortMemoryMb);
+            }
+
+            if (commandLine.hasOption(MEMORY_OPTION)) {
+                int memoryMb = parseIntegerOption(commandLine, MEMORY_OPTION);
+                if (memoryMb <= 0) {
+                    throw new CommandLineParsingException("Memory budget has to be positive");
+                }
+                commandLineData.setMemoryMb(memoryMb);
+            }
+
+            if (commandLine.hasOption(FAN_IN_OPTION)) {
+                int maxFanIn = parseIntegerOption(commandLine, FAN_IN_OPTION);
+                if (maxFanIn < 2) {
+                    throw new CommandLineParsingException("Fan-in has to be at least 2");
+                }
+                commandLineData.setMaxFanIn(maxFanIn);
+            }
+
+            if (commandLine.hasOption(RANGE_PLAN_OPTION)) {
+                commandLineData.setRangePlanning();
+            }
+
+            if (commandLine.hasOption(PARTITIONS_OPTION)) {
+                int partitionsNumber = parseIntegerOption(commandLine, PARTITIONS_OPTION);
+                if (partitionsNumber <= 0) {
+                    throw new CommandLineParsingException("Number of partitions has to be positive");
+                }
+                commandLineData.setPartitionsNumber(partitionsNumber);
+            }
+
+            if (commandLine.hasOption(THREADS_OPTION)) {
+                int threadsNumber = parseIntegerOption(commandLine, THREADS_OPTION);
+                if (threadsNumber <= 0) {
+                    throw new CommandLineParsingException("Number of threads has to be positive");
+                }
+                commandLineData.setThreadsNumber(threadsNumber);
+            }
+
+            if (commandLine.hasOption(IO_PARALLELISM_OPTION)) {
+                int ioParallelism = parseIntegerOption(commandLine, IO_PARALLELISM_OPTION);
+                if (ioParallelism <= 0) {
+                    throw new CommandLineParsingException("I/O parallelism has to be positive");
+                }
+                commandLineData.setIoParallelism(ioParallelism);
+            }
+
+            if (commandLine.hasOption(VIRTUAL_THREADS_OPTION)) {
+                commandLineData.setVirtualThreads();
+            }
+
+            if (commandLine.hasOption(ASYNC_IO_OPTION)) {
+                commandLineData.setAsyncIo();
+            }
+
+            if (commandLine.hasOption(COMPRESS_TEMP_OPTION)) {
+                commandLineData.setTemporaryCompression();
+            }
+
+            if (commandLine.hasOption(COMPRESS_OUTPUT_OPTION)) {
+                commandLineData.setOutputCompression();
+            }
+
+            if (commandLine.hasOption(APPEND_OPTION)) {
+                commandLineData.setAppend();
+            }
+
+            if (commandLine.hasOption(LIMIT_OPTION)) {
+                long limit = parseLongOption(commandLine, LIMIT_OPTION);
+                if (limit <= 0) {
+                    throw new CommandLineParsingException("Limit has to be positive");
+                }
+                commandLineData.setLimit(limit);
+            }
+
+            if (commandLine.hasOption(FROM_OPTION)) {
+                commandLineData.setFromLine(commandLine.getOptionValue(FROM_OPTION));
+            }
+
+            if (commandLine.hasOption(TO_OPTION)) {
+                commandLineData.setToLine(commandLine.getOptionValue(TO_OPTION));
+            }
+
+            if (commandLineData.isAppend() && (commandLineData.getLimit() > 0 ||
+                    commandLineData.getFromLine() != null || commandLineData.getToLine() != null)) {
+                throw new CommandLineParsingException("Options --" + LIMIT_OPTION + ", --" + FROM_OPTION +
+                        " and --" + TO_OPTION + " cannot be used with --" + APPEND_OPTION);
+            }
+
+            if (commandLine.hasOption(INDEX_INTERVAL_OPTION)) {
+                int indexIntervalKb = parseIntegerOption(commandLine, INDEX_INTERVAL_OPTION);
+                if (indexIntervalKb <= 0 || indexIntervalKb > MAX_BUFFER_SIZE_KB) {
+                    throw new CommandLineParsingException("Index interval has to be between 1 and " +
+                            MAX_BUFFER_SIZE_KB + " KiB");
+                }
+                commandLineData.setIndexIntervalKb(indexIntervalKb);
+            }
+
+            if (commandLine.hasOption(WORK_DIR_OPTION)) {
+                commandLineData.setWorkDirectory(commandLine.getOptionValue(WORK_DIR_OPTION));
+            }
+
+            if (commandLine.hasOption(TMPDIR_OPTION)) {
+                if (commandLineData.getWorkDirectory() != null) {
+                    throw new CommandLineParsingException("Option --" + TMPDIR_OPTION + " cannot be used with --" +
+                            WORK_DIR_OPTION + ", which holds the temporary files");
+                }
+                commandLineData.setTemporaryDirectories(Arrays.asList(commandLine.getOptionValues(TMPDIR_OPTION)));
+            }
+
+            if (commandLine.hasOption(BUFFER_SIZE_OPTION)) {
+                int bufferSizeKb = parseIntegerOption(commandLine, BUFFER_SIZE_OPTION);
+                if (bufferSizeKb <= 0 || bufferSizeKb > MAX_BUFFER_SIZE_KB) {
+                    throw new CommandLineParsingException("Buffer size has to be between 1 and " +
+                            MAX_BUFFER_SIZE_KB + " KiB");
+                }
+                commandLineData.setBufferSizeKb(bufferSizeKb);
+            }
+
+            if (commandLine.hasOption(QUEUE_DEPTH_OPTION)) {
+                int queueDepth = parseIntegerOption(commandLine, QUEUE_DEPTH_OPTION);
+                if (queueDepth <= 0) {
+                    throw new CommandLineParsingException("Queue depth has to be positive");
+                }
+                commandLineData.setQueueDepth(queueDepth);
+            }
+
+            if (commandLine.hasOption(STATS_OPTION)) {
+                commandLineData.setStatisticsFilename(commandLine.getOptionValue(STATS_OPTION));
+            }
+
+            if (commandLine.hasOption(PROGRESS_OPTION)) {
+                int progressInterval = parseIntegerOption(commandLine, PROGRESS_OPTION);
+                if (progressInterval <= 0) {
+                    throw new CommandLineParsingException("Progress interval has to be positive");
+                }
+                commandLineData.setProgressInterval(progressInterval);
+            }
+
+            if (commandLine.hasOption(WORKERS_OPTION)) {
+                int workersNumber = parseIntegerOption(commandLine, WORKERS_OPTION);
+                if (workersNumber <= 0) {
+                    throw new CommandLineParsingException("Number of workers has to be positive");
+                }
+                commandLineData.setWorkersNumber(workersNumber);
+            }
+
+            if (commandLine.hasOption(WORKER_OPTION)) {
+                commandLineData.setWorker();
+            }
+
+            if (commandLine.hasOption(WORKER_FROM_OPTION) || commandLine.hasOption(WORKER_TO_OPTION)) {
+                if (!commandLineData.isWorker()) {
+                    throw new CommandLineParsingException("Options --" + WORKER_FROM_OPTION + " and --" +
+                            WORKER_TO_OPTION + " can only be given to a worker");
+                }
+                if (commandLine.hasOption(WORKER_FROM_OPTION)) {
+                    commandLineData.setShardFromLine(parseByteRange(commandLine.getOptionValue(WORKER_FROM_OPTION),
+                            "Bound line of a worker"));
+                }
+                if (commandLine.hasOption(WORKER_TO_OPTION)) {
+                    commandLineData.setShardToLine(parseByteRange(commandLine.getOptionValue(WORKER_TO_OPTION),
+                            "Bound line of a worker"));
+                }
+            }
+
             List<String> fileList = commandLine.getArgList();
             if (fileList.size() <= 1) {
                 throw new CommandLineParsingException("List of files has to contain exactly one output file" +
@@ -62,12 +426,19 @@ public class CommandLineProcessor {
 
             String outputFilename = fileList.remove(0);
             String[] inputFilenames = fileList.toArray(String[]::new);
+            if (commandLineData.isWorker()) {
+                for (int i = 0; i < inputFilenames.length; ++i) {
+                    inputFilenames[i] = parseInputSegment(commandLineData, inputFilenames[i]);
+                }
+            }
             commandLineData.setOutputFilename(outputFilename);
             commandLineData.setInputFiles(inputFilenames);
             return commandLineData;
 
         } catch (UnrecognizedOptionException e) {
             throw new CommandLineParsingException("Unrecognized option " + e.getOption(), e);
+        } catch (MissingArgumentException e) {
+            throw new CommandLineParsingException("Missing argument for option " + e.getOption().getLongOpt(), e);
         } catch (MissingOptionException e) {
             throw new CommandLineParsingException("One of the following options is required: " +
                     Arrays.toString(e.getMissingOptions().toArray()), e);
@@ -76,6 +447,104 @@ public class CommandLineProcessor {
         }
     }
 
+    private static int parseIntegerOption(CommandLine commandLine, String option)
+            throws CommandLineParsingException {
+        String value = commandLine.getOptionValue(option);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new CommandLineParsingException("Invalid value of option " + option + ": " + value, e);
+        }
+    }
+
+    private static long parseLongOption(CommandLine commandLine, String option)
+            throws CommandLineParsingException {
+        String value = commandLine.getOptionValue(option);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new CommandLineParsingException("Invalid value of option " + option + ": " + value, e);
+        }
+    }
+
+    /**
+     * Parses an input file of a worker given as file@start:end and returns the file name.
+     */
+    private static String parseInputSegment(CommandLineData commandLineData, String inputSegment)
+            throws CommandLineParsingException {
+        Map.Entry<String, long[]> byteRange = parseByteRange(inputSegment, "Input file of a worker");
+        commandLineData.addInputSegment(byteRange.getKey(), byteRange.getValue()[0], byteRange.getValue()[1]);
+        return byteRange.getKey();
+    }
+
+    /**
+     * Parses a byte range of a file given as file@start:end into the file name and the range {start, end}.
+     */
+    private static Map.Entry<String, long[]> parseByteRange(String byteRange, String subject)
+            throws CommandLineParsingException {
+        int rangeIndex = byteRange.lastIndexOf('@');
+        int endIndex = byteRange.lastIndexOf(':');
+        if (rangeIndex < 0 || endIndex < rangeIndex) {
+            throw new CommandLineParsingException(subject + " has to be given as file@start:end: " + byteRange);
+        }
+        String filename = byteRange.substring(0, rangeIndex);
+        try {
+            long start = Long.parseLong(byteRange.substring(rangeIndex + 1, endIndex));
+            long end = Long.parseLong(byteRange.substring(endIndex + 1));
+            if (start < 0 || end < start) {
+                throw new CommandLineParsingException("Invalid byte range of file: " + byteRange);
+            }
+            return Map.entry(filename, new long[] {start, end});
+        } catch (NumberFormatException e) {
+            throw new CommandLineParsingException("Invalid byte range of file: " + byteRange, e);
+        }
+    }
+
+    /**
+     * Returns the options which make a worker of --workers compare and read lines as the sorter of the command line,
+     * with its share of the threads and memory. The temporary directories, the output and the input files
+     * are appended by the coordinator.
+     */
+    public static List<String> buildWorkerArguments(CommandLineData commandLineData) {
+        List<String> arguments = new ArrayList<>();
+        arguments.add("-" + (commandLineData.isStringFile() ? STRING_DATATYPE_OPTION : INTEGER_DATATYPE_OPTION));
+        arguments.add("-" + (commandLineData.isAscendingOrder() ? ASCENDING_ORDER_OPTION : DESCENDING_ORDER_OPTION));
+        addFlag(arguments, RAW_OPTION, commandLineData.isRawStrings());
+        addFlag(arguments, DECIMAL_OPTION, commandLineData.isDecimalNumbers());
+        addFlag(arguments, IGNORE_CASE_OPTION, commandLineData.isCaseInsensitive());
+        if (commandLineData.getLocale() != null) {
+            arguments.addAll(List.of("--" + LOCALE_OPTION, commandLineData.getLocale().toLanguageTag()));
+        }
+        addFlag(arguments, TRUSTED_OPTION, commandLineData.isInputTrusted());
+        addFlag(arguments, ASYNC_IO_OPTION, commandLineData.isAsyncIo());
+        addFlag(arguments, COMPRESS_TEMP_OPTION, commandLineData.isTemporaryCompression());
+        arguments.addAll(List.of("--" + FAN_IN_OPTION, String.valueOf(commandLineData.getMaxFanIn())));
+        arguments.addAll(List.of("--" + QUEUE_DEPTH_OPTION, String.valueOf(commandLineData.getQueueDepth())));
+        if (commandLineData.getBufferSizeKb() > 0) {
+            arguments.addAll(List.of("--" + BUFFER_SIZE_OPTION, String.valueOf(commandLineData.getBufferSizeKb())));
+        }
+        if (commandLineData.getIoParallelism() > 0) {
+            arguments.addAll(List.of("--" + IO_PARALLELISM_OPTION,
+                    String.valueOf(commandLineData.getIoParallelism())));
+        }
+        // the workers share the processors and the memory of the machine
+        int workersNumber = commandLineData.getWorkersNumber();
+        int threadsNumber = (commandLineData.getThreadsNumber() > 0) ?
+                commandLineData.getThreadsNumber() : Runtime.getRuntime().availableProcessors();
+        arguments.addAll(List.of("--" + THREADS_OPTION, String.valueOf(Math.max(threadsNumber / workersNumber, 1))));
+        if (commandLineData.getMemoryMb() > 0) {
+            arguments.addAll(List.of("--" + MEMORY_OPTION,
+                    String.valueOf(Math.max(commandLineData.getMemoryMb() / workersNumber, 1))));
+        }
+        return arguments;
+    }
+
+    private static void addFlag(List<String> arguments, String option, boolean isSet) {
+        if (isSet) {
+            arguments.add("--" + option);
+        }
+    }
+
     private static boolean checkForHelp(String[] args) throws ParseException {
         CommandLineParser commandLineParser = new DefaultParser();
         CommandLine commandLine = commandLineParser.parse(optionsForHelpCheck, args);
@@ -96,6 +565,15 @@ public class CommandLineProcessor {
         Options options = new Options();
         options.addOptionGroup(datatypeOptions);
         options.addOptionGroup(orderOptions);
+        options.addOption(null, RAW_OPTION, false, RAW_OPTION_DESCRIPTION);
+        options.addOption(null, DECIMAL_OPTION, false, DECIMAL_OPTION_DESCRIPTION);
+        options.addOption(null, IGNORE_CASE_OPTION, false, IGNORE_CASE_OPTION_DESCRIPTION);
+        options.addOption(buildArgumentOption(LOCALE_OPTION, LOCALE_OPTION_ARGUMENT, LOCALE_OPTION_DESCRIPTION));
+        options.addOption(null, SORT_OPTION, false, SORT_OPTION_DESCRIPTION);
+        options.addOption(null, TRUSTED_OPTION, false, TRUSTED_OPTION_DESCRIPTION);
+        addOutputOptions(options);
+        addPerformanceOptions(options);
+        addReportOptions(options);
         options.addOption(HELP_OPTION, HELP_OPTION_LONG, false, HELP_OPTION_DESCRIPTION);
 
         return options;
@@ -107,8 +585,78 @@ public class CommandLineProcessor {
         options.addOption(INTEGER_DATATYPE_OPTION, INTEGER_DATATYPE_OPTION_DESCRIPTION);
         options.addOption(ASCENDING_ORDER_OPTION, ASCENDING_ORDER_OPTION_DESCRIPTION);
         options.addOption(DESCENDING_ORDER_OPTION, DESCENDING_ORDER_OPTION_DESCRIPTION);
+        options.addOption(null, RAW_OPTION, false, RAW_OPTION_DESCRIPTION);
+        options.addOption(null, DECIMAL_OPTION, false, DECIMAL_OPTION_DESCRIPTION);
+        options.addOption(null, IGNORE_CASE_OPTION, false, IGNORE_CASE_OPTION_DESCRIPTION);
+        options.addOption(buildArgumentOption(LOCALE_OPTION, LOCALE_OPTION_ARGUMENT, LOCALE_OPTION_DESCRIPTION));
+        options.addOption(null, SORT_OPTION, false, SORT_OPTION_DESCRIPTION);
+        options.addOption(null, TRUSTED_OPTION, false, TRUSTED_OPTION_DESCRIPTION);
+        addOutputOptions(options);
+        addPerformanceOptions(options);
+        addReportOptions(options);
         options.addOption(HELP_OPTION, HELP_OPTION_LONG, false, HELP_OPTION_DESCRIPTION);
 
         return options;
     }
+
+    private static void addOutputOptions(Options options) {
+        options.addOption(null, APPEND_OPTION, false, APPEND_OPTION_DESCRIPTION);
+        options.addOption(buildArgumentOption(LIMIT_OPTION, LIMIT_OPTION_ARGUMENT, LIMIT_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(FROM_OPTION, FROM_OPTION_ARGUMENT, FROM_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(TO_OPTION, TO_OPTION_ARGUMENT, TO_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(INDEX_INTERVAL_OPTION, INDEX_INTERVAL_OPTION_ARGUMENT,
+                INDEX_INTERVAL_OPTION_DESCRIPTION));
+    }
+
+    private static void addPerformanceOptions(Options options) {
+        options.addOption(buildArgumentOption(MEMORY_OPTION, MEMORY_OPTION_ARGUMENT, MEMORY_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(FAN_IN_OPTION, FAN_IN_OPTION_ARGUMENT, FAN_IN_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(SORT_MEMORY_OPTION, SORT_MEMORY_OPTION_ARGUMENT,
+                SORT_MEMORY_OPTION_DESCRIPTION));
+        options.addOption(null, RANGE_PLAN_OPTION, false, RANGE_PLAN_OPTION_DESCRIPTION);
+        options.addOption(buildArgumentOption(PARTITIONS_OPTION, PARTITIONS_OPTION_ARGUMENT,
+                PARTITIONS_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(THREADS_OPTION, THREADS_OPTION_ARGUMENT, THREADS_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(IO_PARALLELISM_OPTION, IO_PARALLELISM_OPTION_ARGUMENT,
+                IO_PARALLELISM_OPTION_DESCRIPTION));
+        options.addOption(null, VIRTUAL_THREADS_OPTION, false, VIRTUAL_THREADS_OPTION_DESCRIPTION);
+        options.addOption(null, ASYNC_IO_OPTION, false, ASYNC_IO_OPTION_DESCRIPTION);
+        options.addOption(null, COMPRESS_TEMP_OPTION, false, COMPRESS_TEMP_OPTION_DESCRIPTION);
+        options.addOption(null, COMPRESS_OUTPUT_OPTION, false, COMPRESS_OUTPUT_OPTION_DESCRIPTION);
+        options.addOption(buildArgumentOption(TMPDIR_OPTION, TMPDIR_OPTION_ARGUMENT, TMPDIR_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(WORK_DIR_OPTION, WORK_DIR_OPTION_ARGUMENT, WORK_DIR_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(BUFFER_SIZE_OPTION, BUFFER_SIZE_OPTION_ARGUMENT,
+                BUFFER_SIZE_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(QUEUE_DEPTH_OPTION, QUEUE_DEPTH_OPTION_ARGUMENT,
+                QUEUE_DEPTH_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(WORKERS_OPTION, WORKERS_OPTION_ARGUMENT, WORKERS_OPTION_DESCRIPTION));
+        options.addOption(null, WORKER_OPTION, false, WORKER_OPTION_DESCRIPTION);
+        options.addOption(buildArgumentOption(WORKER_FROM_OPTION, WORKER_FROM_OPTION_ARGUMENT,
+                WORKER_FROM_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(WORKER_TO_OPTION, WORKER_TO_OPTION_ARGUMENT,
+                WORKER_TO_OPTION_DESCRIPTION));
+    }
+
+    private static void addReportOptions(Options options) {
+        options.addOption(buildArgumentOption(STATS_OPTION, STATS_OPTION_ARGUMENT, STATS_OPTION_DESCRIPTION));
+        options.addOption(buildArgumentOption(PROGRESS_OPTION, PROGRESS_OPTION_ARGUMENT,
+                PROGRESS_OPTION_DESCRIPTION));
+    }
+
+    private static void checkCollationOption(CommandLineData commandLineData, String option)
+            throws CommandLineParsingException {
+        if (!commandLineData.isStringFile() || commandLineData.isRawStrings()) {
+            throw new CommandLineParsingException("Option --" + option +
+                    " can only be used with strings compared without --" + RAW_OPTION);
+        }
+    }
+
+    private static Option buildArgumentOption(String longOption, String argumentName, String description) {
+        return Option.builder()
+                .longOpt(longOption)
+                .hasArg()
+                .argName(argumentName)
+                .desc(description)
+                .build();
+    }
 }
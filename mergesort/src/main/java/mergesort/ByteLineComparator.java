@@ -0,0 +1,33 @@
+package mergesort;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compares two lines given as the bytes between the position and the limit of the buffers.
+ * Implementations must not change the positions and limits of the buffers.
+ */
+public interface ByteLineComparator {
+    int compare(ByteBuffer firstLine, ByteBuffer secondLine);
+
+    /**
+     * Tells whether the line can be compared at all; invalid lines of the input files are skipped.
+     */
+    default boolean isValid(ByteBuffer line) {
+        return true;
+    }
+
+    default ByteLineComparator reversed() {
+        ByteLineComparator comparator = this;
+        return new ByteLineComparator() {
+            @Override
+            public int compare(ByteBuffer firstLine, ByteBuffer secondLine) {
+                return comparator.compare(secondLine, firstLine);
+            }
+
+            @Override
+            public boolean isValid(ByteBuffer line) {
+                return comparator.isValid(line);
+            }
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package mergesort;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits an input into lines without decoding them.
+ * The current line is available as a range of bytes of the internal buffer,
+ * which is valid until the next call to {@link #readLine()}.
+ */
+abstract class ByteLineReader implements Closeable {
+    // the data available for reading occupies [0, buffer.limit())
+    private ByteBuffer buffer;
+    private ByteBuffer lineView;
+    private boolean isEndOfInput = false;
+
+    private int lineStart = 0;
+    private int lineEnd = 0;
+    private int nextLineStart = 0;
+    // the offset of the beginning of the buffer from the beginning of the input
+    private long bufferOffset = 0;
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    int getLineStart() {
+        return lineStart;
+    }
+
+    int getLineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * Returns the offset of the current line from the beginning of the input.
+     */
+    long getLineOffset() {
+        return bufferOffset + lineStart;
+    }
+
+    /**
+     * Makes the next call to {@link #readLine()} return the line starting at the given position of the buffer,
+     * skipping the lines before it. The position has to be a line start following the current line.
+     */
+    void setNextLineStart(int position) {
+        nextLineStart = position;
+    }
+
+    /**
+     * Returns a view of the current line: the bytes between its position and limit.
+     */
+    ByteBuffer getLine() {
+        lineView.limit(lineView.capacity()).position(lineStart);
+        lineView.limit(lineEnd);
+        return lineView;
+    }
+
+    boolean readLine() throws IOException {
+        int searchStart = nextLineStart;
+        for (;;) {
+            int dataEnd = buffer.limit();
+            for (int i = searchStart; i < dataEnd; ++i) {
+                if (buffer.get(i) == '\n') {
+                    setCurrentLine(nextLineStart, i, i + 1);
+                    return true;
+                }
+            }
+
+            if (isEndOfInput) {
+                if (nextLineStart == dataEnd) {
+                    lineStart = lineEnd = dataEnd;
+                    return false;
+                }
+                // the last line is not terminated
+                setCurrentLine(nextLineStart, dataEnd, dataEnd);
+                return true;
+            }
+
+            searchStart = dataEnd - nextLineStart;
+            bufferOffset += nextLineStart;
+            fillBuffer(nextLineStart);
+            lineStart = lineEnd = nextLineStart = 0;
+        }
+    }
+
+    /**
+     * Replaces the buffer with one that starts with the bytes [keepFrom, limit) of the current buffer
+     * followed by more input data. Calls {@link #setEndOfInput()} when there is no more data.
+     */
+    abstract void fillBuffer(int keepFrom) throws IOException;
+
+    void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        lineView = buffer.duplicate();
+    }
+
+    void setEndOfInput() {
+        isEndOfInput = true;
+    }
+
+    boolean isEndOfInput() {
+        return isEndOfInput;
+    }
+
+    /**
+     * Sets the current line for subclasses which split the input themselves.
+     */
+    void setLine(int start, int end) {
+        lineStart = start;
+        lineEnd = end;
+    }
+
+    private void setCurrentLine(int start, int terminatorStart, int next) {
+        lineStart = start;
+        lineEnd = (terminatorStart > start && buffer.get(terminatorStart - 1) == '\r') ? terminatorStart - 1 : terminatorStart;
+        nextLineStart = next;
+    }
+}
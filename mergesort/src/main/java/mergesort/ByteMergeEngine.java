@@ -0,0 +1,70 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+class ByteMergeEngine extends MergeEngine<ByteSortedFileReader> {
+    private ByteLineComparator lineComparator;
+
+    ByteMergeEngine(ByteLineComparator lineComparator) {
+        this.lineComparator = lineComparator;
+    }
+
+    @Override
+    ByteSortedFileReader openReader(FileSegment segment, TaskStatistics statistics) throws IOException {
+        if (getStreamFactory().isRunFile(segment.getFile())) {
+            return new ByteSortedFileReader(getStreamFactory().openRunReader(segment.getFile(), statistics),
+                    segment.getFilepath());
+        }
+        return new ByteSortedFileReader(openLineReader(segment, statistics), segment.getFilepath(),
+                isInputTrusted() ? null : lineComparator);
+    }
+
+    @Override
+    int compare(ByteSortedFileReader firstReader, ByteSortedFileReader secondReader) {
+        return lineComparator.compare(firstReader.getCurrentLine(), secondReader.getCurrentLine());
+    }
+
+    @Override
+    int compare(ByteBuffer line, ByteSortedFileReader reader) {
+        return lineComparator.compare(line, reader.getCurrentLine());
+    }
+
+    @Override
+    int compareKey(Object key, ByteSortedFileReader reader) {
+        return lineComparator.compare((ByteBuffer) key, reader.getCurrentLine());
+    }
+
+    @Override
+    Object getRecord(ByteSortedFileReader reader) {
+        return Charset.defaultCharset().decode(reader.getCurrentLine().duplicate()).toString();
+    }
+
+    @Override
+    RunGenerator createRunGenerator(long memoryBudget) {
+        return new ByteRunGenerator(getStreamFactory(), memoryBudget, lineComparator);
+    }
+
+    @Override
+    KeyOrder<?> getKeyOrder() {
+        return new KeyOrder<ByteBuffer>() {
+            @Override
+            public ByteBuffer convertLine(ByteBuffer line) throws LineConverterException {
+                if (!lineComparator.isValid(line)) {
+                    throw new LineConverterException("Invalid line");
+                }
+                ByteBuffer key = ByteBuffer.allocate(line.remaining());
+                key.put(line.duplicate()).flip();
+                return key;
+            }
+
+            @Override
+            public int compare(ByteBuffer firstKey, ByteBuffer secondKey) {
+                return lineComparator.compare(firstKey, secondKey);
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package mergesort;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copies the lines of a run into large chunks of memory; every line is referenced by a buffer
+ * whose position and limit delimit the line in its chunk.
+ */
+class ByteRunGenerator extends RunGenerator {
+    // rough size of the buffer referencing a line
+    private static final int LINE_OVERHEAD = 64;
+    private static final int MAX_CHUNK_SIZE = 1 << 20;
+    private static final int MIN_CHUNK_SIZE = 1 << 12;
+    private static final int INITIAL_RUN_CAPACITY = 1 << 12;
+
+    private ByteLineComparator lineComparator;
+    private int chunkSize;
+
+    private ByteBuffer[] run = new ByteBuffer[INITIAL_RUN_CAPACITY];
+    private int runSize = 0;
+    private long runMemoryUsage = 0;
+    // the bytes of the lines and a byte per line for the line length or the line separator
+    private long runLength = 0;
+    private byte[] chunk = new byte[0];
+    private int chunkPosition = 0;
+
+    ByteRunGenerator(StreamFactory streamFactory, long memoryBudget, ByteLineComparator lineComparator) {
+        super(streamFactory, memoryBudget);
+        this.lineComparator = lineComparator;
+        chunkSize = (int) Math.min(MAX_CHUNK_SIZE, Math.max(memoryBudget / 16, MIN_CHUNK_SIZE));
+    }
+
+    @Override
+    long addLines(File inputFile, List<File> runFiles) throws IOException {
+        long invalidLines = 0;
+        try (ByteLineReader lineReader = getStreamFactory().openLineReader(inputFile, getStatistics())) {
+            while (lineReader.readLine()) {
+                if (!lineComparator.isValid(lineReader.getLine())) {
+                    ++invalidLines;
+                    continue;
+                }
+                addLine(lineReader.getLine());
+                if (runMemoryUsage >= getMemoryBudget()) {
+                    writeRun(runFiles);
+                }
+            }
+        }
+        return invalidLines;
+    }
+
+    private void addLine(ByteBuffer line) {
+        int length = line.remaining();
+        if (length > chunk.length - chunkPosition) {
+            chunk = new byte[Math.max(chunkSize, length)];
+            chunkPosition = 0;
+            runMemoryUsage += chunk.length;
+        }
+        line.get(chunk, chunkPosition, length);
+
+        if (runSize == run.length) {
+            run = Arrays.copyOf(run, run.length * 2);
+        }
+        run[runSize++] = ByteBuffer.wrap(chunk, chunkPosition, length);
+        chunkPosition += length;
+        runMemoryUsage += LINE_OVERHEAD;
+        runLength += length + 1;
+    }
+
+    @Override
+    boolean isRunEmpty() {
+        return runSize == 0;
+    }
+
+    @Override
+    void sortRun() {
+        Arrays.parallelSort(run, 0, runSize, lineComparator::compare);
+    }
+
+    @Override
+    void writeRun(LineWriter runWriter) throws IOException {
+        for (int i = 0; i < runSize; ++i) {
+            runWriter.writeLine(run[i]);
+        }
+    }
+
+    @Override
+    long estimateRunLength() {
+        return runLength;
+    }
+
+    @Override
+    void clearRun() {
+        Arrays.fill(run, 0, runSize, null);
+        runSize = 0;
+        runMemoryUsage = 0;
+        runLength = 0;
+        chunk = new byte[0];
+        chunkPosition = 0;
+    }
+}
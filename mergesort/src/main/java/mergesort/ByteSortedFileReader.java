@@ -0,0 +1,120 @@
+package mergesort;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Counterpart of {@link SortedFileReader} for string files which are merged without decoding:
+ * lines stay raw bytes from reading to writing.
+ */
+class ByteSortedFileReader implements SortedReader {
+    private String filepath;
+    private ByteLineReader lineReader;
+
+    private long unorderedLines = 0;
+    private long invalidLines = 0;
+    // null for temporary files, which are known to be sorted and valid, and for trusted input files
+    private ByteLineComparator lineComparator;
+
+    // the last line returned in order has to be kept for comparison after the window of the file moves
+    private ByteBuffer prevLine = ByteBuffer.allocate(256);
+    private boolean hasReachedEnd = false;
+
+    ByteSortedFileReader(ByteLineReader lineReader, String filepath, ByteLineComparator lineComparator)
+            throws IOException {
+        this.lineReader = lineReader;
+        this.filepath = filepath;
+        this.lineComparator = lineComparator;
+
+        hasReachedEnd = !readValidLine();
+    }
+
+    ByteSortedFileReader(RunReader runReader, String filepath) throws IOException {
+        this(runReader, filepath, null);
+    }
+
+    @Override
+    public boolean hasReachedEnd() {
+        return hasReachedEnd;
+    }
+
+    @Override
+    public boolean isValid() {
+        return invalidLines == 0;
+    }
+
+    @Override
+    public long getInvalidLinesNumber() {
+        return invalidLines;
+    }
+
+    @Override
+    public boolean isOrdered() {
+        return unorderedLines == 0;
+    }
+
+    @Override
+    public long getUnorderedLinesNumber() {
+        return unorderedLines;
+    }
+
+    @Override
+    public String getFilepath() {
+        return filepath;
+    }
+
+    @Override
+    public ByteLineReader getTrustedLineReader() {
+        return (lineComparator == null && !(lineReader instanceof RunReader)) ? lineReader : null;
+    }
+
+    ByteBuffer getCurrentLine() {
+        return lineReader.getLine();
+    }
+
+    @Override
+    public void writeCurrentLine(LineWriter lineWriter) throws IOException {
+        lineWriter.writeLine(lineReader.getLine());
+    }
+
+    @Override
+    public void moveToNextLineInOrder() throws IOException {
+        if (lineComparator == null) {
+            hasReachedEnd = !lineReader.readLine();
+            return;
+        }
+
+        savePrevLine();
+        hasReachedEnd = !readValidLine();
+        while (!hasReachedEnd && lineComparator.compare(prevLine, lineReader.getLine()) > 0) {
+            ++unorderedLines;
+            hasReachedEnd = !readValidLine();
+        }
+    }
+
+    private boolean readValidLine() throws IOException {
+        while (lineReader.readLine()) {
+            if (lineComparator == null || lineComparator.isValid(lineReader.getLine())) {
+                return true;
+            }
+            ++invalidLines;
+        }
+        return false;
+    }
+
+    private void savePrevLine() {
+        ByteBuffer currentLine = lineReader.getLine();
+        if (currentLine.remaining() > prevLine.capacity()) {
+            prevLine = ByteBuffer.allocate(Math.max(currentLine.remaining(), prevLine.capacity() * 2));
+        }
+        prevLine.clear();
+        prevLine.put(currentLine).flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (lineReader != null) {
+            lineReader.close();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package mergesort;
+
+import java.text.CollationKey;
+
+/**
+ * Compares lines converted to the collation keys of a locale, so that the collator processes every line
+ * once instead of at every comparison. The prefix is the first 8 bytes of the key.
+ */
+public class CollationKeyComparator implements PrefixComparator<CollationKey> {
+    @Override
+    public int compare(CollationKey firstLine, CollationKey secondLine) {
+        return firstLine.compareTo(secondLine);
+    }
+
+    @Override
+    public long getPrefix(CollationKey line) {
+        byte[] key = line.toByteArray();
+        long prefix = 0;
+        for (int i = 0; i < Long.BYTES; ++i) {
+            prefix = (prefix << Byte.SIZE) | ((i < key.length) ? key[i] & 0xFF : 0);
+        }
+        return prefix;
+    }
+}
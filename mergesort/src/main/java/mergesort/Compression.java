@@ -0,0 +1,120 @@
+package mergesort;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Recognizes compressed input files by their magic bytes. Gzip files are decompressed,
+ * zstd and xz files are only reported, since the JDK cannot read them.
+ * (Formats whose magic bytes may start a text line, like bzip2, are not recognized.)
+ */
+class Compression {
+    private static final int MAGIC_LENGTH = 4;
+    // the gzip magic followed by the deflate compression method
+    private static final byte[] GZIP_MAGIC = {0x1f, (byte) 0x8b, 8};
+    private static final byte[] ZSTD_MAGIC = {0x28, (byte) 0xb5, 0x2f, (byte) 0xfd};
+    private static final byte[] XZ_MAGIC = {(byte) 0xfd, '7', 'z', 'X'};
+    // the size of the uncompressed data is stored in the gzip trailer modulo 2^32
+    private static final long GZIP_SIZE_MODULUS = 1L << 32;
+
+    private Compression() {
+    }
+
+    /**
+     * Tells whether the regular file starts with the magic bytes of a known compression format.
+     * An unreadable file is not considered compressed: the error is reported when it is opened.
+     */
+    static boolean isCompressed(File file) {
+        if (!StandardStream.isRegularFile(file)) {
+            return false;
+        }
+        byte[] magic = new byte[MAGIC_LENGTH];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int length = inputStream.readNBytes(magic, 0, magic.length);
+            return isGzip(magic, length) || getUnsupportedFormat(magic, length) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a stream decompressing the given one if it starts with the gzip magic bytes,
+     * or a stream of the same bytes otherwise. Fails for other compression formats.
+     */
+    static InputStream decompress(InputStream inputStream, String filepath, int bufferSize) throws IOException {
+        PushbackInputStream pushbackStream = new PushbackInputStream(inputStream, MAGIC_LENGTH);
+        byte[] magic = new byte[MAGIC_LENGTH];
+        int length = pushbackStream.readNBytes(magic, 0, magic.length);
+        pushbackStream.unread(magic, 0, length);
+
+        if (isGzip(magic, length)) {
+            return new GZIPInputStream(pushbackStream, bufferSize);
+        }
+        String format = getUnsupportedFormat(magic, length);
+        if (format != null) {
+            pushbackStream.close();
+            throw new IOException(String.format("File \"%s\" is compressed with %s, which is not supported; " +
+                    "pass its decompressed content through a pipe instead", filepath, format));
+        }
+        return pushbackStream;
+    }
+
+    /**
+     * Estimates the length of the decompressed file from the size stored in the gzip trailer,
+     * assuming the data do not shrink when decompressed. The estimate is exact for a single-member file
+     * shorter than 4 GiB. The length of a file which is not gzip-compressed is returned as is.
+     */
+    static long estimateUncompressedLength(File file) {
+        long length = file.length();
+        if (!StandardStream.isRegularFile(file) || length < GZIP_MAGIC.length + Integer.BYTES) {
+            return length;
+        }
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            byte[] magic = new byte[GZIP_MAGIC.length];
+            randomAccessFile.readFully(magic);
+            if (!isGzip(magic, magic.length)) {
+                return length;
+            }
+            randomAccessFile.seek(length - Integer.BYTES);
+            long uncompressedLength = Integer.toUnsignedLong(Integer.reverseBytes(randomAccessFile.readInt()));
+            if (uncompressedLength < length) {
+                uncompressedLength += ((length - uncompressedLength - 1) / GZIP_SIZE_MODULUS + 1) * GZIP_SIZE_MODULUS;
+            }
+            return uncompressedLength;
+        } catch (IOException e) {
+            return length;
+        }
+    }
+
+    private static boolean isGzip(byte[] magic, int length) {
+        return startsWith(magic, length, GZIP_MAGIC);
+    }
+
+    private static String getUnsupportedFormat(byte[] magic, int length) {
+        if (startsWith(magic, length, ZSTD_MAGIC)) {
+            return "zstd";
+        }
+        if (startsWith(magic, length, XZ_MAGIC)) {
+            return "xz";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] bytes, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; ++i) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
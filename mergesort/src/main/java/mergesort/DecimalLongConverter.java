@@ -0,0 +1,51 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses ASCII decimal numbers in the same format as {@link Long#parseLong(String)}:
+ * an optional sign followed by at least one digit, values outside of the long range are invalid.
+ */
+public class DecimalLongConverter implements LongLineConverter {
+    @Override
+    public long convertLine(ByteBuffer buffer, int start, int end) throws LineConverterException {
+        if (start == end) {
+            throw new LineConverterException("Empty line is not a number");
+        }
+
+        // the value is accumulated negatively, since the range of negative numbers is larger
+        boolean isNegative = false;
+        long limit = -Long.MAX_VALUE;
+        byte firstByte = buffer.get(start);
+        if (firstByte == '-' || firstByte == '+') {
+            if (firstByte == '-') {
+                isNegative = true;
+                limit = Long.MIN_VALUE;
+            }
+            if (++start == end) {
+                throw new LineConverterException("Sign without digits is not a number");
+            }
+        }
+
+        long multiplicationLimit = limit / 10;
+        long result = 0;
+        for (int i = start; i < end; ++i) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new LineConverterException("Line contains a non-digit character");
+            }
+            if (result < multiplicationLimit) {
+                throw new LineConverterException("Number is out of range");
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new LineConverterException("Number is out of range");
+            }
+            result -= digit;
+        }
+
+        return isNegative ? result : -result;
+    }
+}
@@ -0,0 +1,138 @@
+package mergesort;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compares lines holding decimal numbers of any length, with an optional sign and fraction,
+ * by their digits instead of parsing them: first by sign, then by the number of integer digits
+ * without leading zeros, then digit by digit. Trailing zeros of the fraction are ignored, so "1.50"
+ * equals "1.5", and "-0" equals "0".
+ */
+public class DecimalStringComparator implements ByteLineComparator {
+    @Override
+    public int compare(ByteBuffer firstLine, ByteBuffer secondLine) {
+        int firstSign = getSign(firstLine);
+        int secondSign = getSign(secondLine);
+        if (firstSign != secondSign) {
+            return Integer.compare(firstSign, secondSign);
+        }
+        return (firstSign < 0) ? compareMagnitudes(secondLine, firstLine) : compareMagnitudes(firstLine, secondLine);
+    }
+
+    @Override
+    public boolean isValid(ByteBuffer line) {
+        int position = line.position();
+        int limit = line.limit();
+        if (position < limit && isSign(line.get(position))) {
+            ++position;
+        }
+        int integerStart = position;
+        while (position < limit && isDigit(line.get(position))) {
+            ++position;
+        }
+        if (position == integerStart) {
+            return false;
+        }
+        if (position == limit) {
+            return true;
+        }
+        if (line.get(position) != '.') {
+            return false;
+        }
+        int fractionStart = ++position;
+        while (position < limit && isDigit(line.get(position))) {
+            ++position;
+        }
+        return position == limit && position > fractionStart;
+    }
+
+    /**
+     * Returns -1, 0 or 1; zero has no sign whatever it is written with.
+     */
+    private static int getSign(ByteBuffer line) {
+        int position = line.position();
+        int limit = line.limit();
+        if (position == limit) {
+            return 0;
+        }
+        byte first = line.get(position);
+        for (int i = isSign(first) ? position + 1 : position; i < limit; ++i) {
+            byte digit = line.get(i);
+            if (digit != '0' && digit != '.') {
+                return (first == '-') ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int compareMagnitudes(ByteBuffer firstLine, ByteBuffer secondLine) {
+        int firstStart = skipLeadingZeros(firstLine);
+        int secondStart = skipLeadingZeros(secondLine);
+        int firstPoint = findPoint(firstLine, firstStart);
+        int secondPoint = findPoint(secondLine, secondStart);
+
+        int firstIntegerLength = firstPoint - firstStart;
+        int secondIntegerLength = secondPoint - secondStart;
+        if (firstIntegerLength != secondIntegerLength) {
+            return Integer.compare(firstIntegerLength, secondIntegerLength);
+        }
+        for (int i = 0; i < firstIntegerLength; ++i) {
+            int difference = firstLine.get(firstStart + i) - secondLine.get(secondStart + i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        int firstEnd = skipTrailingZeros(firstLine, firstPoint);
+        int secondEnd = skipTrailingZeros(secondLine, secondPoint);
+        int firstFraction = firstPoint + 1;
+        int secondFraction = secondPoint + 1;
+        while (firstFraction < firstEnd && secondFraction < secondEnd) {
+            int difference = firstLine.get(firstFraction++) - secondLine.get(secondFraction++);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        // the fraction which goes on has a non-zero digit left
+        return Boolean.compare(firstFraction < firstEnd, secondFraction < secondEnd);
+    }
+
+    private static int skipLeadingZeros(ByteBuffer line) {
+        int position = line.position();
+        int limit = line.limit();
+        if (position < limit && isSign(line.get(position))) {
+            ++position;
+        }
+        while (position < limit && line.get(position) == '0') {
+            ++position;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the position of the decimal point, or the limit if there is no fraction.
+     */
+    private static int findPoint(ByteBuffer line, int from) {
+        int limit = line.limit();
+        while (from < limit && line.get(from) != '.') {
+            ++from;
+        }
+        return from;
+    }
+
+    private static int skipTrailingZeros(ByteBuffer line, int point) {
+        int end = line.limit();
+        while (end > point + 1 && line.get(end - 1) == '0') {
+            --end;
+        }
+        return end;
+    }
+
+    private static boolean isSign(byte character) {
+        return character == '-' || character == '+';
+    }
+
+    private static boolean isDigit(byte character) {
+        return character >= '0' && character <= '9';
+    }
+}
@@ -0,0 +1,34 @@
+package mergesort;
+
+/**
+ * Encoding of a file written by the merger. The {@link StreamFactory} records the format by the path
+ * of the file, so that it holds for every {@link java.io.File} naming the file; unrecorded files are text.
+ */
+enum FileFormat {
+    /**
+     * Text lines, like the input files.
+     */
+    TEXT,
+    /**
+     * Text lines compressed with gzip, the format of a compressed output file. The output of a partitioned
+     * merger is a concatenation of gzip members, one per partition, which is a valid gzip file as well.
+     */
+    GZIP,
+    /**
+     * Binary run format of the temporary files (see {@link RunWriter}). The lines of a run file are known
+     * to be valid and sorted, so they are read without parsing and validation.
+     */
+    RUN,
+    /**
+     * Binary run format compressed with deflate.
+     */
+    COMPRESSED_RUN;
+
+    boolean isRun() {
+        return this == RUN || this == COMPRESSED_RUN;
+    }
+
+    boolean isCompressed() {
+        return this == GZIP || this == COMPRESSED_RUN;
+    }
+}
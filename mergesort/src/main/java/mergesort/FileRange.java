@@ -0,0 +1,32 @@
+package mergesort;
+
+import java.io.File;
+
+/**
+ * Summary of a sorted input file used by the merge planner: the number of its lines
+ * and whether it is known to be valid and sorted, so that it can be copied without being read line by line.
+ * The number of lines is estimated if the file has not been read through.
+ */
+class FileRange {
+    private File file;
+    private long linesNumber;
+    private boolean isVerified;
+
+    FileRange(File file, long linesNumber, boolean isVerified) {
+        this.file = file;
+        this.linesNumber = linesNumber;
+        this.isVerified = isVerified;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getLinesNumber() {
+        return linesNumber;
+    }
+
+    boolean isVerified() {
+        return isVerified;
+    }
+}
@@ -0,0 +1,45 @@
+package mergesort;
+
+import java.io.File;
+
+/**
+ * A range of bytes [start, end) of a file, which starts at the beginning of a line.
+ * A segment with the end equal to {@link #TO_END_OF_FILE} lasts to the end of the file.
+ */
+class FileSegment {
+    static final long TO_END_OF_FILE = Long.MAX_VALUE;
+
+    private File file;
+    private long start;
+    private long end;
+
+    FileSegment(File file) {
+        this(file, 0, TO_END_OF_FILE);
+    }
+
+    FileSegment(File file, long start, long end) {
+        this.file = file;
+        this.start = start;
+        this.end = end;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getEnd() {
+        return end;
+    }
+
+    boolean isEmpty() {
+        return start >= end;
+    }
+
+    String getFilepath() {
+        return file.getPath();
+    }
+}
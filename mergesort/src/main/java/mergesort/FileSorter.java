@@ -1,54 +1,660 @@
 package mergesort;
 
 import mergesort.exceptions.FileMergerException;
+import mergesort.exceptions.LineConverterException;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 public class FileSorter<T> {
-    private Comparator<T> lineComparator;
-    private LineConverter<T> lineConverter;
+    public static final int DEFAULT_MAX_FAN_IN = 64;
+
+    private static final String SORT_STEP = "sort";
+    private static final String MERGE_STEP_PREFIX = "merge-";
+
+    private MergeEngine<?> mergeEngine;
+    private int maxFanIn = DEFAULT_MAX_FAN_IN;
+    private int partitionsNumber = 1;
+    private int threadsNumber = Runtime.getRuntime().availableProcessors();
+    private boolean isVirtualThreads = false;
+    private boolean isExternalSort = false;
+    private boolean isOutputCompressed = false;
+    private int indexInterval = 0;
+    private boolean isAppend = false;
+    private long sortMemory = Runtime.getRuntime().maxMemory() / 4;
+    private boolean isSortMemoryFixed = false;
+    private boolean isBufferSizeFixed = false;
+    private long memoryBudget = 0;
+    private MemoryGovernor memoryGovernor;
+    private String statisticsFilename;
+    private int progressInterval = 0;
+    private MergeStatistics statistics;
+    private boolean isPartitioned;
+    private boolean isRangePlanning = false;
+    private boolean isRangePlanned;
+    private String fromLine;
+    private String toLine;
+    private long limit = 0;
+    private LineQuery query;
+    // the segments of the input files holding the lines selected by the query
+    private Map<File, FileSegment> selectedSegments = new HashMap<>();
+    private List<File> temporaryDirectories = new ArrayList<>();
+    private int workersNumber = 1;
+    private List<String> workerCommand;
+    private boolean isWorker = false;
+    // the byte ranges of the input files merged by a worker of a sharded merge
+    private Map<File, FileSegment> inputSegments = new HashMap<>();
+    // the lines bounding the key range [from, to) of the shard of a worker, null if open
+    private FileSegment shardFromLine;
+    private FileSegment shardToLine;
+    private File workDirectory;
+    private String jobDescription = "";
+    private MergeJournal journal;
 
     public FileSorter(LineConverter<T> lineConverter, Comparator<T> lineComparator) {
-        this.lineComparator = lineComparator;
-        this.lineConverter = lineConverter;
+        this(new LineMergeEngine<>(lineConverter, lineComparator));
+    }
+
+    private FileSorter(MergeEngine<?> mergeEngine) {
+        this.mergeEngine = mergeEngine;
+    }
+
+    /**
+     * Creates a sorter for files of numbers, which keeps them as primitive longs
+     * instead of boxing every line as {@link FileSorter#FileSorter(LineConverter, Comparator)} would.
+     */
+    public static FileSorter<Long> forLongs(LongLineConverter lineConverter, LongComparator lineComparator) {
+        return new FileSorter<>(new LongMergeEngine(lineConverter, lineComparator));
+    }
+
+    /**
+     * Creates a sorter for string files, which merges the lines as raw bytes of memory-mapped files
+     * without decoding and re-encoding them.
+     */
+    public static FileSorter<String> forByteStrings(ByteLineComparator lineComparator) {
+        return new FileSorter<>(new ByteMergeEngine(lineComparator));
+    }
+
+    public void setMaxFanIn(int maxFanIn) {
+        if (maxFanIn < 2) {
+            throw new IllegalArgumentException("Maximum fan-in has to be at least 2");
+        }
+        this.maxFanIn = maxFanIn;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size has to be positive");
+        }
+        mergeEngine.getStreamFactory().setBufferSize(bufferSize);
+        isBufferSizeFixed = true;
+    }
+
+    public void setQueueDepth(int queueDepth) {
+        if (queueDepth <= 0) {
+            throw new IllegalArgumentException("Queue depth has to be positive");
+        }
+        mergeEngine.getStreamFactory().setQueueDepth(queueDepth);
+    }
+
+    /**
+     * Limits the number of mergers running at once.
+     */
+    public void setThreadsNumber(int threadsNumber) {
+        if (threadsNumber <= 0) {
+            throw new IllegalArgumentException("Number of threads has to be positive");
+        }
+        this.threadsNumber = threadsNumber;
+    }
+
+    /**
+     * Limits the number of reads and writes of files issued at once, independently of the number of threads;
+     * 0 removes the limit.
+     */
+    public void setIoParallelism(int ioParallelism) {
+        if (ioParallelism < 0) {
+            throw new IllegalArgumentException("I/O parallelism cannot be negative");
+        }
+        mergeEngine.getStreamFactory().setIoParallelism(ioParallelism);
+    }
+
+    /**
+     * Runs the mergers and the background I/O tasks in virtual threads if the JVM supports them (Java 21 and newer).
+     */
+    public void setVirtualThreads(boolean isVirtualThreads) {
+        this.isVirtualThreads = isVirtualThreads;
+        mergeEngine.getStreamFactory().setVirtualThreads(isVirtualThreads);
+    }
+
+    /**
+     * Splits the final merger into the given number of key ranges, which are merged in parallel.
+     */
+    public void setPartitionsNumber(int partitionsNumber) {
+        if (partitionsNumber <= 0) {
+            throw new IllegalArgumentException("Number of partitions has to be positive");
+        }
+        this.partitionsNumber = partitionsNumber;
+    }
+
+    /**
+     * Makes the sorter accept unsorted input files: they are cut into sorted runs of at most
+     * {@link #setSortMemory(long)} bytes, which are merged afterwards. No out-of-order lines are skipped then.
+     */
+    public void setExternalSort(boolean isExternalSort) {
+        this.isExternalSort = isExternalSort;
+    }
+
+    /**
+     * Trusts the input files to be sorted and to contain only valid lines. They are not checked then,
+     * and runs of lines taken from one file are copied to the output as raw bytes.
+     */
+    public void setInputTrusted(boolean isInputTrusted) {
+        mergeEngine.setInputTrusted(isInputTrusted);
+    }
+
+    public void setSortMemory(long sortMemory) {
+        if (sortMemory <= 0) {
+            throw new IllegalArgumentException("Sort memory has to be positive");
+        }
+        this.sortMemory = sortMemory;
+        isSortMemoryFixed = true;
+    }
+
+    /**
+     * Limits the memory taken by the buffers of the merged files and by sorting runs to the given number of bytes;
+     * 0 removes the limit. The buffer size (unless it is set), the fan-in and the sort memory (unless it is set)
+     * are chosen to fit into the budget, and the mergers running at once share it: a merger waits
+     * until the finished ones have released the memory of its buffers.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget cannot be negative");
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Compresses the temporary files with a fast deflate level, which trades CPU time for disk space and bandwidth.
+     */
+    public void setTemporaryCompression(boolean isTemporaryCompression) {
+        mergeEngine.getStreamFactory().setRunCompressed(isTemporaryCompression);
+    }
+
+    /**
+     * Writes the output file compressed with gzip. (Compressed input files are recognized automatically.)
+     */
+    public void setOutputCompression(boolean isOutputCompressed) {
+        this.isOutputCompressed = isOutputCompressed;
+    }
+
+    /**
+     * Writes a sparse index of the output file next to it, with an entry every given number of bytes;
+     * 0 disables the index. The index speeds up appending to the output file.
+     */
+    public void setIndexInterval(int indexInterval) {
+        if (indexInterval < 0) {
+            throw new IllegalArgumentException("Index interval cannot be negative");
+        }
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * Merges the input files into the existing sorted output file instead of replacing it.
+     * The beginning of the output file, which precedes the first lines of the input files, is not merged again.
+     * The sparse index of the output file is kept up to date (and is created if there is none).
+     */
+    public void setAppend(boolean isAppend) {
+        this.isAppend = isAppend;
+    }
+
+    /**
+     * Plans the mergers by the key ranges of the input files instead of their lengths alone: the files
+     * whose ranges do not overlap any other file are not merged but concatenated with the merged clusters
+     * of overlapping files. The input files are read in parallel before the merger to find their ranges
+     * and to count their lines, unless they are trusted to be sorted, in which case only their ends are read.
+     */
+    public void setRangePlanning(boolean isRangePlanning) {
+        this.isRangePlanning = isRangePlanning;
+    }
+
+    /**
+     * Selects the lines whose keys lie between the given lines, both inclusive, in the order of the merger;
+     * a null line leaves the range open. The bounds are converted like the lines of the input files.
+     * Sorted regular files are cut at the bounds by binary search, and the mergers stop at the upper bound.
+     */
+    public void setKeyRange(String fromLine, String toLine) {
+        this.fromLine = fromLine;
+        this.toLine = toLine;
+    }
+
+    /**
+     * Writes at most the given number of the first merged lines; 0 removes the limit.
+     * Every merger stops as soon as it has written that many lines.
+     */
+    public void setLimit(long limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit cannot be negative");
+        }
+        this.limit = limit;
+    }
+
+    /**
+     * Enables read-ahead of the input files and write-behind of the output files in background threads.
+     */
+    public void setAsynchronousIo(boolean isAsynchronousIo) {
+        mergeEngine.getStreamFactory().setAsynchronous(isAsynchronousIo);
+    }
+
+    /**
+     * Writes a JSON report with the counters of the whole job and of every merge task to the given file
+     * after the merger; null disables the report.
+     */
+    public void setStatisticsFile(String statisticsFilename) {
+        this.statisticsFilename = statisticsFilename;
+    }
+
+    /**
+     * Prints the progress and the estimated remaining time to the standard error every given number of seconds;
+     * 0 disables the reporting.
+     */
+    public void setProgressInterval(int progressInterval) {
+        if (progressInterval < 0) {
+            throw new IllegalArgumentException("Progress interval cannot be negative");
+        }
+        this.progressInterval = progressInterval;
+    }
+
+    /**
+     * Keeps the temporary files and a journal of the completed steps in the given directory, so that
+     * an interrupted job restarted with the same work directory resumes from its last completed steps.
+     * The journal is discarded if the input files or the settings, including the job description, have changed.
+     * A null directory disables the journal.
+     */
+    public void setWorkDirectory(String workDirectory) {
+        this.workDirectory = (workDirectory != null) ? new File(workDirectory) : null;
+    }
+
+    /**
+     * Describes the type and the order of the lines, which the sorter cannot tell from its comparator.
+     * The journal of the work directory and the sparse index of the output file are discarded
+     * if they have been written for another description.
+     */
+    public void setJobDescription(String jobDescription) {
+        this.jobDescription = jobDescription;
     }
 
-    public void mergeSortedFiles(String outputFilename, String... inputFilenames) throws FileMergerException {
+    /**
+     * Spreads the temporary files over the given directories, which may be on different devices
+     * (see {@link TemporaryDirectories}); no directories stand for the default temporary directory.
+     * A work directory, if it is set, holds all the temporary files instead.
+     */
+    public void setTemporaryDirectories(List<String> temporaryDirectories) {
+        this.temporaryDirectories = new ArrayList<>();
+        for (String temporaryDirectory : temporaryDirectories) {
+            this.temporaryDirectories.add(new File(temporaryDirectory));
+        }
+    }
+
+    /**
+     * Merges sorted input files by the given number of worker processes started on this machine, every one
+     * merging a key range of the files (see {@link ShardCoordinator}); 1 merges them in this process.
+     * The command has to start the command line interface of the sorter with the options of the line type
+     * and order of this sorter, so that the workers order the lines the same way; the coordinator appends
+     * the options of a worker to it.
+     */
+    public void setWorkerProcesses(int workersNumber, List<String> workerCommand) {
+        if (workersNumber <= 0) {
+            throw new IllegalArgumentException("Number of workers has to be positive");
+        }
+        this.workersNumber = workersNumber;
+        this.workerCommand = new ArrayList<>(workerCommand);
+    }
+
+    /**
+     * Runs the sorter as a worker of a sharded merge, which reports its progress to the coordinator
+     * through the standard output.
+     */
+    public void setWorker(boolean isWorker) {
+        this.isWorker = isWorker;
+    }
+
+    /**
+     * Merges only the bytes [start, end) of the input file, which have to begin at a line start and end
+     * at a line end, as a worker of a sharded merge does. The segment is not applied when unsorted files are sorted.
+     */
+    public void setInputSegment(String filename, long start, long end) {
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException("Input segment has to start at a non-negative position " +
+                    "and end after its start");
+        }
+        File file = new File(filename);
+        inputSegments.put(file, new FileSegment(file, start, end));
+    }
+
+    /**
+     * Merges only the lines of the key range of a shard, as a worker of a sharded merge does: the lines
+     * not less than the key of the from line and less than the key of the to line. Each bound is the line
+     * at the bytes [start, end) of a file; a null file name leaves the range open. The lines out of the range
+     * are counted as lost, since the input segments of a shard are cut at the range.
+     */
+    public void setShardRange(String fromFilename, long fromStart, long fromEnd,
+                              String toFilename, long toStart, long toEnd) {
+        shardFromLine = (fromFilename != null) ? new FileSegment(new File(fromFilename), fromStart, fromEnd) : null;
+        shardToLine = (toFilename != null) ? new FileSegment(new File(toFilename), toStart, toEnd) : null;
+    }
+
+    /**
+     * Merges the sorted input files into the output file. The sorter keeps the state of the job it runs,
+     * such as the selected lines, the statistics and the journal, so this method and
+     * {@link #mergeToIterator(String...)} are synchronized: the jobs of a sorter run one at a time,
+     * and its settings are not to be changed while a job runs.
+     */
+    public synchronized void mergeSortedFiles(String outputFilename, String... inputFilenames)
+            throws FileMergerException {
+        List<File> inputFiles = filterExistingFiles(inputFilenames);
+        if (inputFiles.isEmpty()) {
+            throw new FileMergerException("Error: number of valid input files is <= 1");
+        }
+
+        query = createQuery();
+        if (query != null && isAppend) {
+            throw new FileMergerException("Error: lines cannot be selected while appending to the output file");
+        }
+        File resultFile = createResultFile(outputFilename);
+        boolean isSharded = workersNumber > 1 && isShardingPossible(inputFiles);
+        isPartitioned = !isSharded && partitionsNumber > 1 && isPartitioningPossible(resultFile, inputFiles);
+        // the partitioned final merger searches its input files for splitters, so they have to be text files
+        mergeEngine.getStreamFactory().setRunFormatUsed(!isPartitioned);
+        isRangePlanned = !isSharded && isRangePlanning && isRangePlanningPossible(inputFiles);
+        memoryGovernor = (memoryBudget > 0) ? createMemoryGovernor() : null;
+        statistics = (statisticsFilename != null || progressInterval > 0 || isWorker) ? new MergeStatistics() : null;
+        mergeEngine.setStatistics(statistics);
+        ProgressReporter progressReporter = (progressInterval > 0 || isWorker) ? new ProgressReporter(statistics,
+                (progressInterval > 0) ? progressInterval : 1, isWorker) : null;
         try {
-            List<File> inputFiles = filterExistingFiles(inputFilenames);
-            if (inputFiles.isEmpty()) {
-                throw new FileMergerException("Error: number of valid input files is <= 1");
+            if (!StandardStream.isStandardStream(resultFile)) {
+                resultFile.createNewFile();
             }
+            mergeEngine.getStreamFactory().setTemporaryDirectories(getTemporaryDirectories());
+            selectSegments(inputFiles);
+            journal = (workDirectory != null) ? createJournal(resultFile, inputFiles) : null;
 
-            File resultFile = new File(outputFilename);
-            resultFile.createNewFile();
-
-            if (inputFiles.size() == 1) {
+            boolean isCompleted = true;
+            if (isAppend && resultFile.length() > 0) {
+                isCompleted = appendToFile(resultFile, inputFiles);
+            } else if (isExternalSort) {
+                isCompleted = sortAndMergeFiles(resultFile, inputFiles);
+            } else if (isSharded) {
+                new ShardCoordinator(mergeEngine, workersNumber, workerCommand).mergeFiles(resultFile, inputFiles,
+                        temporaryDirectories);
+            } else if (inputFiles.size() == 1) {
+                addPlannedBytes(getPlannedLength(inputFiles.get(0)));
                 copyFile(inputFiles.get(0), resultFile);
-                return;
+            } else {
+                isCompleted = mergeSortedFilesImpl(resultFile, inputFiles);
+            }
+            if (!isCompleted) {
+                // the incomplete output is not left behind; a file appended to is restored by the merger
+                if (!isAppend && StandardStream.isRegularFile(resultFile)) {
+                    resultFile.delete();
+                }
+                throw new FileMergerException("Error: the output file has not been written");
+            }
+            if (journal != null) {
+                journal.clear();
             }
 
-            mergeSortedFilesImpl(resultFile, inputFiles);
+            if (statisticsFilename != null) {
+                try (Writer statisticsWriter = Files.newBufferedWriter(Paths.get(statisticsFilename))) {
+                    statistics.writeJson(statisticsWriter);
+                }
+            }
         } catch (IOException e) {
             throw new FileMergerException(e);
+        } finally {
+            if (progressReporter != null) {
+                progressReporter.stop();
+            }
+        }
+    }
+
+    /**
+     * Merges the input files like {@link #mergeSortedFiles(String, String...)}, but instead of writing the result
+     * returns an iterator over the merged records: the converted lines, the numbers of a sorter for numbers
+     * or the strings of a sorter for raw strings (decoded with the default charset). Runs of unsorted files
+     * and intermediate mergers, if there are more files than the fan-in allows, are completed before
+     * the method returns; the final merger is lazy and reads the files only as far as the records are taken.
+     * The settings of the output file do not apply, and no journal is kept in the work directory,
+     * since the records taken by the caller cannot be resumed. Like {@link #mergeSortedFiles(String, String...)},
+     * the method is synchronized; the records of the returned iterator may still be taken while later jobs run.
+     */
+    public synchronized RecordIterator<T> mergeToIterator(String... inputFilenames) throws FileMergerException {
+        List<File> inputFiles = filterExistingFiles(inputFilenames);
+        if (inputFiles.isEmpty()) {
+            throw new FileMergerException("Error: number of valid input files is <= 1");
+        }
+
+        query = createQuery();
+        isPartitioned = false;
+        mergeEngine.getStreamFactory().setRunFormatUsed(true);
+        isRangePlanned = isRangePlanning && isRangePlanningPossible(inputFiles);
+        memoryGovernor = (memoryBudget > 0) ? createMemoryGovernor() : null;
+        statistics = (statisticsFilename != null || progressInterval > 0) ? new MergeStatistics() : null;
+        mergeEngine.setStatistics(statistics);
+        journal = null;
+
+        MergeStatistics recordStatistics = statistics;
+        String recordStatisticsFilename = statisticsFilename;
+        ProgressReporter progressReporter = (progressInterval > 0) ?
+                new ProgressReporter(statistics, progressInterval, false) : null;
+        List<File> temporaryFiles = new ArrayList<>();
+        Closeable cleanup = () -> {
+            for (File temporaryFile : temporaryFiles) {
+                temporaryFile.delete();
+            }
+            if (progressReporter != null) {
+                progressReporter.stop();
+            }
+            if (recordStatisticsFilename != null) {
+                try (Writer statisticsWriter = Files.newBufferedWriter(Paths.get(recordStatisticsFilename))) {
+                    recordStatistics.writeJson(statisticsWriter);
+                }
+            }
+        };
+
+        boolean isOpened = false;
+        try {
+            mergeEngine.getStreamFactory().setTemporaryDirectories(getTemporaryDirectories());
+            selectSegments(inputFiles);
+            List<File> filesToMerge = inputFiles;
+            if (isExternalSort) {
+                generateRuns(inputFiles, temporaryFiles);
+                filesToMerge = new ArrayList<>(temporaryFiles);
+            }
+
+            RecordMerger<?> recordMerger;
+            if (filesToMerge.size() <= 1) {
+                recordMerger = mergeEngine.openRecordMerger(getSegments(filesToMerge), false, query);
+            } else {
+                List<PlannedMerger> plan = planMergers(null, filesToMerge, temporaryFiles);
+                if (!runMergers(plan, null, true)) {
+                    throw new FileMergerException("Error: an intermediate merger has failed");
+                }
+                PlannedMerger finalMerger = plan.get(plan.size() - 1);
+                List<File> finalInputs = new ArrayList<>();
+                for (PlannedFile plannedFile : finalMerger.getInputs()) {
+                    finalInputs.add(plannedFile.getFile());
+                }
+                recordMerger = mergeEngine.openRecordMerger(getSegments(finalInputs), finalMerger.isConcatenation(),
+                        query);
+            }
+            isOpened = true;
+            return new RecordIterator<>(recordMerger, cleanup);
+        } catch (IOException e) {
+            throw new FileMergerException(e);
+        } finally {
+            if (!isOpened) {
+                try {
+                    cleanup.close();
+                } catch (IOException e) {
+                    System.err.println("Warning: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts the bounds of the selected lines, or returns null if all the lines are merged.
+     */
+    private LineQuery createQuery() throws FileMergerException {
+        if (shardFromLine != null || shardToLine != null) {
+            if (fromLine != null || toLine != null || limit > 0) {
+                throw new FileMergerException("Error: a worker cannot select lines");
+            }
+            return LineQuery.forShard(readShardBound(shardFromLine), readShardBound(shardToLine));
+        }
+        if (fromLine == null && toLine == null && limit == 0) {
+            return null;
+        }
+        Object fromKey = (fromLine != null) ? convertBound(fromLine) : null;
+        Object toKey = (toLine != null) ? convertBound(toLine) : null;
+        return new LineQuery(fromKey, toKey, (limit > 0) ? limit : LineQuery.NO_LIMIT);
+    }
+
+    private Object readShardBound(FileSegment line) throws FileMergerException {
+        if (line == null) {
+            return null;
+        }
+        try {
+            Object key = mergeEngine.readKey(line);
+            if (key == null) {
+                throw new FileMergerException(String.format("Error: the shard bound at %d in file \"%s\" " +
+                        "is not a valid line", line.getStart(), line.getFilepath()));
+            }
+            return key;
+        } catch (IOException e) {
+            throw new FileMergerException(e);
+        }
+    }
+
+    private Object convertBound(String line) throws FileMergerException {
+        try {
+            return mergeEngine.convertKey(line);
+        } catch (LineConverterException e) {
+            throw new FileMergerException(String.format("Error: bound \"%s\" is not a valid line", line));
+        }
+    }
+
+    /**
+     * Cuts the sorted regular input files at the bounds of the query by binary search.
+     * The other files are read from the beginning, and the lines out of the bounds are skipped by the mergers.
+     */
+    private void selectSegments(List<File> inputFiles) throws IOException {
+        selectedSegments.clear();
+        if (isExternalSort) {
+            return;
+        }
+        for (File inputFile : inputFiles) {
+            FileSegment inputSegment = inputSegments.get(inputFile);
+            if (inputSegment != null) {
+                selectedSegments.put(inputFile, new FileSegment(inputFile, inputSegment.getStart(),
+                        inputSegment.getEnd()));
+            }
+        }
+        if (query == null || !query.isBounded()) {
+            return;
+        }
+        for (File inputFile : inputFiles) {
+            if (isPlainTextFile(inputFile)) {
+                FileSegment segment = mergeEngine.selectSegment(inputFile, query);
+                FileSegment inputSegment = inputSegments.get(inputFile);
+                if (inputSegment != null) {
+                    segment = new FileSegment(inputFile, Math.max(segment.getStart(), inputSegment.getStart()),
+                            Math.min(segment.getEnd(), inputSegment.getEnd()));
+                }
+                selectedSegments.put(inputFile, segment);
+            }
         }
     }
 
+    private List<FileSegment> getSegments(List<File> files) {
+        List<FileSegment> segments = new ArrayList<>();
+        for (File file : files) {
+            segments.add(selectedSegments.getOrDefault(file, new FileSegment(file)));
+        }
+        return segments;
+    }
+
+    private long getPlannedLength(File file) {
+        FileSegment segment = selectedSegments.get(file);
+        return (segment != null) ? segment.getEnd() - segment.getStart() : Compression.estimateUncompressedLength(file);
+    }
+
+    private void copyFile(File srcFile, File resultFile) throws IOException {
+        if (query != null) {
+            mergeEngine.selectLines(resultFile, getSegments(List.of(srcFile)), query);
+        } else if (selectedSegments.containsKey(srcFile)) {
+            mergeEngine.mergeSegments(resultFile, getSegments(List.of(srcFile)));
+        } else {
+            mergeEngine.copyFile(srcFile, resultFile);
+        }
+    }
+
+    /**
+     * Returns a publisher of the merged records, which are delivered with backpressure by daemon threads.
+     * Every subscriber gets its own merger, see {@link #mergeToIterator(String...)}.
+     */
+    public Flow.Publisher<T> mergeToPublisher(String... inputFilenames) {
+        return mergeToPublisher(null, inputFilenames);
+    }
+
+    /**
+     * Returns a publisher of the merged records, which are delivered with backpressure by the given executor.
+     * Every subscriber gets its own merger, see {@link #mergeToIterator(String...)}.
+     */
+    public Flow.Publisher<T> mergeToPublisher(Executor executor, String... inputFilenames) {
+        return new RecordPublisher<>(() -> mergeToIterator(inputFilenames), executor);
+    }
+
+    /**
+     * Besides regular files, accepts the standard input (given as "-") and other readable files
+     * such as named pipes and process substitutions, which are read only once.
+     */
     private static List<File> filterExistingFiles(String... inputFilenames) {
         List<File> inputFiles = new ArrayList<>();
+        boolean isStandardInputUsed = false;
         for (String filename : inputFilenames) {
+            if (StandardStream.NAME.equals(filename)) {
+                if (isStandardInputUsed) {
+                    System.err.println("Warning: standard input can be read only once");
+                    continue;
+                }
+                isStandardInputUsed = true;
+                inputFiles.add(StandardStream.newFile());
+                continue;
+            }
+
             File inputFile = new File(filename);
             if (!inputFile.exists()) {
                 System.err.printf("Warning: file \"%s\" does not exist\n", filename);
                 continue;
             }
-            if (!inputFile.isFile()) {
-                System.err.printf("Warning: file \"%s\" is not a regular file\n", filename);
+            if (inputFile.isDirectory()) {
+                System.err.printf("Warning: file \"%s\" is a directory\n", filename);
                 continue;
             }
             inputFiles.add(inputFile);
@@ -57,146 +663,790 @@ public class FileSorter<T> {
         return inputFiles;
     }
 
-    private void mergeSortedFilesImpl(File resultFile, List<File> inputFiles) throws FileMergerException {
-        Comparator<File> fileComparator = Comparator.comparingLong(File::length);
-        PriorityQueue<File> filesOrderedByLength = new PriorityQueue<>(fileComparator);
-        filesOrderedByLength.addAll(inputFiles);
+    /**
+     * Tells whether the file is a regular uncompressed file, which can be sought and memory-mapped.
+     */
+    private static boolean isPlainTextFile(File file) {
+        return StandardStream.isRegularFile(file) && !Compression.isCompressed(file);
+    }
 
-        List<File> temporaryFiles = new ArrayList<>();
-        ExecutorService executor = Executors.newCachedThreadPool();
-        AtomicBoolean errorHasOccurred = new AtomicBoolean(false);
+    private File createResultFile(String outputFilename) throws FileMergerException {
+        if (isAppend && (isOutputCompressed || StandardStream.NAME.equals(outputFilename))) {
+            throw new FileMergerException("Error: only a regular uncompressed output file can be appended to");
+        }
+        if (StandardStream.NAME.equals(outputFilename)) {
+            if (isOutputCompressed) {
+                System.err.println("Warning: the standard output is not compressed, pipe it to a compressor instead");
+            }
+            return StandardStream.newFile();
+        }
+        StreamFactory streamFactory = mergeEngine.getStreamFactory();
+        File resultFile = new File(outputFilename);
+        if (isOutputCompressed) {
+            if (indexInterval > 0) {
+                System.err.println("Warning: a compressed output file is not indexed");
+            }
+            streamFactory.setFormat(resultFile, FileFormat.GZIP);
+            streamFactory.setIndexedOutput(resultFile, null);
+            return resultFile;
+        }
+
+        streamFactory.setFormat(resultFile, FileFormat.TEXT);
+        IndexedOutput indexedOutput = null;
+        if ((indexInterval > 0 || isAppend) && (!resultFile.exists() || resultFile.isFile())) {
+            SparseIndex index = new SparseIndex(indexInterval > 0 ? indexInterval : SparseIndex.DEFAULT_INTERVAL,
+                    jobDescription);
+            indexedOutput = new IndexedOutput(index, 0, resultFile);
+        }
+        streamFactory.setIndexedOutput(resultFile, indexedOutput);
+        return resultFile;
+    }
+
+    /**
+     * Merges the input files into the existing sorted result file. The part of the file preceding the first key
+     * of the input files is kept: if the file has no greater lines, the merged input files are just appended
+     * to it, otherwise the kept part is copied into a new file with {@link FileChannel#transferTo},
+     * the rest of the file is merged with the input files after it, and the new file replaces the result file.
+     */
+    private boolean appendToFile(File file, List<File> inputFiles) throws IOException, FileMergerException {
+        StreamFactory streamFactory = mergeEngine.getStreamFactory();
+        if (Compression.isCompressed(file)) {
+            throw new FileMergerException("Error: only a regular uncompressed output file can be appended to");
+        }
 
+        File preparedFile = null;
         try {
-            for (int mergersRemaining = inputFiles.size() - 1; mergersRemaining > 0; --mergersRemaining) {
-                File firstFile, secondFile;
-                synchronized (filesOrderedByLength) {
-                    while (filesOrderedByLength.size() <= 1) {
-                        if (errorHasOccurred.get()) {
-                            return;
-                        }
-                        filesOrderedByLength.wait();
+            List<File> newFiles = inputFiles;
+            boolean isSearchable = !isExternalSort && inputFiles.size() < maxFanIn && inputFiles.stream()
+                    .allMatch(FileSorter::isPlainTextFile);
+            if (!isSearchable) {
+                // the new lines are prepared as a single sorted text file, which can be searched for the first key
+                long preparedLength = 0;
+                for (File inputFile : inputFiles) {
+                    preparedLength += getPlannedLength(inputFile);
+                }
+                preparedFile = streamFactory.getTemporaryDirectories().createFile(".tmp",
+                        preparedLength, inputFiles);
+                boolean isCompleted = true;
+                if (isExternalSort) {
+                    isCompleted = sortAndMergeFiles(preparedFile, inputFiles);
+                } else if (inputFiles.size() == 1) {
+                    mergeEngine.copyFile(inputFiles.get(0), preparedFile);
+                } else {
+                    isCompleted = mergeSortedFilesImpl(preparedFile, inputFiles);
+                }
+                if (!isCompleted) {
+                    return false;
+                }
+                newFiles = List.of(preparedFile);
+            }
+
+            long fileLength = file.length();
+            SparseIndex index = SparseIndex.load(file, jobDescription);
+            long appendOffset = mergeEngine.findAppendOffset(file, index, newFiles);
+            // a missing index, or one written for another type or order of lines, is rebuilt for the kept part
+            SparseIndex keptIndex = (index != null) ? index.truncate(appendOffset) :
+                    SparseIndex.build(streamFactory, file, appendOffset,
+                            indexInterval > 0 ? indexInterval : SparseIndex.DEFAULT_INTERVAL, jobDescription);
+
+            List<FileSegment> segments = new ArrayList<>();
+            long mergedLength = fileLength - appendOffset;
+            for (File newFile : newFiles) {
+                segments.add(new FileSegment(newFile));
+                mergedLength += newFile.length();
+            }
+            addPlannedBytes(mergedLength);
+
+            if (appendOffset == fileLength) {
+                // all the new lines go after the lines of the file
+                streamFactory.setIndexedOutput(file, new IndexedOutput(keptIndex, fileLength, file));
+                try {
+                    mergeEngine.mergeSegments(file, segments);
+                } catch (IOException e) {
+                    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                        channel.truncate(fileLength);
                     }
+                    throw e;
+                }
+                return true;
+            }
+
+            File newResultFile = File.createTempFile("mergesort", ".tmp", file.getAbsoluteFile().getParentFile());
+            try {
+                copyPrefix(file, newResultFile, appendOffset);
+                segments.add(0, new FileSegment(file, appendOffset, FileSegment.TO_END_OF_FILE));
+                IndexedOutput indexedOutput = new IndexedOutput(keptIndex, appendOffset, null);
+                streamFactory.setIndexedOutput(newResultFile, indexedOutput);
+                mergeEngine.mergeSegments(newResultFile, segments);
+                Files.move(newResultFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                keptIndex.write(file, indexedOutput.getLength());
+            } finally {
+                streamFactory.setIndexedOutput(newResultFile, null);
+                newResultFile.delete();
+            }
+            return true;
+        } finally {
+            if (preparedFile != null) {
+                preparedFile.delete();
+            }
+        }
+    }
+
+    private void copyPrefix(File file, File newFile, long length) throws IOException {
+        TaskStatistics taskStatistics = mergeEngine.startTask("copy");
+        taskStatistics.setFiles(newFile, List.of(file));
+        try (
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                FileChannel newChannel = FileChannel.open(newFile.toPath(), StandardOpenOption.WRITE)
+        ) {
+            long startTime = System.nanoTime();
+            long position = 0;
+            while (position < length) {
+                position += channel.transferTo(position, length - position, newChannel);
+            }
+
+            // the bytes are copied by the kernel, so the time is accounted as writing
+            taskStatistics.addRead(length, 0);
+            taskStatistics.addWrite(length, System.nanoTime() - startTime);
+        }
+        taskStatistics.finish();
+    }
+
+    /**
+     * The partitioned final merger reads every input file once per partition and writes the result
+     * by concatenating files, so it needs regular uncompressed input files (or sorted runs)
+     * and a regular result file, which is not indexed.
+     */
+    private boolean isPartitioningPossible(File resultFile, List<File> inputFiles) {
+        if (query != null) {
+            System.err.println("Warning: the lines are selected by a single merger, a single partition is used");
+            return false;
+        }
+        if (!inputSegments.isEmpty()) {
+            System.err.println("Warning: segments of input files are merged by a single merger, " +
+                    "a single partition is used");
+            return false;
+        }
+        boolean isResultRegular = !StandardStream.isStandardStream(resultFile) &&
+                (!resultFile.exists() || resultFile.isFile()) &&
+                mergeEngine.getStreamFactory().getIndexedOutput(resultFile) == null;
+        boolean areInputsRegular = isExternalSort ||
+                inputFiles.stream().allMatch(FileSorter::isPlainTextFile);
+        if (!isResultRegular || !areInputsRegular) {
+            System.err.println("Warning: partitioned merge requires regular uncompressed input files " +
+                    "and a regular output file without an index, a single partition is used");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Worker processes merge key ranges of the input files, which have to be sorted regular files,
+     * and the job cannot be resumed, since the workers keep no journal.
+     */
+    private boolean isShardingPossible(List<File> inputFiles) {
+        if (isAppend || isExternalSort || query != null || workDirectory != null || !inputSegments.isEmpty()) {
+            System.err.println("Warning: worker processes cannot append to the output file, sort files, select lines " +
+                    "or keep a work directory, the files are merged by this process");
+            return false;
+        }
+        if (!inputFiles.stream().allMatch(FileSorter::isPlainTextFile)) {
+            System.err.println("Warning: worker processes require regular uncompressed input files, " +
+                    "the files are merged by this process");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The input files are read before they are merged to find their key ranges, so they have to be regular
+     * uncompressed files; the runs of unsorted files are not planned by ranges, since they overlap anyway.
+     */
+    private boolean isRangePlanningPossible(List<File> inputFiles) {
+        if (isExternalSort) {
+            return false;
+        }
+        if (query != null || !inputSegments.isEmpty()) {
+            System.err.println("Warning: the mergers of selected lines are planned by file lengths");
+            return false;
+        }
+        if (!inputFiles.stream().allMatch(FileSorter::isPlainTextFile)) {
+            System.err.println("Warning: merge planning by key ranges requires regular uncompressed input files, " +
+                    "the mergers are planned by file lengths");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fits the buffer size, the fan-in and the sort memory into the memory budget and reports them.
+     * A stream holds its own buffer, a line or decoder buffer and, with asynchronous I/O, the queued buffers.
+     */
+    private MemoryGovernor createMemoryGovernor() {
+        StreamFactory streamFactory = mergeEngine.getStreamFactory();
+        int buffersPerStream = 2 + (streamFactory.isAsynchronous() ? streamFactory.getQueueDepth() : 0);
+        MemoryGovernor governor = new MemoryGovernor(memoryBudget, buffersPerStream);
+        int initialBufferSize = isBufferSizeFixed ? streamFactory.getBufferSize() :
+                Math.max(Math.min(streamFactory.getBufferSize(), MemoryGovernor.MAX_BUFFER_SIZE),
+                        MemoryGovernor.MIN_BUFFER_SIZE);
+        if (!governor.fit(maxFanIn, threadsNumber, initialBufferSize, isBufferSizeFixed)) {
+            System.err.printf("Warning: memory budget of %d KiB is too small even for a merger of 2 files, " +
+                    "it will be exceeded\n", memoryBudget >> 10);
+        }
+        if (memoryBudget > Runtime.getRuntime().maxMemory()) {
+            System.err.printf("Warning: memory budget of %d MiB exceeds the maximum heap size of %d MiB\n",
+                    memoryBudget >> 20, Runtime.getRuntime().maxMemory() >> 20);
+        }
+
+        streamFactory.setBufferSize(governor.getBufferSize());
+        maxFanIn = governor.getFanIn();
+        if (!isSortMemoryFixed) {
+            sortMemory = governor.getSortMemory();
+        }
+        System.err.printf("Memory budget %d MiB: %d KiB buffers, fan-in %d, %d of %d mergers at full fan-in " +
+                        "at once%s\n", memoryBudget >> 20, governor.getBufferSize() >> 10, maxFanIn,
+                governor.getConcurrentMergers(), threadsNumber,
+                isExternalSort ? String.format(", %d MiB to sort a run", sortMemory >> 20) : "");
+        return governor;
+    }
+
+    private boolean sortAndMergeFiles(File resultFile, List<File> inputFiles)
+            throws IOException, FileMergerException {
+        StreamFactory streamFactory = mergeEngine.getStreamFactory();
+        List<File> runFiles = new ArrayList<>();
+        try {
+            List<File> completedRuns = (journal != null) ? journal.getCompletedOutputs(SORT_STEP) : null;
+            if (completedRuns != null) {
+                for (File runFile : completedRuns) {
+                    runFiles.add(streamFactory.toTemporaryFile(runFile));
+                }
+            } else {
+                generateRuns(inputFiles, runFiles);
+            }
 
-                    firstFile = filesOrderedByLength.poll();
-                    secondFile = filesOrderedByLength.poll();
+            if (runFiles.isEmpty()) {
+                streamFactory.openLineWriter(resultFile).close();
+            } else if (runFiles.size() == 1 && !streamFactory.isRunFile(runFiles.get(0)) && query == null &&
+                    StandardStream.isRegularFile(resultFile) &&
+                    streamFactory.getFormat(resultFile) == FileFormat.TEXT &&
+                    streamFactory.getIndexedOutput(resultFile) == null) {
+                Files.move(runFiles.get(0).toPath(), resultFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } else if (runFiles.size() == 1) {
+                copyFile(runFiles.get(0), resultFile);
+            } else {
+                return mergeSortedFilesImpl(resultFile, runFiles);
+            }
+            return true;
+        } finally {
+            // the runs in the work directory are kept until the whole job is completed
+            if (journal == null) {
+                for (File runFile : runFiles) {
+                    runFile.delete();
                 }
+            }
+        }
+    }
 
-                File outputFile;
-                if (mergersRemaining == 1) {
-                    outputFile = resultFile;
-                } else {
-                    outputFile = File.createTempFile("mergesort", ".tmp");
-                    temporaryFiles.add(outputFile);
+    private void generateRuns(List<File> inputFiles, List<File> runFiles) throws IOException {
+        long inputLength = 0;
+        for (File inputFile : inputFiles) {
+            inputLength += Compression.estimateUncompressedLength(inputFile);
+        }
+        addPlannedBytes(inputLength);
+
+        TaskStatistics taskStatistics = mergeEngine.startTask("sort");
+        taskStatistics.setFiles(mergeEngine.getStreamFactory().getTemporaryDirectories().getFirstDirectory(),
+                inputFiles);
+        mergeEngine.createRunGenerator(sortMemory).generateRuns(inputFiles, runFiles, taskStatistics);
+        taskStatistics.finish();
+        for (File runFile : runFiles) {
+            addTemporaryBytes(runFile.length());
+        }
+
+        // streamed inputs may not be the same when the job is restarted
+        if (journal != null && inputFiles.stream().allMatch(File::isFile)) {
+            journal.commit(SORT_STEP, runFiles);
+        }
+    }
+
+    /**
+     * Merges the files according to the plan and returns false if an error has occurred
+     * and has already been reported.
+     */
+    private boolean mergeSortedFilesImpl(File resultFile, List<File> inputFiles) throws FileMergerException {
+        List<File> temporaryFiles = new ArrayList<>();
+        try {
+            List<PlannedMerger> plan = planMergers(resultFile, inputFiles, temporaryFiles);
+            if (journal != null) {
+                skipCompletedMergers(plan);
+            }
+            return runMergers(plan, resultFile, false);
+        } catch (IOException e) {
+            throw new FileMergerException(e);
+        } finally {
+            // the files in the work directory are kept for a restart
+            if (journal == null) {
+                for (File tempFile : temporaryFiles) {
+                    tempFile.delete();
                 }
+            }
+        }
+    }
 
-                executor.submit(() -> {
-                    try {
-                        mergeTwoFiles(outputFile, firstFile, secondFile);
-                        synchronized (filesOrderedByLength) {
-                            filesOrderedByLength.add(outputFile);
-                            filesOrderedByLength.notify();
-                        }
-                    } catch (Exception e) {
-                        System.err.println(e.getMessage());
-                        synchronized (filesOrderedByLength) {
-                            errorHasOccurred.set(true);
-                            filesOrderedByLength.notify();
+    /**
+     * Runs the mergers of the plan and returns false if an error has occurred and has already been reported.
+     * A lazy final merger is not run: only the mergers producing its input files are waited for.
+     */
+    private boolean runMergers(List<PlannedMerger> plan, File resultFile, boolean isFinalMergerLazy)
+            throws FileMergerException {
+        MergeScheduler scheduler = new MergeScheduler(threadsNumber, isVirtualThreads, statistics,
+                memoryGovernor);
+        PartitionedMerger partitionedMerger = null;
+        boolean errorHasOccurred = false;
+
+        try {
+            PlannedMerger lastMerger = plan.get(plan.size() - 1);
+            List<CompletableFuture<Void>> awaitedMergers = new ArrayList<>();
+            for (PlannedMerger merger : plan) {
+                if (merger.isSkipped()) {
+                    continue;
+                }
+
+                List<File> filesToMerge = new ArrayList<>();
+                List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+                for (PlannedFile plannedFile : merger.getInputs()) {
+                    filesToMerge.add(plannedFile.getFile());
+                    dependencies.add(plannedFile.getCompletion());
+                }
+                if (isFinalMergerLazy && merger == lastMerger) {
+                    awaitedMergers.addAll(dependencies);
+                    continue;
+                }
+
+                PlannedFile output = merger.getOutput();
+                boolean isFinalMerger = (output.getFile() == resultFile);
+                // a partitioned final merger writes the result twice, as partitions and as their concatenation
+                boolean isPartitionedMerger = isFinalMerger && isPartitioned && !merger.isConcatenation();
+                addPlannedBytes(isPartitionedMerger ? 2 * output.getLength() : output.getLength());
+                long memory = getMergerMemory(merger);
+
+                CompletableFuture<Void> completion;
+                if (merger.isConcatenation()) {
+                    Set<File> verifiedFiles = new HashSet<>();
+                    for (PlannedFile plannedFile : merger.getInputs()) {
+                        if (plannedFile.isVerified()) {
+                            verifiedFiles.add(plannedFile.getFile());
                         }
                     }
-                });
+                    completion = scheduler.schedule(reserveSpace(output, () -> mergeEngine.concatenateFiles(
+                            output.getFile(), filesToMerge, verifiedFiles)), dependencies, memory);
+                } else if (isPartitionedMerger) {
+                    // the partitions of the final merger run as separate mergers of the scheduler
+                    partitionedMerger = new PartitionedMerger(mergeEngine, partitionsNumber, scheduler);
+                    File mergerOutputFile = getMergerOutputFile(output.getFile(), merger.getStep());
+                    completion = partitionedMerger.schedule(mergerOutputFile, filesToMerge, dependencies, memory,
+                            () -> completeMerger(output.getFile(), mergerOutputFile, true, merger.getStep()));
+                } else {
+                    completion = scheduler.schedule(reserveSpace(output, () -> mergeFiles(output.getFile(),
+                            filesToMerge, isFinalMerger, merger.getStep())), dependencies, memory);
+                }
+                output.setCompletion(completion);
+                if (merger == lastMerger) {
+                    awaitedMergers.add(completion);
+                }
             }
-        } catch (IOException e) {
-            errorHasOccurred.set(true);
-            throw new FileMergerException(e);
+
+            CompletableFuture.allOf(awaitedMergers.toArray(new CompletableFuture<?>[0])).get();
+        } catch (ExecutionException e) {
+            errorHasOccurred = true;
+            Throwable cause = (e.getCause() instanceof UncheckedIOException) ? e.getCause().getCause() : e.getCause();
+            System.err.println(cause.getMessage());
         } catch (InterruptedException e) {
-            errorHasOccurred.set(true);
+            errorHasOccurred = true;
             Thread.currentThread().interrupt();
             throw new FileMergerException(e);
         } finally {
-            if (errorHasOccurred.get()) {
-                executor.shutdownNow();
-            } else {
-                executor.shutdown();
+            if (errorHasOccurred) {
+                scheduler.cancel();
             }
 
             try {
-                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                errorHasOccurred.set(true);
+                scheduler.close();
+            } catch (InterruptedIOException e) {
+                errorHasOccurred = true;
+            }
+            if (partitionedMerger != null) {
+                partitionedMerger.finish();
             }
 
-            if (errorHasOccurred.get()) {
+            if (errorHasOccurred) {
                 System.err.println("File merger process was interrupted or an error has occurred. " +
                         "The result may have been incorrect.");
             }
+        }
+        return !errorHasOccurred;
+    }
 
-            for (File tempFile : temporaryFiles) {
-                tempFile.delete();
-            }
+    /**
+     * Returns the memory of the buffers of the merger: a concatenation reads one file at a time.
+     * The ranges of a partitioned merger are merged by separate mergers, each of which takes this memory.
+     */
+    private long getMergerMemory(PlannedMerger merger) {
+        if (memoryGovernor == null) {
+            return 0;
+        }
+        int bufferSize = mergeEngine.getStreamFactory().getBufferSize();
+        if (merger.isConcatenation()) {
+            return memoryGovernor.getMemory(1, 1, bufferSize);
         }
+        return memoryGovernor.getMemory(1, merger.getInputs().size(), bufferSize);
     }
 
-    private void copyFile(File srcFile, File destFile) throws IOException {
-        try (
-                SortedFileReader<T> srcFileReader = new SortedFileReader<>(srcFile, lineConverter, lineComparator);
-                PrintWriter destFileWriter = new PrintWriter(destFile)
-        ) {
-            while (!srcFileReader.hasReachedEnd()) {
-                transferLine(destFileWriter, srcFileReader);
+    /**
+     * Builds the merge plan in advance: the lengths of the merged files are known unless some lines are lost,
+     * and the plan only has to be close to the optimal one. The plan is the same for the same input files
+     * and settings, which allows to resume it from a work directory.
+     * <p>
+     * If the mergers are planned by key ranges, every cluster of files with overlapping ranges is merged
+     * into one file, and the final step concatenates the merged clusters and the files overlapping no other file
+     * in key order. The files are weighted by their numbers of lines then.
+     * <p>
+     * If the result file is null, the final merger writes a temporary file.
+     */
+    private List<PlannedMerger> planMergers(File resultFile, List<File> inputFiles, List<File> temporaryFiles)
+            throws IOException {
+        List<PlannedMerger> plan = new ArrayList<>();
+        if (!isRangePlanned) {
+            List<PlannedFile> plannedFiles = new ArrayList<>();
+            for (File inputFile : inputFiles) {
+                boolean isStreamed = !StandardStream.isRegularFile(inputFile);
+                long length = isStreamed ? 0 : getPlannedLength(inputFile);
+                plannedFiles.add(newInputFile(inputFile, length, length, isStreamed, false));
             }
-            checkFileForCorrectness(srcFileReader);
+            planMergers(plan, plannedFiles, resultFile, temporaryFiles);
+            return plan;
+        }
+
+        List<List<PlannedFile>> clusters = new ArrayList<>();
+        for (List<FileRange> cluster : mergeEngine.clusterByKeyRanges(inputFiles, threadsNumber)) {
+            List<PlannedFile> plannedFiles = new ArrayList<>();
+            for (FileRange range : cluster) {
+                plannedFiles.add(newInputFile(range.getFile(), range.getFile().length(), range.getLinesNumber(),
+                        false, range.isVerified()));
+            }
+            clusters.add(plannedFiles);
+        }
+        if (clusters.size() == 1) {
+            planMergers(plan, clusters.get(0), resultFile, temporaryFiles);
+            return plan;
         }
+
+        List<PlannedFile> parts = new ArrayList<>();
+        long resultLength = 0;
+        for (List<PlannedFile> cluster : clusters) {
+            PlannedFile part = (cluster.size() == 1) ? cluster.get(0) :
+                    planMergers(plan, cluster, null, temporaryFiles);
+            parts.add(part);
+            resultLength += part.getLength();
+        }
+        PlannedFile output = new PlannedFile(resultFile, resultLength, resultLength, false, false);
+        plan.add(new PlannedMerger(parts, output, null, true));
+        return plan;
     }
 
-    private void mergeTwoFiles(File resultFile, File firstFile, File secondFile) throws IOException {
-        try (
-                SortedFileReader<T> firstSortedFile = new SortedFileReader<>(firstFile, lineConverter, lineComparator);
-                SortedFileReader<T> secondSortedFile = new SortedFileReader<>(secondFile, lineConverter, lineComparator);
-                PrintWriter resultFileWriter = new PrintWriter(resultFile)
-        ) {
-            while (!firstSortedFile.hasReachedEnd() && !secondSortedFile.hasReachedEnd()) {
-                if (Thread.currentThread().isInterrupted()) {
-                    return;
-                }
+    private static PlannedFile newInputFile(File file, long length, long weight, boolean isStreamed,
+                                            boolean isVerified) {
+        PlannedFile plannedFile = new PlannedFile(file, length, weight, isStreamed, isVerified);
+        plannedFile.setCompletion(CompletableFuture.completedFuture(null));
+        return plannedFile;
+    }
 
-                T firstCurrentLine = firstSortedFile.getCurrentConvertedLine();
-                T secondCurrentLine = secondSortedFile.getCurrentConvertedLine();
-                if (lineComparator.compare(firstCurrentLine, secondCurrentLine) < 0) {
-                    transferLine(resultFileWriter, firstSortedFile);
-                } else {
-                    transferLine(resultFileWriter, secondSortedFile);
-                }
+    /**
+     * Plans the mergers of the files into one and returns it. The last merger writes the target file,
+     * or an intermediate file if the target is null.
+     */
+    private PlannedFile planMergers(List<PlannedMerger> plan, List<PlannedFile> files, File targetFile,
+                                    List<File> temporaryFiles) throws IOException {
+        // streamed inputs (standard input, pipes) have unknown lengths and are consumed as late as possible,
+        // by the final merger unless there are too many of them, so their producers are not blocked for long
+        Comparator<PlannedFile> fileComparator = Comparator.comparing(PlannedFile::isStreamed)
+                .thenComparingLong(PlannedFile::getWeight);
+        PriorityQueue<PlannedFile> filesOrderedByWeight = new PriorityQueue<>(fileComparator);
+        filesOrderedByWeight.addAll(files);
+
+        int filesPerMerger = getFirstMergerFanIn(filesOrderedByWeight.size());
+        while (filesOrderedByWeight.size() > 1) {
+            List<PlannedFile> inputs = new ArrayList<>();
+            long mergedLength = 0;
+            long mergedWeight = 0;
+            boolean isStreamed = false;
+            for (int i = 0; i < filesPerMerger; ++i) {
+                PlannedFile plannedFile = filesOrderedByWeight.poll();
+                inputs.add(plannedFile);
+                mergedLength += plannedFile.getLength();
+                mergedWeight += plannedFile.getWeight();
+                isStreamed |= plannedFile.isStreamed();
             }
 
-            SortedFileReader<T> remainingFile = (firstSortedFile.hasReachedEnd()) ? secondSortedFile : firstSortedFile;
-            while (!remainingFile.hasReachedEnd()) {
-                if (Thread.currentThread().isInterrupted()) {
-                    return;
+            File outputFile;
+            // only the mergers of regular files are recorded in the journal, since streams are read once
+            String step = (journal != null && !isStreamed) ? MERGE_STEP_PREFIX + plan.size() : null;
+            if (filesOrderedByWeight.isEmpty() && targetFile != null) {
+                outputFile = targetFile;
+                step = null;
+            } else if (step != null) {
+                outputFile = mergeEngine.getStreamFactory().toTemporaryFile(journal.getOutputFile(step, ".tmp"));
+            } else {
+                List<File> sourceFiles = new ArrayList<>();
+                for (PlannedFile input : inputs) {
+                    sourceFiles.add(input.getFile());
                 }
+                outputFile = mergeEngine.getStreamFactory().createTemporaryFile(".tmp", mergedLength, sourceFiles);
+                temporaryFiles.add(outputFile);
+            }
+
+            // the output of a merger is valid and sorted
+            PlannedFile output = new PlannedFile(outputFile, mergedLength, mergedWeight, isStreamed, true);
+            plan.add(new PlannedMerger(inputs, output, step, false));
+            filesOrderedByWeight.add(output);
+            filesPerMerger = Math.min(maxFanIn, filesOrderedByWeight.size());
+        }
+        return filesOrderedByWeight.poll();
+    }
+
+    /**
+     * Walking back from the final merger, skips the mergers whose outputs have been recorded intact
+     * in the journal, as well as the mergers whose outputs are needed only by the skipped ones.
+     */
+    private void skipCompletedMergers(List<PlannedMerger> plan) throws IOException {
+        Set<PlannedFile> neededFiles = new HashSet<>();
+        neededFiles.add(plan.get(plan.size() - 1).getOutput());
+        for (int i = plan.size() - 1; i >= 0; --i) {
+            PlannedMerger merger = plan.get(i);
+            PlannedFile output = merger.getOutput();
+            if (!neededFiles.contains(output) ||
+                    (merger.getStep() != null && journal.getCompletedOutputs(merger.getStep()) != null)) {
+                merger.skip();
+                output.setCompletion(CompletableFuture.completedFuture(null));
+            } else {
+                neededFiles.addAll(merger.getInputs());
+            }
+        }
+    }
+
+    /**
+     * Wraps the merger so that it reserves the planned length of its output while it runs, if the output
+     * is written to a temporary directory: a merger which cannot fit fails before it starts.
+     */
+    private MergeScheduler.Merger reserveSpace(PlannedFile output, MergeScheduler.Merger merger) {
+        return () -> {
+            StreamFactory streamFactory = mergeEngine.getStreamFactory();
+            TemporaryDirectories directories = streamFactory.getTemporaryDirectories();
+            long reservedSpace = directories.reserve(output.getFile(), output.getLength(),
+                    streamFactory.getFormat(output.getFile()).isCompressed());
+            try {
+                merger.merge();
+            } finally {
+                directories.release(output.getFile(), reservedSpace);
+            }
+        };
+    }
+
+    private void mergeFiles(File outputFile, List<File> filesToMerge, boolean isFinalMerger, String step)
+            throws IOException {
+        File mergerOutputFile = getMergerOutputFile(outputFile, step);
+        if (query != null) {
+            // every merger stops at the limit, since no more lines of its output can be selected
+            mergeEngine.selectLines(mergerOutputFile, getSegments(filesToMerge), query);
+        } else {
+            mergeEngine.mergeSegments(mergerOutputFile, getSegments(filesToMerge));
+        }
+        completeMerger(outputFile, mergerOutputFile, isFinalMerger, step);
+    }
+
+    /**
+     * Returns the file the merger writes: a merger recorded in the journal writes a temporary file,
+     * which is renamed when it is complete.
+     */
+    private File getMergerOutputFile(File outputFile, String step) {
+        return (step != null) ?
+                mergeEngine.getStreamFactory().toTemporaryFile(MergeJournal.getTemporaryFile(outputFile)) : outputFile;
+    }
+
+    private void completeMerger(File outputFile, File mergerOutputFile, boolean isFinalMerger, String step)
+            throws IOException {
+        if (!isFinalMerger) {
+            addTemporaryBytes(mergerOutputFile.length());
+        }
+        if (step != null) {
+            journal.commit(step, mergerOutputFile, outputFile);
+        }
+    }
 
-                transferLine(resultFileWriter, remainingFile);
+    private List<File> getTemporaryDirectories() {
+        return (workDirectory != null) ? List.of(MergeJournal.getJobDirectory(workDirectory)) : temporaryDirectories;
+    }
+
+    /**
+     * Opens the journal of the work directory, which never deletes the input and output files of the job.
+     */
+    private MergeJournal createJournal(File resultFile, List<File> inputFiles) throws IOException {
+        List<File> keptFiles = new ArrayList<>(inputFiles);
+        keptFiles.add(resultFile);
+        return new MergeJournal(workDirectory, getJobFingerprint(inputFiles), keptFiles);
+    }
+
+    /**
+     * Identifies the job by its input files and the settings which change the temporary files or the merge plan.
+     */
+    private String getJobFingerprint(List<File> inputFiles) throws IOException {
+        StringBuilder job = new StringBuilder();
+        job.append(jobDescription).append('\n')
+                .append(mergeEngine.getClass().getName()).append('\n')
+                .append(isExternalSort ? sortMemory : 0).append('\n')
+                .append(maxFanIn).append('\n')
+                .append(isPartitioned).append('\n')
+                .append(mergeEngine.isInputTrusted()).append('\n')
+                .append(isRangePlanned).append('\n')
+                .append(mergeEngine.getStreamFactory().isRunCompressed()).append('\n')
+                .append(fromLine).append('\n')
+                .append(toLine).append('\n')
+                .append(limit).append('\n');
+        for (File inputFile : inputFiles) {
+            job.append(inputFile.getAbsolutePath()).append('\n');
+            if (StandardStream.isRegularFile(inputFile)) {
+                job.append(inputFile.length()).append(' ').append(inputFile.lastModified()).append('\n');
             }
+        }
+
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            byte[] digest = messageDigest.digest(job.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder fingerprint = new StringBuilder();
+            for (byte digestByte : digest) {
+                fingerprint.append(String.format("%02x", digestByte));
+            }
+            return fingerprint.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void addPlannedBytes(long bytes) {
+        if (statistics != null) {
+            statistics.addPlannedBytes(bytes);
+        }
+    }
 
-            checkFileForCorrectness(firstSortedFile);
-            checkFileForCorrectness(secondSortedFile);
+    private void addTemporaryBytes(long bytes) {
+        if (statistics != null) {
+            statistics.addTemporaryBytes(bytes);
         }
     }
 
-    private void transferLine(PrintWriter destFileWriter, SortedFileReader<T> srcFileReader) throws IOException {
-        destFileWriter.println(srcFileReader.getCurrentLine());
-        srcFileReader.moveToNextLineInOrder();
+    private int getFirstMergerFanIn(int filesNumber) {
+        if (filesNumber <= maxFanIn) {
+            return filesNumber;
+        }
+        // Each merger replaces several files with one. Making the first merger the smallest one
+        // lets all the following mergers (which handle longer files) use the full fan-in.
+        return (filesNumber - 2) % (maxFanIn - 1) + 2;
     }
 
-    private void checkFileForCorrectness(SortedFileReader<T> inputFile) {
-        if (!inputFile.isValid()) {
-            System.err.printf("Warning: file \"%s\" contains %d invalid lines; " +
-                    "some data have been lost\n", inputFile.getFilepath(), inputFile.getInvalidLinesNumber());
+    /**
+     * Input or output file of the merge plan, which is ready when its merger completes.
+     * A streamed file is a non-regular input or a merge of one, and its length is only a lower bound.
+     */
+    private static class PlannedFile {
+        private File file;
+        private long length;
+        private long weight;
+        private boolean isStreamed;
+        private boolean isVerified;
+        private CompletableFuture<Void> completion;
+
+        /**
+         * The weight orders the files for merging; it is either the length or the number of lines of the file.
+         * A verified file is known to be valid and sorted.
+         */
+        PlannedFile(File file, long length, long weight, boolean isStreamed, boolean isVerified) {
+            this.file = file;
+            this.length = length;
+            this.weight = weight;
+            this.isStreamed = isStreamed;
+            this.isVerified = isVerified;
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        long getWeight() {
+            return weight;
+        }
+
+        boolean isStreamed() {
+            return isStreamed;
+        }
+
+        boolean isVerified() {
+            return isVerified;
+        }
+
+        CompletableFuture<Void> getCompletion() {
+            return completion;
+        }
+
+        void setCompletion(CompletableFuture<Void> completion) {
+            this.completion = completion;
+        }
+    }
+
+    /**
+     * Merger of the plan; its step is the name it is recorded with in the journal, or null if it is not recorded.
+     * A concatenation writes the lines of its inputs one after another, since their key ranges do not overlap.
+     */
+    private static class PlannedMerger {
+        private List<PlannedFile> inputs;
+        private PlannedFile output;
+        private String step;
+        private boolean isConcatenation;
+        private boolean isSkipped = false;
+
+        PlannedMerger(List<PlannedFile> inputs, PlannedFile output, String step, boolean isConcatenation) {
+            this.inputs = inputs;
+            this.output = output;
+            this.step = step;
+            this.isConcatenation = isConcatenation;
+        }
+
+        List<PlannedFile> getInputs() {
+            return inputs;
+        }
+
+        PlannedFile getOutput() {
+            return output;
+        }
+
+        String getStep() {
+            return step;
+        }
+
+        boolean isConcatenation() {
+            return isConcatenation;
+        }
+
+        boolean isSkipped() {
+            return isSkipped;
         }
 
-        if (!inputFile.isOrdered()) {
-            System.err.printf("Warning: file \"%s\" contains %d lines that are out of order; " +
-                    "some data have been lost\n", inputFile.getFilepath(), inputFile.getUnorderedLinesNumber());
+        void skip() {
+            isSkipped = true;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package mergesort;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes text lines and adds the first line after every interval of bytes to the sparse index of the file,
+ * which is saved when the writer is closed if the output has a target (see {@link IndexedOutput}).
+ */
+class IndexedLineWriter extends LineWriter {
+    private IndexedOutput output;
+    private SparseIndex index;
+    private long fileOffset;
+    private long nextEntryOffset;
+
+    IndexedLineWriter(OutputStream outputStream, int bufferSize, IndexedOutput output) {
+        super(outputStream, bufferSize);
+        this.output = output;
+        index = output.getIndex();
+        fileOffset = output.getStartOffset();
+        nextEntryOffset = Math.max(index.getNextEntryOffset(), fileOffset);
+    }
+
+    /**
+     * Every line has to pass through the writer to be indexed.
+     */
+    @Override
+    boolean isRawCopySupported() {
+        return false;
+    }
+
+    @Override
+    void writeLine(byte[] line, int offset, int length) throws IOException {
+        if (fileOffset >= nextEntryOffset) {
+            addEntry(Arrays.copyOfRange(line, offset, offset + length));
+        }
+        super.writeLine(line, offset, length);
+        fileOffset += length + LINE_SEPARATOR.length;
+    }
+
+    @Override
+    void writeLine(ByteBuffer line) throws IOException {
+        int length = line.remaining();
+        if (fileOffset >= nextEntryOffset) {
+            byte[] bytes = new byte[length];
+            line.duplicate().get(bytes);
+            addEntry(bytes);
+        }
+        super.writeLine(line);
+        fileOffset += length + LINE_SEPARATOR.length;
+    }
+
+    private void addEntry(byte[] line) {
+        index.addEntry(fileOffset, line);
+        nextEntryOffset = fileOffset + index.getInterval();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        output.setLength(fileOffset);
+        if (output.getTarget() != null) {
+            index.write(output.getTarget(), fileOffset);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package mergesort;
+
+import java.io.File;
+
+/**
+ * Tells how an output file is written together with its {@link SparseIndex}. The file is written
+ * from the start offset on, keeping its preceding bytes, which are described by the entries the given index
+ * already holds. When the writer is closed, the index is saved as the index of the target file, which is the file
+ * itself; a file going to be renamed when complete has no target, and its index is saved by the caller
+ * once the file has been renamed, so that the index never describes a file not yet in place.
+ */
+class IndexedOutput {
+    private SparseIndex index;
+    private long startOffset;
+    private File target;
+    private long length = -1;
+
+    IndexedOutput(SparseIndex index, long startOffset, File target) {
+        this.index = index;
+        this.startOffset = startOffset;
+        this.target = target;
+    }
+
+    SparseIndex getIndex() {
+        return index;
+    }
+
+    long getStartOffset() {
+        return startOffset;
+    }
+
+    File getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns the length of the written file, or -1 if the writer has not been closed yet.
+     */
+    long getLength() {
+        return length;
+    }
+
+    void setLength(long length) {
+        this.length = length;
+    }
+}
@@ -0,0 +1,19 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts raw lines to keys and orders the keys the same way the merge engine orders lines.
+ * Used to look up keys in sorted files without reading them through.
+ */
+interface KeyOrder<K> {
+    /**
+     * Converts the bytes between the position and the limit of the buffer. The buffer may be reused
+     * after the call, so the key must not refer to it.
+     */
+    K convertLine(ByteBuffer line) throws LineConverterException;
+
+    int compare(K firstKey, K secondKey);
+}
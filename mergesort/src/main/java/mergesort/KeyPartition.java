@@ -0,0 +1,59 @@
+package mergesort;
+
+import java.util.List;
+
+/**
+ * A key range [lowerKey, upperKey) of several files together with the segments of the files holding it.
+ * The keys belong to the key order of the merge engine; a null key leaves the range open. Every key is
+ * the key of a line of one of the files, whose position is given as well.
+ * The segments are found by binary search, so the segments of a file which is not quite sorted
+ * may also hold lines out of the range.
+ */
+class KeyPartition {
+    private List<FileSegment> segments;
+    private Object lowerKey;
+    private FileSegment lowerKeyLine;
+    private Object upperKey;
+    private FileSegment upperKeyLine;
+
+    KeyPartition(List<FileSegment> segments, Object lowerKey, FileSegment lowerKeyLine, Object upperKey,
+                 FileSegment upperKeyLine) {
+        this.segments = segments;
+        this.lowerKey = lowerKey;
+        this.lowerKeyLine = lowerKeyLine;
+        this.upperKey = upperKey;
+        this.upperKeyLine = upperKeyLine;
+    }
+
+    List<FileSegment> getSegments() {
+        return segments;
+    }
+
+    Object getLowerKey() {
+        return lowerKey;
+    }
+
+    FileSegment getLowerKeyLine() {
+        return lowerKeyLine;
+    }
+
+    Object getUpperKey() {
+        return upperKey;
+    }
+
+    FileSegment getUpperKeyLine() {
+        return upperKeyLine;
+    }
+
+    boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    long getLength() {
+        long length = 0;
+        for (FileSegment segment : segments) {
+            length += Math.min(segment.getEnd(), segment.getFile().length()) - segment.getStart();
+        }
+        return length;
+    }
+}
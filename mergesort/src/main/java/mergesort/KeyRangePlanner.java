@@ -0,0 +1,147 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Groups sorted files by their key ranges. The first and the last keys of every file are found in parallel,
+ * the files are ordered by their first keys, and the files whose ranges overlap, directly or through
+ * other files, are put into one cluster. The clusters follow each other in key order, so the merged clusters
+ * only have to be concatenated.
+ * <p>
+ * Trusted files are only read at their ends and their numbers of lines are estimated. Other files are scanned
+ * through, as a merger would read them: the range spans the lines a merger would keep, and the lines are counted.
+ */
+class KeyRangePlanner<K> {
+    private KeyOrder<K> keyOrder;
+    private StreamFactory streamFactory;
+    private boolean isInputTrusted;
+
+    KeyRangePlanner(KeyOrder<K> keyOrder, StreamFactory streamFactory, boolean isInputTrusted) {
+        this.keyOrder = keyOrder;
+        this.streamFactory = streamFactory;
+        this.isInputTrusted = isInputTrusted;
+    }
+
+    /**
+     * Returns the clusters of the files in key order. The files without valid lines come first, one per cluster.
+     */
+    List<List<FileRange>> cluster(List<File> inputFiles, int threadsNumber) throws IOException {
+        List<ScannedFile<K>> scannedFiles = scanFiles(inputFiles, threadsNumber);
+        List<List<FileRange>> clusters = new ArrayList<>();
+        List<ScannedFile<K>> filesWithKeys = new ArrayList<>();
+        for (ScannedFile<K> scannedFile : scannedFiles) {
+            if (scannedFile.firstKey == null) {
+                clusters.add(List.of(scannedFile.range));
+            } else {
+                filesWithKeys.add(scannedFile);
+            }
+        }
+        filesWithKeys.sort(Comparator.comparing(scannedFile -> scannedFile.firstKey, keyOrder::compare));
+
+        List<FileRange> cluster = new ArrayList<>();
+        K clusterLastKey = null;
+        for (ScannedFile<K> scannedFile : filesWithKeys) {
+            // equal keys may end one cluster and start the next one, the concatenation is sorted all the same
+            if (!cluster.isEmpty() && keyOrder.compare(scannedFile.firstKey, clusterLastKey) >= 0) {
+                clusters.add(cluster);
+                cluster = new ArrayList<>();
+                clusterLastKey = null;
+            }
+            cluster.add(scannedFile.range);
+            if (clusterLastKey == null || keyOrder.compare(scannedFile.lastKey, clusterLastKey) > 0) {
+                clusterLastKey = scannedFile.lastKey;
+            }
+        }
+        if (!cluster.isEmpty()) {
+            clusters.add(cluster);
+        }
+        return clusters;
+    }
+
+    private List<ScannedFile<K>> scanFiles(List<File> inputFiles, int threadsNumber) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(inputFiles.size(), threadsNumber));
+        try {
+            List<Future<ScannedFile<K>>> scans = new ArrayList<>();
+            for (File inputFile : inputFiles) {
+                scans.add(executor.submit(() -> isInputTrusted ? readEnds(inputFile) : scan(inputFile)));
+            }
+
+            List<ScannedFile<K>> scannedFiles = new ArrayList<>();
+            for (Future<ScannedFile<K>> scan : scans) {
+                scannedFiles.add(scan.get());
+            }
+            return scannedFiles;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Scan of the input files has been interrupted");
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ScannedFile<K> readEnds(File file) throws IOException {
+        try (SortedFileSearcher<K> searcher = new SortedFileSearcher<>(file, keyOrder)) {
+            K firstKey = searcher.readKey(0, searcher.getFileSize());
+            K lastKey = (firstKey != null) ? searcher.readLastKey() : null;
+            return new ScannedFile<>(new FileRange(file, searcher.estimateLinesNumber(), true), firstKey, lastKey);
+        }
+    }
+
+    /**
+     * Reads the file through, skipping invalid and out-of-order lines the way the sorted readers do.
+     */
+    private ScannedFile<K> scan(File file) throws IOException {
+        K firstKey = null;
+        K lastKey = null;
+        long linesNumber = 0;
+        long lostLines = 0;
+        try (ByteLineReader lineReader = streamFactory.openLineReader(file)) {
+            while (lineReader.readLine()) {
+                K key;
+                try {
+                    key = keyOrder.convertLine(lineReader.getLine());
+                } catch (LineConverterException e) {
+                    ++lostLines;
+                    continue;
+                }
+
+                if (lastKey != null && keyOrder.compare(lastKey, key) > 0) {
+                    ++lostLines;
+                    continue;
+                }
+                if (firstKey == null) {
+                    firstKey = key;
+                }
+                lastKey = key;
+                ++linesNumber;
+            }
+        }
+        return new ScannedFile<>(new FileRange(file, linesNumber, lostLines == 0), firstKey, lastKey);
+    }
+
+    private static class ScannedFile<K> {
+        private FileRange range;
+        // null if the file has no valid lines
+        private K firstKey;
+        private K lastKey;
+
+        ScannedFile(FileRange range, K firstKey, K lastKey) {
+            this.range = range;
+            this.firstKey = firstKey;
+            this.lastKey = lastKey;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Comparator;
+
+class LineMergeEngine<T> extends MergeEngine<SortedFileReader<T>> {
+    private LineConverter<T> lineConverter;
+    private Comparator<T> lineComparator;
+    // the line comparator if it provides prefixes, null otherwise
+    private PrefixComparator<T> prefixComparator;
+
+    LineMergeEngine(LineConverter<T> lineConverter, Comparator<T> lineComparator) {
+        this.lineConverter = lineConverter;
+        this.lineComparator = lineComparator;
+        if (lineComparator instanceof PrefixComparator) {
+            prefixComparator = (PrefixComparator<T>) lineComparator;
+        }
+    }
+
+    @Override
+    SortedFileReader<T> openReader(FileSegment segment, TaskStatistics statistics) throws IOException {
+        SortedFileReader<T> reader;
+        if (getStreamFactory().isRunFile(segment.getFile())) {
+            reader = new SortedFileReader<>(getStreamFactory().openRunReader(segment.getFile(), statistics),
+                    segment.getFilepath(), lineConverter);
+        } else if (isInputTrusted()) {
+            reader = new SortedFileReader<>(openLineReader(segment, statistics), segment.getFilepath(), lineConverter);
+        } else {
+            reader = new SortedFileReader<>(getStreamFactory().openReader(segment, statistics), segment.getFilepath(),
+                    lineConverter, lineComparator);
+        }
+        if (prefixComparator != null) {
+            reader.setPrefixComparator(prefixComparator);
+        }
+        return reader;
+    }
+
+    @Override
+    int compare(SortedFileReader<T> firstReader, SortedFileReader<T> secondReader) {
+        if (prefixComparator != null) {
+            int prefixComparison = Long.compareUnsigned(firstReader.getCurrentPrefix(), secondReader.getCurrentPrefix());
+            if (prefixComparison != 0) {
+                return prefixComparison;
+            }
+        }
+        return lineComparator.compare(firstReader.getCurrentConvertedLine(), secondReader.getCurrentConvertedLine());
+    }
+
+    @Override
+    int compare(ByteBuffer line, SortedFileReader<T> reader) throws LineConverterException {
+        return lineComparator.compare(lineConverter.convertLine(Charset.defaultCharset().decode(line).toString()),
+                reader.getCurrentConvertedLine());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    int compareKey(Object key, SortedFileReader<T> reader) {
+        return lineComparator.compare((T) key, reader.getCurrentConvertedLine());
+    }
+
+    @Override
+    Object getRecord(SortedFileReader<T> reader) {
+        return reader.getCurrentConvertedLine();
+    }
+
+    @Override
+    RunGenerator createRunGenerator(long memoryBudget) {
+        return new LineRunGenerator<>(getStreamFactory(), memoryBudget, lineConverter, lineComparator);
+    }
+
+    @Override
+    KeyOrder<?> getKeyOrder() {
+        return new KeyOrder<T>() {
+            @Override
+            public T convertLine(ByteBuffer line) throws LineConverterException {
+                return lineConverter.convertLine(Charset.defaultCharset().decode(line).toString());
+            }
+
+            @Override
+            public int compare(T firstKey, T secondKey) {
+                return lineComparator.compare(firstKey, secondKey);
+            }
+        };
+    }
+}
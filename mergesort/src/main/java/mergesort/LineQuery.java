@@ -0,0 +1,61 @@
+package mergesort;
+
+/**
+ * Selection of the merged lines: the lines whose keys lie between the bounds, both inclusive, in the order
+ * of the merger, and at most the limit of them. The bounds are keys of the key order of the merge engine;
+ * a null bound is open.
+ * <p>
+ * The key range of a shard merged by a worker excludes its upper bound, which is the lower bound
+ * of the next shard. Its files are cut at the range by binary search, so the lines out of the range left
+ * in them are out of order, and they are counted as lost.
+ */
+class LineQuery {
+    static final long NO_LIMIT = Long.MAX_VALUE;
+
+    private Object fromKey;
+    private Object toKey;
+    private long limit;
+    private boolean isShard = false;
+
+    LineQuery(Object fromKey, Object toKey, long limit) {
+        this.fromKey = fromKey;
+        this.toKey = toKey;
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the query of the key range [fromKey, toKey) of a shard.
+     */
+    static LineQuery forShard(Object fromKey, Object toKey) {
+        LineQuery query = new LineQuery(fromKey, toKey, NO_LIMIT);
+        query.isShard = true;
+        return query;
+    }
+
+    Object getFromKey() {
+        return fromKey;
+    }
+
+    Object getToKey() {
+        return toKey;
+    }
+
+    long getLimit() {
+        return limit;
+    }
+
+    boolean isBounded() {
+        return fromKey != null || toKey != null;
+    }
+
+    boolean isShard() {
+        return isShard;
+    }
+
+    /**
+     * Tells whether a line is not after the upper bound, given the comparison of the bound with the line.
+     */
+    boolean isBeforeUpperBound(int comparison) {
+        return comparison > 0 || (comparison == 0 && !isShard);
+    }
+}
@@ -0,0 +1,119 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+class LineRunGenerator<T> extends RunGenerator {
+    // rough size of a line kept in memory besides its characters: the string, the converted value and the entry
+    private static final int LINE_OVERHEAD = 104;
+    private static final int INITIAL_RUN_CAPACITY = 1 << 12;
+
+    private LineConverter<T> lineConverter;
+    // the line comparator if it provides prefixes, null otherwise
+    private PrefixComparator<T> prefixComparator;
+    private Comparator<Entry<T>> entryComparator;
+
+    private Entry<T>[] run = newRun(INITIAL_RUN_CAPACITY);
+    private int runSize = 0;
+    private long runMemoryUsage = 0;
+    // the characters of the lines, as if they were single bytes, and a byte per line for its length or separator
+    private long runLength = 0;
+
+    LineRunGenerator(StreamFactory streamFactory, long memoryBudget,
+                     LineConverter<T> lineConverter, Comparator<T> lineComparator) {
+        super(streamFactory, memoryBudget);
+        this.lineConverter = lineConverter;
+        if (lineComparator instanceof PrefixComparator) {
+            prefixComparator = (PrefixComparator<T>) lineComparator;
+        }
+        entryComparator = (first, second) -> {
+            int prefixComparison = Long.compareUnsigned(first.prefix, second.prefix);
+            return (prefixComparison != 0) ? prefixComparison :
+                    lineComparator.compare(first.convertedLine, second.convertedLine);
+        };
+    }
+
+    @Override
+    long addLines(File inputFile, List<File> runFiles) throws IOException {
+        long invalidLines = 0;
+        try (BufferedReader fileReader = getStreamFactory().openReader(inputFile, getStatistics())) {
+            String line;
+            while ((line = fileReader.readLine()) != null) {
+                try {
+                    addLine(line, lineConverter.convertLine(line));
+                } catch (LineConverterException e) {
+                    ++invalidLines;
+                }
+
+                if (runMemoryUsage >= getMemoryBudget()) {
+                    writeRun(runFiles);
+                }
+            }
+        }
+        return invalidLines;
+    }
+
+    private void addLine(String line, T convertedLine) {
+        if (runSize == run.length) {
+            run = Arrays.copyOf(run, run.length * 2);
+        }
+        long prefix = (prefixComparator != null) ? prefixComparator.getPrefix(convertedLine) : 0;
+        run[runSize++] = new Entry<>(line, convertedLine, prefix);
+        runMemoryUsage += LINE_OVERHEAD + 2L * line.length();
+        runLength += line.length() + 1;
+    }
+
+    @Override
+    boolean isRunEmpty() {
+        return runSize == 0;
+    }
+
+    @Override
+    void sortRun() {
+        Arrays.parallelSort(run, 0, runSize, entryComparator);
+    }
+
+    @Override
+    void writeRun(LineWriter runWriter) throws IOException {
+        for (int i = 0; i < runSize; ++i) {
+            runWriter.writeLine(run[i].line);
+        }
+    }
+
+    @Override
+    long estimateRunLength() {
+        return runLength;
+    }
+
+    @Override
+    void clearRun() {
+        Arrays.fill(run, 0, runSize, null);
+        runSize = 0;
+        runMemoryUsage = 0;
+        runLength = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T>[] newRun(int capacity) {
+        return (Entry<T>[]) new Entry<?>[capacity];
+    }
+
+    private static class Entry<T> {
+        private String line;
+        private T convertedLine;
+        // 0 if the comparator does not provide prefixes, so that only the lines are compared
+        private long prefix;
+
+        Entry(String line, T convertedLine, long prefix) {
+            this.line = line;
+            this.convertedLine = convertedLine;
+            this.prefix = prefix;
+        }
+    }
+}
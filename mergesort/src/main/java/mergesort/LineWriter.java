@@ -0,0 +1,219 @@
+package mergesort;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Buffered line output. Unlike {@link java.io.PrintWriter} it accepts raw bytes
+ * and reports I/O errors instead of swallowing them.
+ */
+class LineWriter implements Closeable, Flushable {
+    static final int MAX_LONG_LENGTH = 20;
+    static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+
+    private OutputStream outputStream;
+    private byte[] buffer;
+    private int position = 0;
+    private long linesNumber = 0;
+    private byte[] formattedNumber = new byte[MAX_LONG_LENGTH];
+    // the channel of the output file if the bytes are written to it without any filter, otherwise null
+    private FileChannel outputChannel;
+
+    LineWriter(OutputStream outputStream, int bufferSize) {
+        this.outputStream = outputStream;
+        buffer = new byte[bufferSize];
+    }
+
+    void writeLine(String line) throws IOException {
+        byte[] bytes = line.getBytes();
+        writeLine(bytes, 0, bytes.length);
+    }
+
+    void writeLine(byte[] line, int offset, int length) throws IOException {
+        beginLine(length);
+        write(line, offset, length);
+        endLine();
+    }
+
+    /**
+     * Writes the bytes between the position and the limit of the line buffer.
+     */
+    void writeLine(ByteBuffer line) throws IOException {
+        beginLine(line.remaining());
+        write(line);
+        endLine();
+    }
+
+    /**
+     * Writes a number parsed from the given line, which is written as it is. If the line is null,
+     * the number is written as {@link Long#toString(long)} would do it.
+     */
+    void writeNumber(long value, ByteBuffer line) throws IOException {
+        if (line != null) {
+            writeLine(line);
+            return;
+        }
+
+        int start = formatNumber(value, formattedNumber);
+        writeLine(formattedNumber, start, MAX_LONG_LENGTH - start);
+    }
+
+    long getLinesNumber() {
+        return linesNumber;
+    }
+
+    void setOutputChannel(FileChannel outputChannel) {
+        this.outputChannel = outputChannel;
+    }
+
+    /**
+     * Tells whether text lines can be copied to the output as raw bytes, without being written one by one.
+     */
+    boolean isRawCopySupported() {
+        return true;
+    }
+
+    /**
+     * Writes the given number of complete text lines, held between the position and the limit of the buffer,
+     * as they are, together with their line terminators.
+     */
+    void writeRawLines(ByteBuffer lines, long linesNumber) throws IOException {
+        write(lines);
+        this.linesNumber += linesNumber;
+    }
+
+    /**
+     * Copies the text lines held by a range of the file as they are, terminating the last line if it is not.
+     * If the writer has no stream filters, the bytes are transferred from file to file by the operating system
+     * without being counted; otherwise they go through the buffer of the writer.
+     * Returns the number of copied lines, or -1 if they have not been counted.
+     */
+    long transferLines(FileChannel source, long position, long count) throws IOException {
+        if (count <= 0) {
+            return 0;
+        }
+        flushBuffer();
+
+        long lines = 0;
+        long end = position + count;
+        if (outputChannel != null) {
+            lines = -1;
+            while (position < end) {
+                long bytesTransferred = source.transferTo(position, end - position, outputChannel);
+                if (bytesTransferred <= 0) {
+                    throw new IOException("File has been truncated while being copied");
+                }
+                position += bytesTransferred;
+            }
+        } else {
+            ByteBuffer chunk = ByteBuffer.wrap(buffer);
+            while (position < end) {
+                chunk.clear().limit((int) Math.min(buffer.length, end - position));
+                int bytesRead = source.read(chunk, position);
+                if (bytesRead <= 0) {
+                    throw new IOException("File has been truncated while being copied");
+                }
+                for (int i = 0; i < bytesRead; ++i) {
+                    if (buffer[i] == '\n') {
+                        ++lines;
+                    }
+                }
+                outputStream.write(buffer, 0, bytesRead);
+                position += bytesRead;
+            }
+        }
+
+        ByteBuffer lastByte = ByteBuffer.allocate(1);
+        source.read(lastByte, end - 1);
+        if (lastByte.get(0) != '\n') {
+            write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+            if (lines >= 0) {
+                ++lines;
+            }
+        }
+        if (lines > 0) {
+            linesNumber += lines;
+        }
+        return lines;
+    }
+
+    void beginLine(int length) throws IOException {
+    }
+
+    void endLine() throws IOException {
+        write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+        ++linesNumber;
+    }
+
+    void addLine() {
+        ++linesNumber;
+    }
+
+    /**
+     * Formats the number into the end of the array, returning the index of its first character.
+     */
+    static int formatNumber(long value, byte[] digits) {
+        int position = digits.length;
+        long remainder = value < 0 ? value : -value;
+        do {
+            digits[--position] = (byte) ('0' - remainder % 10);
+            remainder /= 10;
+        } while (remainder != 0);
+        if (value < 0) {
+            digits[--position] = '-';
+        }
+        return position;
+    }
+
+    void write(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.length - position) {
+            flushBuffer();
+            if (length >= buffer.length) {
+                outputStream.write(bytes, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    void write(ByteBuffer bytes) throws IOException {
+        int length = bytes.remaining();
+        if (length > buffer.length - position) {
+            flushBuffer();
+            while (bytes.remaining() > buffer.length) {
+                bytes.get(buffer, 0, buffer.length);
+                outputStream.write(buffer, 0, buffer.length);
+            }
+            length = bytes.remaining();
+        }
+        bytes.get(buffer, position, length);
+        position += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            outputStream.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            outputStream.close();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package mergesort;
+
+public interface LongComparator {
+    int compare(long first, long second);
+
+    default LongComparator reversed() {
+        return (first, second) -> compare(second, first);
+    }
+}
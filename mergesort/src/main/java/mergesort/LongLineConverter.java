@@ -0,0 +1,13 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts a line, given as the bytes [start, end) of a buffer, to a primitive long
+ * without creating any intermediate objects.
+ */
+public interface LongLineConverter {
+    long convertLine(ByteBuffer buffer, int start, int end) throws LineConverterException;
+}
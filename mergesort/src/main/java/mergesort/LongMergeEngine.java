@@ -0,0 +1,71 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+class LongMergeEngine extends MergeEngine<LongSortedFileReader> {
+    private LongLineConverter lineConverter;
+    private LongComparator lineComparator;
+
+    LongMergeEngine(LongLineConverter lineConverter, LongComparator lineComparator) {
+        this.lineConverter = lineConverter;
+        this.lineComparator = lineComparator;
+    }
+
+    @Override
+    LongSortedFileReader openReader(FileSegment segment, TaskStatistics statistics) throws IOException {
+        if (getStreamFactory().isRunFile(segment.getFile())) {
+            return new LongSortedFileReader(getStreamFactory().openRunReader(segment.getFile(), statistics),
+                    segment.getFilepath());
+        }
+        if (isInputTrusted()) {
+            return new LongSortedFileReader(openLineReader(segment, statistics), segment.getFilepath(),
+                    lineConverter, null);
+        }
+        return new LongSortedFileReader(getStreamFactory().openLineReader(segment, statistics),
+                segment.getFilepath(), lineConverter, lineComparator);
+    }
+
+    @Override
+    int compare(LongSortedFileReader firstReader, LongSortedFileReader secondReader) {
+        return lineComparator.compare(firstReader.getCurrentConvertedLine(), secondReader.getCurrentConvertedLine());
+    }
+
+    @Override
+    int compare(ByteBuffer line, LongSortedFileReader reader) throws LineConverterException {
+        return lineComparator.compare(lineConverter.convertLine(line, line.position(), line.limit()),
+                reader.getCurrentConvertedLine());
+    }
+
+    @Override
+    int compareKey(Object key, LongSortedFileReader reader) {
+        return lineComparator.compare((Long) key, reader.getCurrentConvertedLine());
+    }
+
+    @Override
+    Object getRecord(LongSortedFileReader reader) {
+        return reader.getCurrentConvertedLine();
+    }
+
+    @Override
+    RunGenerator createRunGenerator(long memoryBudget) {
+        return new LongRunGenerator(getStreamFactory(), memoryBudget, lineConverter, lineComparator);
+    }
+
+    @Override
+    KeyOrder<?> getKeyOrder() {
+        return new KeyOrder<Long>() {
+            @Override
+            public Long convertLine(ByteBuffer line) throws LineConverterException {
+                return lineConverter.convertLine(line, line.position(), line.limit());
+            }
+
+            @Override
+            public int compare(Long firstKey, Long secondKey) {
+                return lineComparator.compare(firstKey, secondKey);
+            }
+        };
+    }
+}
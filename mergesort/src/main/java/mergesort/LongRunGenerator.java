@@ -0,0 +1,152 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a run as a primitive long array, which is sorted with {@link Arrays#parallelSort(long[])}.
+ * Numbers are written back in the canonical form; the rare lines spelled differently
+ * (with a plus sign or leading zeros) are kept aside to be written as they were.
+ */
+class LongRunGenerator extends RunGenerator {
+    private static final int INITIAL_RUN_CAPACITY = 1 << 16;
+
+    private LongLineConverter lineConverter;
+    private LongComparator lineComparator;
+    private int maxRunSize;
+
+    private long[] run = new long[INITIAL_RUN_CAPACITY];
+    private int runSize = 0;
+    private Map<Long, ArrayDeque<byte[]>> nonCanonicalLines = new HashMap<>();
+
+    LongRunGenerator(StreamFactory streamFactory, long memoryBudget,
+                     LongLineConverter lineConverter, LongComparator lineComparator) {
+        super(streamFactory, memoryBudget);
+        this.lineConverter = lineConverter;
+        this.lineComparator = lineComparator;
+        maxRunSize = (int) Math.max(1, Math.min(memoryBudget / Long.BYTES, Integer.MAX_VALUE - 8));
+    }
+
+    @Override
+    long addLines(File inputFile, List<File> runFiles) throws IOException {
+        long invalidLines = 0;
+        try (ByteLineReader lineReader = getStreamFactory().openLineReader(inputFile, getStatistics())) {
+            while (lineReader.readLine()) {
+                try {
+                    addLine(lineReader);
+                } catch (LineConverterException e) {
+                    ++invalidLines;
+                }
+
+                if (runSize == maxRunSize) {
+                    writeRun(runFiles);
+                }
+            }
+        }
+        return invalidLines;
+    }
+
+    private void addLine(ByteLineReader lineReader) throws LineConverterException {
+        ByteBuffer buffer = lineReader.getBuffer();
+        int start = lineReader.getLineStart();
+        int end = lineReader.getLineEnd();
+        long value = lineConverter.convertLine(buffer, start, end);
+
+        if (runSize == run.length) {
+            run = Arrays.copyOf(run, (int) Math.min((long) run.length * 2, maxRunSize));
+        }
+        run[runSize++] = value;
+
+        if (!isCanonical(buffer, start, end)) {
+            byte[] line = new byte[end - start];
+            lineReader.getLine().get(line);
+            nonCanonicalLines.computeIfAbsent(value, key -> new ArrayDeque<>()).add(line);
+        }
+    }
+
+    private static boolean isCanonical(ByteBuffer buffer, int start, int end) {
+        // the line is a valid number, so only the sign and leading zeros can differ from Long.toString
+        if (buffer.get(start) == '+') {
+            return false;
+        }
+        boolean isNegative = buffer.get(start) == '-';
+        if (isNegative) {
+            ++start;
+        }
+        return buffer.get(start) != '0' || (end - start == 1 && !isNegative);
+    }
+
+    @Override
+    boolean isRunEmpty() {
+        return runSize == 0;
+    }
+
+    @Override
+    void sortRun() {
+        Arrays.parallelSort(run, 0, runSize);
+        if (lineComparator.compare(0, 1) > 0) {
+            reverseRun();
+        }
+
+        if (!isRunOrdered()) {
+            // the comparator is neither the natural nor the reversed order, so boxing cannot be avoided
+            Long[] boxedRun = new Long[runSize];
+            for (int i = 0; i < runSize; ++i) {
+                boxedRun[i] = run[i];
+            }
+            Arrays.parallelSort(boxedRun, lineComparator::compare);
+            for (int i = 0; i < runSize; ++i) {
+                run[i] = boxedRun[i];
+            }
+        }
+    }
+
+    private void reverseRun() {
+        for (int i = 0, j = runSize - 1; i < j; ++i, --j) {
+            long value = run[i];
+            run[i] = run[j];
+            run[j] = value;
+        }
+    }
+
+    private boolean isRunOrdered() {
+        for (int i = 1; i < runSize; ++i) {
+            if (lineComparator.compare(run[i - 1], run[i]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    void writeRun(LineWriter runWriter) throws IOException {
+        for (int i = 0; i < runSize; ++i) {
+            long value = run[i];
+            ArrayDeque<byte[]> lines = nonCanonicalLines.isEmpty() ? null : nonCanonicalLines.get(value);
+            if (lines != null && !lines.isEmpty()) {
+                runWriter.writeNumber(value, ByteBuffer.wrap(lines.poll()));
+            } else {
+                runWriter.writeNumber(value, null);
+            }
+        }
+    }
+
+    @Override
+    long estimateRunLength() {
+        return (long) runSize * Long.BYTES;
+    }
+
+    @Override
+    void clearRun() {
+        runSize = 0;
+        nonCanonicalLines.clear();
+    }
+}
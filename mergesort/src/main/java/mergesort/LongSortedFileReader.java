@@ -0,0 +1,137 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.io.IOException;
+
+/**
+ * Counterpart of {@link SortedFileReader} for files of numbers: lines are parsed directly from the read buffer
+ * into primitive longs, so no objects are created per line.
+ */
+class LongSortedFileReader implements SortedReader {
+    private String filepath;
+    private ByteLineReader lineReader;
+    // set instead of the line converter and comparator for temporary files, which need neither parsing nor validation
+    private RunReader runReader;
+
+    private long invalidLines = 0;
+    private LongLineConverter lineConverter;
+
+    private long unorderedLines = 0;
+    // null for trusted input files, which are not checked for order
+    private LongComparator lineComparator;
+
+    private long currentConvertedLine;
+    private boolean hasReachedEnd = false;
+
+    LongSortedFileReader(ByteLineReader lineReader, String filepath, LongLineConverter lineConverter,
+                         LongComparator lineComparator) throws IOException {
+        this.lineReader = lineReader;
+        this.filepath = filepath;
+        this.lineComparator = lineComparator;
+        this.lineConverter = lineConverter;
+
+        moveToNextValidLine();
+    }
+
+    LongSortedFileReader(RunReader runReader, String filepath) throws IOException {
+        this.lineReader = runReader;
+        this.runReader = runReader;
+        this.filepath = filepath;
+
+        moveToNextValidLine();
+    }
+
+    @Override
+    public boolean hasReachedEnd() {
+        return hasReachedEnd;
+    }
+
+    @Override
+    public boolean isValid() {
+        return invalidLines == 0;
+    }
+
+    @Override
+    public long getInvalidLinesNumber() {
+        return invalidLines;
+    }
+
+    @Override
+    public boolean isOrdered() {
+        return unorderedLines == 0;
+    }
+
+    @Override
+    public long getUnorderedLinesNumber() {
+        return unorderedLines;
+    }
+
+    @Override
+    public String getFilepath() {
+        return filepath;
+    }
+
+    @Override
+    public ByteLineReader getTrustedLineReader() {
+        return (runReader == null && lineComparator == null) ? lineReader : null;
+    }
+
+    long getCurrentConvertedLine() {
+        return currentConvertedLine;
+    }
+
+    @Override
+    public void writeCurrentLine(LineWriter lineWriter) throws IOException {
+        if (runReader != null) {
+            lineWriter.writeNumber(currentConvertedLine, runReader.getSpelling());
+        } else {
+            lineWriter.writeNumber(currentConvertedLine, lineReader.getLine());
+        }
+    }
+
+    @Override
+    public void moveToNextLineInOrder() throws IOException {
+        if (runReader != null || lineComparator == null) {
+            moveToNextValidLine();
+            return;
+        }
+
+        long prevConvertedLine = currentConvertedLine;
+        moveToNextValidLine();
+        while (!hasReachedEnd && lineComparator.compare(prevConvertedLine, currentConvertedLine) > 0) {
+            ++unorderedLines;
+            moveToNextValidLine();
+        }
+    }
+
+    private void moveToNextValidLine() throws IOException {
+        if (runReader != null) {
+            hasReachedEnd = !runReader.readNumber();
+            currentConvertedLine = runReader.getValue();
+            return;
+        }
+
+        for (;;) {
+            if (!lineReader.readLine()) {
+                hasReachedEnd = true;
+                return;
+            }
+
+            try {
+                currentConvertedLine = lineConverter.convertLine(lineReader.getBuffer(),
+                        lineReader.getLineStart(), lineReader.getLineEnd());
+                return;
+            } catch (LineConverterException e) {
+                ++invalidLines;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (lineReader != null) {
+            lineReader.close();
+        }
+    }
+}
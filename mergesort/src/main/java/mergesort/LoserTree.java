@@ -0,0 +1,87 @@
+package mergesort;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tournament (loser) tree over several sorted readers.
+ * The reader holding the smallest current line is available in O(1),
+ * advancing it costs about log2(k) comparisons, where k is the number of readers.
+ */
+class LoserTree<R extends SortedReader> {
+    private static final int EMPTY = -1;
+
+    private List<R> readers;
+    private Comparator<R> readerComparator;
+
+    // tree[0] holds the index of the overall winner, tree[1..k-1] hold the losers of the inner matches
+    private int[] tree;
+
+    LoserTree(List<R> readers, Comparator<R> readerComparator) {
+        this.readers = readers;
+        this.readerComparator = readerComparator;
+
+        tree = new int[Math.max(readers.size(), 1)];
+        Arrays.fill(tree, EMPTY);
+        for (int reader = 0; reader < readers.size(); ++reader) {
+            replay(reader);
+        }
+    }
+
+    /**
+     * Tells whether all the readers have reached the end, which is also the case if there are no readers.
+     */
+    boolean hasReachedEnd() {
+        return readers.isEmpty() || getWinner().hasReachedEnd();
+    }
+
+    R getWinner() {
+        return readers.get(tree[0]);
+    }
+
+    void moveWinnerToNextLine() throws IOException {
+        getWinner().moveToNextLineInOrder();
+        replay(tree[0]);
+    }
+
+    /**
+     * Restores the tree after the caller has advanced the winner itself.
+     */
+    void replayWinner() {
+        replay(tree[0]);
+    }
+
+    private void replay(int reader) {
+        int winner = reader;
+        for (int node = (reader + readers.size()) >> 1; node > 0; node >>= 1) {
+            if (tree[node] == EMPTY) {
+                // the tree is still being built, the other half of this match has not arrived yet
+                tree[node] = winner;
+                return;
+            }
+
+            if (beats(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    private boolean beats(int firstReader, int secondReader) {
+        R first = readers.get(firstReader);
+        R second = readers.get(secondReader);
+        if (first.hasReachedEnd()) {
+            return false;
+        }
+        if (second.hasReachedEnd()) {
+            return true;
+        }
+
+        int comparison = readerComparator.compare(first, second);
+        return comparison < 0 || (comparison == 0 && firstReader < secondReader);
+    }
+}
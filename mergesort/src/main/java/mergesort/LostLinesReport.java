@@ -0,0 +1,43 @@
+package mergesort;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the numbers of invalid and out-of-order lines met by the readers of a merger,
+ * so that a file read in several parts gets a single warning.
+ */
+class LostLinesReport {
+    private Map<String, long[]> lostLines = new LinkedHashMap<>();
+
+    synchronized void addReader(SortedReader reader) {
+        long[] fileLostLines = lostLines.computeIfAbsent(reader.getFilepath(), filepath -> new long[2]);
+        fileLostLines[0] += reader.getInvalidLinesNumber();
+        fileLostLines[1] += reader.getUnorderedLinesNumber();
+    }
+
+    /**
+     * Adds lines of the file which have been skipped by the merger since they are out of order,
+     * although the reader has not detected it.
+     */
+    synchronized void addUnorderedLines(String filepath, long lines) {
+        lostLines.computeIfAbsent(filepath, path -> new long[2])[1] += lines;
+    }
+
+    synchronized void print() {
+        for (Map.Entry<String, long[]> entry : lostLines.entrySet()) {
+            long invalidLines = entry.getValue()[0];
+            long unorderedLines = entry.getValue()[1];
+            if (invalidLines != 0) {
+                System.err.printf("Warning: file \"%s\" contains %d invalid lines; " +
+                        "some data have been lost\n", entry.getKey(), invalidLines);
+            }
+
+            if (unorderedLines != 0) {
+                System.err.printf("Warning: file \"%s\" contains %d lines that are out of order; " +
+                        "some data have been lost\n", entry.getKey(), unorderedLines);
+            }
+        }
+        lostLines.clear();
+    }
+}
@@ -0,0 +1,106 @@
+package mergesort;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reads a regular file through a sliding memory-mapped window, so the lines are never copied
+ * into the Java heap. If a prefetch executor is given, the part of the file following the current window
+ * is loaded into memory in the background.
+ * <p>
+ * The pages of a mapped window are read from the disk on access. If the number of reads issued at once
+ * is limited, every window is loaded as a whole while a permit of the I/O is held, both when it is prefetched
+ * and when it is mapped for reading, so the reads of mapped files count against the same limit as the streams.
+ */
+class MappedLineReader extends ByteLineReader {
+    static final int DEFAULT_WINDOW_SIZE = 1 << 26;
+
+    private FileChannel fileChannel;
+    private long fileSize;
+    private int windowSize;
+    private long windowPosition = 0;
+    private Executor prefetchExecutor;
+    private long prefetchedUntil = 0;
+    private Semaphore ioPermits;
+
+    /**
+     * Maps the segment window by window; a null executor disables the prefetch, and null permits
+     * leave the reads unlimited.
+     */
+    MappedLineReader(FileSegment segment, int windowSize, Executor prefetchExecutor, Semaphore ioPermits)
+            throws IOException {
+        fileChannel = FileChannel.open(segment.getFile().toPath(), StandardOpenOption.READ);
+        // only the segment is read, so the reader treats its end as the end of the file
+        fileSize = Math.min(fileChannel.size(), segment.getEnd());
+        windowPosition = Math.min(segment.getStart(), fileSize);
+        this.windowSize = windowSize;
+        this.prefetchExecutor = prefetchExecutor;
+        this.ioPermits = ioPermits;
+        setBuffer(ByteBuffer.allocate(0));
+    }
+
+    @Override
+    void fillBuffer(int keepFrom) throws IOException {
+        // the new window starts at the incomplete line and is grown if the line does not fit the window
+        int remaining = getBuffer().limit() - keepFrom;
+        windowPosition += keepFrom;
+        long size = Math.max(windowSize, 2L * remaining);
+        size = Math.min(Math.min(size, fileSize - windowPosition), Integer.MAX_VALUE);
+        if (windowPosition + size == fileSize) {
+            setEndOfInput();
+        }
+        MappedByteBuffer window = fileChannel.map(FileChannel.MapMode.READ_ONLY, windowPosition, size);
+        if (ioPermits != null) {
+            load(window);
+        }
+        setBuffer(window);
+
+        if (prefetchExecutor != null) {
+            prefetch(windowPosition + size);
+        }
+    }
+
+    private void prefetch(long position) throws IOException {
+        long start = Math.max(position, prefetchedUntil);
+        long size = Math.min(windowSize, fileSize - start);
+        if (size <= 0) {
+            return;
+        }
+        prefetchedUntil = start + size;
+
+        MappedByteBuffer nextWindow = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        prefetchExecutor.execute(() -> {
+            try {
+                load(nextWindow);
+            } catch (InterruptedIOException e) {
+                // the window is loaded on access instead
+            }
+        });
+    }
+
+    private void load(MappedByteBuffer window) throws InterruptedIOException {
+        if (ioPermits == null) {
+            window.load();
+            return;
+        }
+        StreamFactory.acquire(ioPermits);
+        try {
+            window.load();
+        } finally {
+            ioPermits.release();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileChannel != null) {
+            fileChannel.close();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package mergesort;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Splits a memory budget between the buffers of the streams, the fan-in and the number of mergers running at once,
+ * and holds the memory of every running merger until it finishes.
+ * <p>
+ * The settings are chosen for mergers with the full fan-in: the number of such mergers running at once
+ * is decreased first, then the buffer size and at last the fan-in, until they fit into the budget; the memory left
+ * over enlarges the buffers. While merging, every merger reserves the memory of its own streams before it starts,
+ * so mergers of fewer files run in greater numbers, and a waiting merger starts as soon as the finished ones
+ * have released enough memory. Memory-mapped files are not counted, since their pages are not on the heap.
+ */
+class MemoryGovernor {
+    static final int MIN_BUFFER_SIZE = 1 << 12;
+    static final int MAX_BUFFER_SIZE = 1 << 20;
+    private static final int MIN_FAN_IN = 2;
+    private static final long MIN_SORT_MEMORY = 1 << 20;
+    // reservations are counted in KiB, so that a budget of terabytes fits into the permits of a semaphore
+    private static final int RESERVATION_UNIT = 1 << 10;
+
+    private long budget;
+    private int buffersPerStream;
+    private int bufferSize;
+    private int fanIn;
+    private int concurrentMergers;
+    private Semaphore reservations;
+
+    /**
+     * Creates a governor of the given number of bytes, where every open stream takes the given number of buffers.
+     */
+    MemoryGovernor(long budget, int buffersPerStream) {
+        this.budget = budget;
+        this.buffersPerStream = buffersPerStream;
+        reservations = new Semaphore((int) Math.min(budget / RESERVATION_UNIT, Integer.MAX_VALUE), true);
+    }
+
+    /**
+     * Chooses the settings for the given upper bounds of the fan-in and the number of mergers running at once.
+     * A fixed buffer size is kept as it is, otherwise it starts at the given one and is adjusted to the budget.
+     * Returns false if even the smallest settings do not fit into the budget; they are used all the same.
+     */
+    boolean fit(int maxFanIn, int maxConcurrentMergers, int initialBufferSize, boolean isBufferSizeFixed) {
+        fanIn = maxFanIn;
+        concurrentMergers = maxConcurrentMergers;
+        bufferSize = initialBufferSize;
+        while (getMemory(concurrentMergers, fanIn, bufferSize) > budget) {
+            if (concurrentMergers > 1) {
+                --concurrentMergers;
+            } else if (!isBufferSizeFixed && bufferSize > MIN_BUFFER_SIZE) {
+                bufferSize /= 2;
+            } else if (fanIn > MIN_FAN_IN) {
+                long streams = budget / ((long) buffersPerStream * bufferSize);
+                fanIn = (int) Math.max(MIN_FAN_IN, Math.min(fanIn - 1, streams - 1));
+            } else {
+                return false;
+            }
+        }
+
+        while (!isBufferSizeFixed && bufferSize < MAX_BUFFER_SIZE &&
+                getMemory(concurrentMergers, fanIn, 2 * bufferSize) <= budget) {
+            bufferSize *= 2;
+        }
+        return true;
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    int getFanIn() {
+        return fanIn;
+    }
+
+    int getConcurrentMergers() {
+        return concurrentMergers;
+    }
+
+    long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the memory left for sorting runs, which are generated before any merger runs:
+     * the budget without the buffers of the input stream and of the run being written.
+     */
+    long getSortMemory() {
+        return Math.max(budget - 2L * buffersPerStream * bufferSize, MIN_SORT_MEMORY);
+    }
+
+    /**
+     * Returns the memory of the given number of mergers running at once, each of which reads the given number
+     * of files and writes one file.
+     */
+    long getMemory(int mergersNumber, int inputsNumber, int bufferSize) {
+        return (long) mergersNumber * (inputsNumber + 1) * buffersPerStream * bufferSize;
+    }
+
+    /**
+     * Waits until the memory is available and reserves it; a reservation greater than the whole budget
+     * takes the whole budget. Returns the reserved memory, which has to be released afterwards.
+     */
+    long reserve(long memory) throws InterruptedException {
+        int units = toUnits(memory);
+        reservations.acquire(units);
+        return (long) units * RESERVATION_UNIT;
+    }
+
+    void release(long memory) {
+        reservations.release(toUnits(memory));
+    }
+
+    private int toUnits(long memory) {
+        long budgetUnits = Math.min(budget / RESERVATION_UNIT, Integer.MAX_VALUE);
+        return (int) Math.max(Math.min((memory + RESERVATION_UNIT - 1) / RESERVATION_UNIT, budgetUnits), 0);
+    }
+}
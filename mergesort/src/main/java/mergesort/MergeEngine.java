@@ -0,0 +1,659 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Merges sorted files line by line. Subclasses define how the files are read
+ * and how the current lines of two readers are compared.
+ * <p>
+ * Input files may be trusted to be sorted and valid. Their lines are then read without order checks,
+ * and whole runs of lines are copied to the output as raw bytes: a two-file merger switches to galloping
+ * once one file has supplied several lines in a row, and the rest of a file is transferred by the operating system.
+ */
+abstract class MergeEngine<R extends SortedReader> {
+    // the number of lines in a row taken from one file after which a two-file merger starts galloping
+    private static final int MIN_GALLOP = 8;
+    private static final int MAX_GALLOP_THRESHOLD = 256;
+    // the distance of the first line probed by galloping from the start of the run, in bytes
+    private static final int INITIAL_GALLOP_STEP = 256;
+
+    private StreamFactory streamFactory = new StreamFactory();
+    private MergeStatistics statistics;
+    private boolean isInputTrusted = false;
+
+    StreamFactory getStreamFactory() {
+        return streamFactory;
+    }
+
+    MergeStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Enables collection of the task statistics; null disables it.
+     */
+    void setStatistics(MergeStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    boolean isInputTrusted() {
+        return isInputTrusted;
+    }
+
+    /**
+     * Trusts the input files to be sorted and to contain only valid lines, which are not checked then.
+     */
+    void setInputTrusted(boolean isInputTrusted) {
+        this.isInputTrusted = isInputTrusted;
+    }
+
+    TaskStatistics startTask(String stage) {
+        return new TaskStatistics(statistics, stage);
+    }
+
+    abstract R openReader(FileSegment segment, TaskStatistics taskStatistics) throws IOException;
+
+    /**
+     * Compares the current lines of two readers, neither of which has reached the end.
+     */
+    abstract int compare(R firstReader, R secondReader);
+
+    /**
+     * Compares a raw line of a trusted input file, held between the position and the limit of the buffer,
+     * with the current line of the reader.
+     */
+    abstract int compare(ByteBuffer line, R reader) throws LineConverterException;
+
+    /**
+     * Opens the text lines of the segment, mapping the file if it is a regular uncompressed file.
+     */
+    ByteLineReader openLineReader(FileSegment segment, TaskStatistics taskStatistics) throws IOException {
+        if (!isPlainTextFile(segment.getFile())) {
+            // pipes, standard input and compressed files cannot be mapped
+            return streamFactory.openLineReader(segment, taskStatistics);
+        }
+        return streamFactory.openMappedLineReader(segment, taskStatistics);
+    }
+
+    private boolean isPlainTextFile(File file) {
+        return StandardStream.isRegularFile(file) && !streamFactory.isRunFile(file) && !Compression.isCompressed(file);
+    }
+
+    /**
+     * Compares a key of the key order of the engine with the current line of the reader,
+     * which has not reached the end.
+     */
+    abstract int compareKey(Object key, R reader);
+
+    /**
+     * Returns the current line of the reader, which has not reached the end, as a record of the sorter:
+     * the converted line, the number or the decoded string.
+     */
+    abstract Object getRecord(R reader);
+
+    abstract RunGenerator createRunGenerator(long memoryBudget);
+
+    abstract KeyOrder<?> getKeyOrder();
+
+    List<KeyPartition> partitionByKeys(List<File> inputFiles, int partitionsNumber) throws IOException {
+        return partitionByKeys(getKeyOrder(), inputFiles, partitionsNumber);
+    }
+
+    private static <K> List<KeyPartition> partitionByKeys(KeyOrder<K> keyOrder, List<File> inputFiles,
+                                                               int partitionsNumber) throws IOException {
+        return new RangePartitioner<>(keyOrder).partition(inputFiles, partitionsNumber);
+    }
+
+    /**
+     * Groups the files into clusters of files with overlapping key ranges, which follow each other in key order.
+     */
+    List<List<FileRange>> clusterByKeyRanges(List<File> inputFiles, int threadsNumber) throws IOException {
+        return clusterByKeyRanges(getKeyOrder(), streamFactory, isInputTrusted, inputFiles, threadsNumber);
+    }
+
+    private static <K> List<List<FileRange>> clusterByKeyRanges(KeyOrder<K> keyOrder, StreamFactory streamFactory,
+                                                                boolean isInputTrusted, List<File> inputFiles,
+                                                                int threadsNumber) throws IOException {
+        return new KeyRangePlanner<>(keyOrder, streamFactory, isInputTrusted).cluster(inputFiles, threadsNumber);
+    }
+
+    /**
+     * Converts a line given as a string to a key of the key order of the engine.
+     */
+    Object convertKey(String line) throws LineConverterException {
+        return getKeyOrder().convertLine(ByteBuffer.wrap(line.getBytes(Charset.defaultCharset())));
+    }
+
+    /**
+     * Reads the key of the line at the segment, or returns null if it is not a valid line.
+     */
+    Object readKey(FileSegment line) throws IOException {
+        return readKey(getKeyOrder(), line);
+    }
+
+    private static <K> K readKey(KeyOrder<K> keyOrder, FileSegment line) throws IOException {
+        try (SortedFileSearcher<K> searcher = new SortedFileSearcher<>(line.getFile(), keyOrder)) {
+            return searcher.readKey(line.getStart(), Math.min(line.getEnd(), searcher.getFileSize()));
+        }
+    }
+
+    /**
+     * Returns the segment of the sorted file holding the lines selected by the bounds of the query,
+     * found by binary search.
+     */
+    FileSegment selectSegment(File file, LineQuery query) throws IOException {
+        return selectSegment(getKeyOrder(), file, query);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> FileSegment selectSegment(KeyOrder<K> keyOrder, File file, LineQuery query)
+            throws IOException {
+        try (SortedFileSearcher<K> searcher = new SortedFileSearcher<>(file, keyOrder)) {
+            long start = 0;
+            long end = searcher.getFileSize();
+            if (query.getFromKey() != null) {
+                start = searcher.findFirstNotLess((K) query.getFromKey(), start, end);
+            }
+            if (query.getToKey() != null) {
+                end = query.isShard() ? searcher.findFirstNotLess((K) query.getToKey(), start, end) :
+                        searcher.findFirstGreater((K) query.getToKey(), start, end);
+            }
+            return new FileSegment(file, start, end);
+        }
+    }
+
+    /**
+     * Returns the offset of the first line of the sorted file which is not less than the first keys
+     * of the new files, that is the first line a merger with them may change, or the length of the file
+     * if all the new lines go after its lines. The sparse index of the file, if any, narrows the search
+     * down to one block.
+     */
+    long findAppendOffset(File file, SparseIndex index, List<File> newFiles) throws IOException {
+        return findAppendOffset(getKeyOrder(), file, index, newFiles);
+    }
+
+    private static <K> long findAppendOffset(KeyOrder<K> keyOrder, File file, SparseIndex index, List<File> newFiles)
+            throws IOException {
+        K firstNewKey = null;
+        for (File newFile : newFiles) {
+            try (SortedFileSearcher<K> searcher = new SortedFileSearcher<>(newFile, keyOrder)) {
+                K key = searcher.readKey(0, searcher.getFileSize());
+                if (key != null && (firstNewKey == null || keyOrder.compare(key, firstNewKey) < 0)) {
+                    firstNewKey = key;
+                }
+            }
+        }
+
+        try (SortedFileSearcher<K> searcher = new SortedFileSearcher<>(file, keyOrder)) {
+            long fileSize = searcher.getFileSize();
+            if (firstNewKey == null) {
+                return fileSize;
+            }
+            long[] block = (index != null) ? index.findBlock(keyOrder, firstNewKey, fileSize) : null;
+            if (block == null) {
+                block = new long[] {0, fileSize};
+            }
+            return searcher.findFirstNotLess(firstNewKey, block[0], block[1]);
+        }
+    }
+
+    /**
+     * Opens a lazy merger of the segments, which hands over their lines selected by the query as records.
+     */
+    RecordMerger<R> openRecordMerger(List<FileSegment> inputSegments, boolean isConcatenation, LineQuery query)
+            throws IOException {
+        return new RecordMerger<>(this, null, inputSegments, isConcatenation, query);
+    }
+
+    /**
+     * Merges the lines of the segments selected by the query into the result file. The merger stops
+     * at the limit of lines or at the upper bound, without reading the rest of the segments.
+     */
+    void selectLines(File resultFile, List<FileSegment> inputSegments, LineQuery query) throws IOException {
+        try (
+                RecordMerger<R> recordMerger = new RecordMerger<>(this, resultFile, inputSegments, false, query);
+                LineWriter resultFileWriter = streamFactory.openLineWriter(resultFile,
+                        recordMerger.getTaskStatistics())
+        ) {
+            while (recordMerger.hasNext()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                recordMerger.writeNext(resultFileWriter);
+            }
+        }
+    }
+
+    void copyFile(File srcFile, File destFile) throws IOException {
+        LostLinesReport lostLinesReport = new LostLinesReport();
+        TaskStatistics taskStatistics = startTask("copy");
+        taskStatistics.setFiles(destFile, List.of(srcFile));
+        try (LineWriter destFileWriter = streamFactory.openLineWriter(destFile, taskStatistics)) {
+            copyLines(destFileWriter, srcFile, lostLinesReport, taskStatistics);
+        }
+        taskStatistics.finish();
+        lostLinesReport.print();
+    }
+
+    /**
+     * Writes the lines of the files one after another; the files have to follow each other in key order.
+     * The verified files, which are known to be valid and sorted, are copied as raw bytes if the writer allows it.
+     */
+    void concatenateFiles(File resultFile, List<File> inputFiles, Set<File> verifiedFiles) throws IOException {
+        LostLinesReport lostLinesReport = new LostLinesReport();
+        TaskStatistics taskStatistics = startTask("concatenate");
+        taskStatistics.setFiles(resultFile, inputFiles);
+        try (LineWriter resultFileWriter = streamFactory.openLineWriter(resultFile, taskStatistics)) {
+            for (File inputFile : inputFiles) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                if (verifiedFiles.contains(inputFile) && isPlainTextFile(inputFile) &&
+                        resultFileWriter.isRawCopySupported()) {
+                    try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+                        long size = channel.size();
+                        long lines = resultFileWriter.transferLines(channel, 0, size);
+                        taskStatistics.addRead(size, 0);
+                        if (lines > 0) {
+                            taskStatistics.addLinesWritten(lines);
+                        }
+                    }
+                } else {
+                    copyLines(resultFileWriter, inputFile, lostLinesReport, taskStatistics);
+                }
+            }
+        }
+        taskStatistics.finish();
+        lostLinesReport.print();
+    }
+
+    private void copyLines(LineWriter writer, File srcFile, LostLinesReport lostLinesReport,
+                           TaskStatistics taskStatistics) throws IOException {
+        FileSegment srcSegment = new FileSegment(srcFile);
+        try (R srcFileReader = openReader(srcSegment, taskStatistics)) {
+            if (!transferRemainingLines(writer, srcFileReader, srcSegment, taskStatistics)) {
+                while (!srcFileReader.hasReachedEnd()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+
+                    transferLine(writer, srcFileReader, taskStatistics);
+                }
+            }
+            lostLinesReport.addReader(srcFileReader);
+            taskStatistics.addReader(srcFileReader);
+        }
+    }
+
+    void mergeSegments(File resultFile, List<FileSegment> inputSegments) throws IOException {
+        LostLinesReport lostLinesReport = new LostLinesReport();
+        TaskStatistics taskStatistics = startTask("merge");
+        taskStatistics.setFiles(resultFile, inputSegments);
+        mergeSegments(resultFile, inputSegments, lostLinesReport, taskStatistics);
+        taskStatistics.finish();
+        lostLinesReport.print();
+    }
+
+    void mergeSegments(File resultFile, List<FileSegment> inputSegments, LostLinesReport lostLinesReport,
+                       TaskStatistics taskStatistics) throws IOException {
+        if (inputSegments.size() == 2) {
+            mergeTwoFiles(resultFile, inputSegments.get(0), inputSegments.get(1), lostLinesReport, taskStatistics);
+        } else {
+            mergeMultipleFiles(resultFile, inputSegments, lostLinesReport, taskStatistics);
+        }
+    }
+
+    /**
+     * Merges the lines of the segments whose keys lie in the range [lowerKey, upperKey) into the result file;
+     * a null key leaves the range open. The lines out of the range, which the segments of files that are not
+     * quite sorted may hold, are counted as out-of-order lines. Trusted segments are cut exactly
+     * at the bounds, so they are merged without checks.
+     */
+    void mergeRange(File resultFile, List<FileSegment> inputSegments, Object lowerKey, Object upperKey,
+                    LostLinesReport lostLinesReport, TaskStatistics taskStatistics) throws IOException {
+        if (isInputTrusted) {
+            mergeSegments(resultFile, inputSegments, lostLinesReport, taskStatistics);
+            return;
+        }
+
+        List<R> readers = new ArrayList<>();
+        try (LineWriter resultFileWriter = streamFactory.openLineWriter(resultFile, taskStatistics)) {
+            // every reader skips its out-of-order lines, so once a line of a reader is not less
+            // than the lower bound, neither are the following ones
+            for (FileSegment inputSegment : inputSegments) {
+                R reader = openReader(inputSegment, taskStatistics);
+                readers.add(reader);
+                long linesOutOfRange = 0;
+                while (lowerKey != null && !reader.hasReachedEnd() && compareKey(lowerKey, reader) > 0) {
+                    reader.moveToNextLineInOrder();
+                    ++linesOutOfRange;
+                }
+                addLinesOutOfRange(reader, linesOutOfRange, lostLinesReport, taskStatistics);
+            }
+
+            // and the merged lines go in order, so the merger ends at the first line not less than the upper bound
+            LoserTree<R> loserTree = new LoserTree<>(readers, this::compare);
+            while (!loserTree.hasReachedEnd() &&
+                    (upperKey == null || compareKey(upperKey, loserTree.getWinner()) > 0)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                loserTree.getWinner().writeCurrentLine(resultFileWriter);
+                loserTree.moveWinnerToNextLine();
+                taskStatistics.addLineWritten();
+            }
+
+            for (R reader : readers) {
+                long linesOutOfRange = 0;
+                while (!reader.hasReachedEnd()) {
+                    reader.moveToNextLineInOrder();
+                    ++linesOutOfRange;
+                }
+                addLinesOutOfRange(reader, linesOutOfRange, lostLinesReport, taskStatistics);
+                lostLinesReport.addReader(reader);
+                taskStatistics.addReader(reader);
+            }
+        } finally {
+            for (R reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    static void addLinesOutOfRange(SortedReader reader, long lines, LostLinesReport lostLinesReport,
+                                   TaskStatistics taskStatistics) {
+        if (lines > 0) {
+            lostLinesReport.addUnorderedLines(reader.getFilepath(), lines);
+            taskStatistics.addLostLines(lines);
+        }
+    }
+
+    void mergeTwoFiles(File resultFile, FileSegment firstFile, FileSegment secondFile,
+                       LostLinesReport lostLinesReport, TaskStatistics taskStatistics) throws IOException {
+        try (
+                R firstSortedFile = openReader(firstFile, taskStatistics);
+                R secondSortedFile = openReader(secondFile, taskStatistics);
+                LineWriter resultFileWriter = streamFactory.openLineWriter(resultFile, taskStatistics)
+        ) {
+            // the lines taken in a row from the first (positive) or the second (negative) file
+            int streak = 0;
+            int gallopThreshold = MIN_GALLOP;
+            while (!firstSortedFile.hasReachedEnd() && !secondSortedFile.hasReachedEnd()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                int comparison;
+                if (taskStatistics.isSampledLine()) {
+                    long startTime = System.nanoTime();
+                    comparison = compare(firstSortedFile, secondSortedFile);
+                    taskStatistics.addCompareSample(System.nanoTime() - startTime);
+                } else {
+                    comparison = compare(firstSortedFile, secondSortedFile);
+                }
+
+                // equal lines are taken from the second file first
+                R source = (comparison < 0) ? firstSortedFile : secondSortedFile;
+                R other = (comparison < 0) ? secondSortedFile : firstSortedFile;
+                transferLine(resultFileWriter, source, taskStatistics);
+                streak = (comparison < 0) ? Math.max(streak, 0) + 1 : Math.min(streak, 0) - 1;
+
+                if (Math.abs(streak) >= gallopThreshold && !source.hasReachedEnd()) {
+                    long linesCopied = copyRun(resultFileWriter, source, other, comparison >= 0, taskStatistics);
+                    // galloping is made rarer while it copies short runs, as a merger of interleaved files does
+                    gallopThreshold = (linesCopied < MIN_GALLOP) ? Math.min(gallopThreshold * 2, MAX_GALLOP_THRESHOLD)
+                            : MIN_GALLOP;
+                    streak = 0;
+                }
+            }
+
+            R remainingFile = (firstSortedFile.hasReachedEnd()) ? secondSortedFile : firstSortedFile;
+            FileSegment remainingSegment = (firstSortedFile.hasReachedEnd()) ? secondFile : firstFile;
+            if (!transferRemainingLines(resultFileWriter, remainingFile, remainingSegment, taskStatistics)) {
+                while (!remainingFile.hasReachedEnd()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+
+                    transferLine(resultFileWriter, remainingFile, taskStatistics);
+                }
+            }
+
+            lostLinesReport.addReader(firstSortedFile);
+            lostLinesReport.addReader(secondSortedFile);
+            taskStatistics.addReader(firstSortedFile);
+            taskStatistics.addReader(secondSortedFile);
+        }
+    }
+
+    /**
+     * Copies the run of lines of a trusted reader which go before the current line of the other reader
+     * (or are equal to it, if equal lines are copied) as raw bytes, as far as the buffer of the reader holds them.
+     * The end of the run is found by exponential search followed by binary search over the bytes of the buffer.
+     * Returns the number of copied lines, which is 0 if the reader is not trusted or the writer
+     * does not accept raw lines.
+     */
+    private long copyRun(LineWriter writer, R reader, R otherReader, boolean isEqualCopied,
+                         TaskStatistics taskStatistics) throws IOException {
+        ByteLineReader lineReader = reader.getTrustedLineReader();
+        if (lineReader == null || !writer.isRawCopySupported()) {
+            return 0;
+        }
+
+        // only complete lines are copied, an unterminated last line is left to the line-by-line merger
+        ByteBuffer buffer = lineReader.getBuffer();
+        int runStart = lineReader.getLineStart();
+        int dataEnd = buffer.limit();
+        while (dataEnd > runStart && buffer.get(dataEnd - 1) != '\n') {
+            --dataEnd;
+        }
+        RunBound bound = new RunBound(buffer, otherReader, isEqualCopied);
+        if (dataEnd == runStart || !bound.isInRun(runStart)) {
+            return 0;
+        }
+
+        // gallop: probe lines at doubling distances until one is not in the run
+        int low = bound.getNextLineStart(runStart);
+        int high = dataEnd;
+        for (long step = INITIAL_GALLOP_STEP; low < dataEnd; step *= 2) {
+            int probe = bound.getLineStartFrom((int) Math.min(low + step, dataEnd), dataEnd);
+            if (probe == dataEnd) {
+                break;
+            }
+            if (!bound.isInRun(probe)) {
+                high = probe;
+                break;
+            }
+            low = bound.getNextLineStart(probe);
+        }
+        int runEnd = bound.findRunEnd(low, high);
+
+        long lines = 0;
+        for (int i = runStart; i < runEnd; ++i) {
+            if (buffer.get(i) == '\n') {
+                ++lines;
+            }
+        }
+        ByteBuffer run = buffer.duplicate();
+        run.limit(runEnd).position(runStart);
+        writer.writeRawLines(run, lines);
+        taskStatistics.addLinesWritten(lines);
+
+        lineReader.setNextLineStart(runEnd);
+        reader.moveToNextLineInOrder();
+        return lines;
+    }
+
+    /**
+     * Copies the rest of the segment of a trusted reader, starting with its current line, straight from the file.
+     * Returns false if the reader is not trusted, the file is not a regular uncompressed text file,
+     * or the writer does not accept raw lines, so the lines have to be transferred one by one.
+     */
+    private boolean transferRemainingLines(LineWriter writer, R reader, FileSegment segment,
+                                           TaskStatistics taskStatistics) throws IOException {
+        ByteLineReader lineReader = reader.getTrustedLineReader();
+        if (lineReader == null || !writer.isRawCopySupported() || !isPlainTextFile(segment.getFile())) {
+            return false;
+        }
+        if (reader.hasReachedEnd()) {
+            return true;
+        }
+
+        try (FileChannel channel = FileChannel.open(segment.getFile().toPath(), StandardOpenOption.READ)) {
+            long position = segment.getStart() + lineReader.getLineOffset();
+            long end = Math.min(channel.size(), segment.getEnd());
+            long lines = writer.transferLines(channel, position, end - position);
+            if (lines > 0) {
+                taskStatistics.addLinesWritten(lines);
+            }
+        }
+        return true;
+    }
+
+    void mergeMultipleFiles(File resultFile, List<FileSegment> inputFiles, LostLinesReport lostLinesReport,
+                            TaskStatistics taskStatistics) throws IOException {
+        List<R> sortedFiles = new ArrayList<>();
+        try (LineWriter resultFileWriter = streamFactory.openLineWriter(resultFile, taskStatistics)) {
+            for (FileSegment inputFile : inputFiles) {
+                sortedFiles.add(openReader(inputFile, taskStatistics));
+            }
+
+            LoserTree<R> loserTree = new LoserTree<>(sortedFiles, this::compare);
+            while (!loserTree.hasReachedEnd()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                R winner = loserTree.getWinner();
+                winner.writeCurrentLine(resultFileWriter);
+                if (taskStatistics.isSampledLine()) {
+                    long startTime = System.nanoTime();
+                    winner.moveToNextLineInOrder();
+                    long advanceTime = System.nanoTime();
+                    loserTree.replayWinner();
+                    taskStatistics.addAdvanceSample(advanceTime - startTime);
+                    taskStatistics.addCompareSample(System.nanoTime() - advanceTime);
+                } else {
+                    loserTree.moveWinnerToNextLine();
+                }
+                taskStatistics.addLineWritten();
+            }
+
+            for (R sortedFile : sortedFiles) {
+                lostLinesReport.addReader(sortedFile);
+                taskStatistics.addReader(sortedFile);
+            }
+        } finally {
+            for (R sortedFile : sortedFiles) {
+                sortedFile.close();
+            }
+        }
+    }
+
+    private void transferLine(LineWriter destFileWriter, R srcFileReader, TaskStatistics taskStatistics)
+            throws IOException {
+        srcFileReader.writeCurrentLine(destFileWriter);
+        if (taskStatistics.isSampledLine()) {
+            long startTime = System.nanoTime();
+            srcFileReader.moveToNextLineInOrder();
+            taskStatistics.addAdvanceSample(System.nanoTime() - startTime);
+        } else {
+            srcFileReader.moveToNextLineInOrder();
+        }
+        taskStatistics.addLineWritten();
+    }
+
+    /**
+     * The current line of the other reader, which bounds a run of lines of the buffer of a galloping reader.
+     */
+    private class RunBound {
+        private ByteBuffer buffer;
+        private ByteBuffer line;
+        private R otherReader;
+        private boolean isEqualCopied;
+
+        RunBound(ByteBuffer buffer, R otherReader, boolean isEqualCopied) {
+            this.buffer = buffer;
+            line = buffer.duplicate();
+            this.otherReader = otherReader;
+            this.isEqualCopied = isEqualCopied;
+        }
+
+        /**
+         * Tells whether the line starting at the position of the buffer belongs to the run.
+         * An invalid line ends the run, it is left to the reader to be skipped.
+         */
+        boolean isInRun(int lineStart) {
+            int lineEnd = getNextLineStart(lineStart) - 1;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                --lineEnd;
+            }
+            line.limit(lineEnd).position(lineStart);
+            try {
+                int comparison = compare(line, otherReader);
+                return comparison < 0 || (isEqualCopied && comparison == 0);
+            } catch (LineConverterException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Returns the start of the line following the one starting at the position; the line has to be terminated.
+         */
+        int getNextLineStart(int lineStart) {
+            int i = lineStart;
+            while (buffer.get(i) != '\n') {
+                ++i;
+            }
+            return i + 1;
+        }
+
+        /**
+         * Returns the first line start not less than the position, or the limit if there is none before it.
+         * The limit has to follow a line terminator.
+         */
+        int getLineStartFrom(int position, int limit) {
+            if (position >= limit) {
+                return limit;
+            }
+            return (buffer.get(position - 1) == '\n') ? position : getNextLineStart(position);
+        }
+
+        /**
+         * Returns the first line start in [low, high) whose line does not belong to the run, or high if there is none.
+         * The lines before low belong to the run; both bounds have to be line starts.
+         */
+        int findRunEnd(int low, int high) {
+            while (low < high) {
+                int middle = low + (high - low) / 2;
+                int lineStart = getLineStartFrom(middle, high);
+                if (lineStart >= high) {
+                    // no line starts in [middle, high), the lines of [low, middle) are checked one by one
+                    while (low < high && isInRun(low)) {
+                        low = getNextLineStart(low);
+                    }
+                    return low;
+                }
+                if (isInRun(lineStart)) {
+                    low = getNextLineStart(lineStart);
+                } else {
+                    high = lineStart;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package mergesort;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal of the completed steps of a job (run generation and intermediate mergers), kept in a work directory
+ * together with their output files, so that an interrupted job can be resumed.
+ *
+ * The journal and the files of the job are kept in a subdirectory of the work directory owned by the sorter,
+ * so that the other files of the work directory are never deleted. The input and output files of the job
+ * are not deleted even if they lie in the subdirectory.
+ *
+ * Every step is recorded with the names, lengths and checksums of its outputs. The journal is rewritten
+ * into a temporary file, which replaces the previous journal by an atomic rename, and the output
+ * of a merger is renamed to its final name before it is recorded, so a crash leaves either a complete
+ * recorded step or files which are not referenced by the journal and are deleted on restart.
+ */
+class MergeJournal {
+    private static final String JOB_DIRECTORY_NAME = ".mergesort-job";
+    private static final String JOURNAL_FILENAME = "journal";
+    private static final String TEMPORARY_SUFFIX = ".part";
+    private static final String HEADER = "mergesort-journal 1";
+    private static final String JOB_RECORD = "job";
+    private static final String OUTPUT_RECORD = "output";
+    private static final int CHECKSUM_BUFFER_SIZE = 1 << 20;
+
+    private File workDirectory;
+    private File jobDirectory;
+    private String jobFingerprint;
+    // the input and output files of the job, by their absolute paths
+    private Set<Path> keptPaths = new HashSet<>();
+    // the outputs of the recorded steps in the order of their completion
+    private Map<String, List<RecordedFile>> steps = new LinkedHashMap<>();
+
+    /**
+     * Opens the journal of the work directory. The journal is kept only if it was written for the job
+     * with the same fingerprint, and the files of the job not referenced by it are deleted,
+     * except for the given input and output files.
+     */
+    MergeJournal(File workDirectory, String jobFingerprint, Collection<File> keptFiles) throws IOException {
+        this.workDirectory = workDirectory;
+        this.jobDirectory = getJobDirectory(workDirectory);
+        this.jobFingerprint = jobFingerprint;
+        for (File keptFile : keptFiles) {
+            keptPaths.add(toAbsolutePath(keptFile));
+        }
+        Files.createDirectories(jobDirectory.toPath());
+
+        File journalFile = new File(jobDirectory, JOURNAL_FILENAME);
+        if (journalFile.exists()) {
+            if (!load(journalFile)) {
+                System.err.printf("Warning: work directory \"%s\" contains the journal of another job, " +
+                        "it is discarded\n", workDirectory.getPath());
+                steps.clear();
+            } else if (!steps.isEmpty()) {
+                System.err.printf("Resuming the job with %d completed steps from work directory \"%s\"\n",
+                        steps.size(), workDirectory.getPath());
+            }
+        }
+        deleteUnreferencedFiles();
+        write();
+    }
+
+    /**
+     * Returns the directory of the files of the jobs run with the given work directory.
+     */
+    static File getJobDirectory(File workDirectory) {
+        return new File(workDirectory, JOB_DIRECTORY_NAME);
+    }
+
+    /**
+     * Returns the output file of the step in the directory of the job.
+     */
+    File getOutputFile(String step, String suffix) {
+        return new File(jobDirectory, step + suffix);
+    }
+
+    /**
+     * Returns the file the output of the step is written to before it is committed.
+     */
+    static File getTemporaryFile(File outputFile) {
+        return new File(outputFile.getPath() + TEMPORARY_SUFFIX);
+    }
+
+    /**
+     * Returns the outputs of the step if it has been recorded and all its files are intact, or null otherwise.
+     */
+    List<File> getCompletedOutputs(String step) throws IOException {
+        List<RecordedFile> recordedFiles;
+        synchronized (this) {
+            recordedFiles = steps.get(step);
+        }
+        if (recordedFiles == null) {
+            return null;
+        }
+
+        List<File> outputs = new ArrayList<>();
+        for (RecordedFile recordedFile : recordedFiles) {
+            File file = new File(jobDirectory, recordedFile.name);
+            if (!file.isFile() || file.length() != recordedFile.length ||
+                    computeChecksum(file) != recordedFile.checksum) {
+                System.err.printf("Warning: file \"%s\" of the completed step %s has been changed, " +
+                        "the step is repeated\n", file.getPath(), step);
+                return null;
+            }
+            outputs.add(file);
+        }
+        return outputs;
+    }
+
+    /**
+     * Records the step with its output files, which have to be located in the directory of the job.
+     * The files are flushed to the disk first, so that the journal never references lost data.
+     */
+    void commit(String step, List<File> outputs) throws IOException {
+        List<RecordedFile> recordedFiles = new ArrayList<>();
+        for (File output : outputs) {
+            try (FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.READ)) {
+                channel.force(true);
+            }
+            recordedFiles.add(new RecordedFile(output.getName(), output.length(), computeChecksum(output)));
+        }
+        synchronized (this) {
+            steps.put(step, recordedFiles);
+            write();
+        }
+    }
+
+    /**
+     * Atomically renames the temporary output of the step to its final name and records the step.
+     */
+    void commit(String step, File temporaryFile, File outputFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        move(temporaryFile, outputFile);
+        commit(step, List.of(outputFile));
+    }
+
+    /**
+     * Deletes the journal and all the files of the job after it has been completed, and the directory
+     * of the job if nothing else is left in it.
+     */
+    synchronized void clear() throws IOException {
+        steps.clear();
+        Files.deleteIfExists(new File(jobDirectory, JOURNAL_FILENAME).toPath());
+        deleteUnreferencedFiles();
+        String[] remainingNames = jobDirectory.list();
+        if (remainingNames != null && remainingNames.length == 0) {
+            Files.deleteIfExists(jobDirectory.toPath());
+        }
+    }
+
+    private boolean load(File journalFile) throws IOException {
+        List<String> lines = Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+        if (lines.size() < 2 || !lines.get(0).equals(HEADER) ||
+                !lines.get(1).equals(JOB_RECORD + " " + jobFingerprint)) {
+            return false;
+        }
+
+        for (String line : lines.subList(2, lines.size())) {
+            String[] fields = line.split(" ");
+            if (fields.length != 5 || !fields[0].equals(OUTPUT_RECORD)) {
+                return false;
+            }
+            try {
+                steps.computeIfAbsent(fields[1], step -> new ArrayList<>()).add(new RecordedFile(fields[2],
+                        Long.parseLong(fields[3]), Long.parseLong(fields[4], 16)));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write() throws IOException {
+        File journalFile = new File(jobDirectory, JOURNAL_FILENAME);
+        File temporaryFile = getTemporaryFile(journalFile);
+        try (FileOutputStream outputStream = new FileOutputStream(temporaryFile)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            writer.write(HEADER + "\n");
+            writer.write(JOB_RECORD + " " + jobFingerprint + "\n");
+            for (Map.Entry<String, List<RecordedFile>> step : steps.entrySet()) {
+                for (RecordedFile file : step.getValue()) {
+                    writer.write(String.format("%s %s %s %d %x\n", OUTPUT_RECORD, step.getKey(), file.name,
+                            file.length, file.checksum));
+                }
+            }
+            writer.flush();
+            outputStream.getFD().sync();
+        }
+        move(temporaryFile, journalFile);
+    }
+
+    private void deleteUnreferencedFiles() throws IOException {
+        Set<String> referencedNames = new HashSet<>();
+        referencedNames.add(JOURNAL_FILENAME);
+        for (List<RecordedFile> files : steps.values()) {
+            for (RecordedFile file : files) {
+                referencedNames.add(file.name);
+            }
+        }
+
+        File[] files = jobDirectory.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list work directory \"" + jobDirectory.getPath() + "\"");
+        }
+        for (File file : files) {
+            if (file.isFile() && !referencedNames.contains(file.getName()) &&
+                    !keptPaths.contains(toAbsolutePath(file))) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    private static Path toAbsolutePath(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static long computeChecksum(File file) throws IOException {
+        CRC32C checksum = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHECKSUM_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                checksum.update(buffer);
+                buffer.clear();
+            }
+        }
+        return checksum.getValue();
+    }
+
+    private static class RecordedFile {
+        private String name;
+        private long length;
+        private long checksum;
+
+        RecordedFile(String name, long length, long checksum) {
+            this.name = name;
+            this.length = length;
+            this.checksum = checksum;
+        }
+    }
+}
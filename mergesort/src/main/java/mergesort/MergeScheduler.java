@@ -0,0 +1,132 @@
+package mergesort;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the mergers of a merge plan, which form a dependency graph: a merger starts as soon as
+ * all the mergers producing its input files have finished. At most threadsNumber mergers run at once.
+ * <p>
+ * Virtual threads (Java 21 and newer) are looked up by reflection, so that the project still builds for Java 11.
+ * They are used for the mergers only if requested; the number of running mergers is bounded all the same.
+ * <p>
+ * With a memory governor, a merger also reserves the memory of its buffers before it starts and releases it
+ * when it finishes, so the number of running mergers follows the memory they need.
+ */
+class MergeScheduler implements AutoCloseable {
+    interface Merger {
+        void merge() throws IOException;
+    }
+
+    private ExecutorService executor;
+    private Semaphore runningMergers;
+    private MergeStatistics statistics;
+    private MemoryGovernor memoryGovernor;
+
+    MergeScheduler(int threadsNumber, boolean isVirtualThreads, MergeStatistics statistics,
+                   MemoryGovernor memoryGovernor) {
+        this.statistics = statistics;
+        this.memoryGovernor = memoryGovernor;
+        if (isVirtualThreads) {
+            executor = newVirtualThreadExecutor();
+            if (executor == null) {
+                System.err.println("Warning: virtual threads are not supported by this JVM, " +
+                        "platform threads are used instead");
+            }
+        }
+
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threadsNumber, runnable -> {
+                Thread thread = new Thread(runnable, "mergesort-merger");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            runningMergers = new Semaphore(threadsNumber);
+        }
+    }
+
+    /**
+     * Returns an executor creating a virtual thread per task, or null if the JVM does not support them.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Schedules the merger, which needs the given number of bytes of memory, to run after all the dependencies
+     * complete. The memory is reserved from the governor, if there is one, while the merger runs.
+     * If any of the dependencies fails, the merger does not run and the returned future fails too.
+     */
+    CompletableFuture<Void> schedule(Merger merger, List<CompletableFuture<Void>> dependencies, long memory) {
+        return CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> System.nanoTime())
+                .thenAcceptAsync(readyTime -> {
+                    if (statistics != null) {
+                        statistics.addQueueWaitTime(System.nanoTime() - readyTime);
+                    }
+                    runMerger(merger, memory);
+                }, executor);
+    }
+
+    private void runMerger(Merger merger, long memory) {
+        try {
+            if (runningMergers != null) {
+                runningMergers.acquire();
+            }
+            try {
+                long reservedMemory = (memoryGovernor != null) ? memoryGovernor.reserve(memory) : 0;
+                try {
+                    merger.merge();
+                } finally {
+                    if (memoryGovernor != null) {
+                        memoryGovernor.release(reservedMemory);
+                    }
+                }
+            } finally {
+                if (runningMergers != null) {
+                    runningMergers.release();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Merger has been interrupted", e);
+        }
+    }
+
+    /**
+     * Interrupts the running mergers, e.g. after one of them has failed.
+     */
+    void cancel() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Waits for the running mergers to finish. If the waiting thread is interrupted, its interrupt flag
+     * is restored and an {@link InterruptedIOException} is thrown, so that the scheduler can be closed
+     * by try-with-resources.
+     */
+    @Override
+    public void close() throws InterruptedIOException {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Waiting for the mergers has been interrupted");
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package mergesort;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a whole job: the finished tasks, the bytes written so far (for progress reporting),
+ * the estimated number of bytes the job writes in total, the size of the temporary files
+ * and the time the scheduler waited for files to merge.
+ */
+class MergeStatistics {
+    private long startTime = System.nanoTime();
+    private LongAdder bytesWritten = new LongAdder();
+    private AtomicLong plannedBytes = new AtomicLong();
+    private AtomicLong temporaryBytes = new AtomicLong();
+    private AtomicLong queueWaitNanos = new AtomicLong();
+    private List<TaskStatistics> tasks = new ArrayList<>();
+
+    TaskStatistics startTask(String stage) {
+        return new TaskStatistics(this, stage);
+    }
+
+    synchronized void addTask(TaskStatistics task) {
+        tasks.add(task);
+    }
+
+    void addProgress(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    void addPlannedBytes(long bytes) {
+        plannedBytes.addAndGet(bytes);
+    }
+
+    void addTemporaryBytes(long bytes) {
+        temporaryBytes.addAndGet(bytes);
+    }
+
+    void addQueueWaitTime(long nanos) {
+        queueWaitNanos.addAndGet(nanos);
+    }
+
+    long getElapsedNanos() {
+        return System.nanoTime() - startTime;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    long getPlannedBytes() {
+        return plannedBytes.get();
+    }
+
+    synchronized void writeJson(Writer writer) throws IOException {
+        long elapsedNanos = getElapsedNanos();
+        long linesRead = 0, linesWritten = 0, lostLines = 0, bytesRead = 0, bytesWritten = 0;
+        long readNanos = 0, parseNanos = 0, compareNanos = 0, writeNanos = 0, sortNanos = 0;
+        for (TaskStatistics task : tasks) {
+            linesRead += task.getLinesRead();
+            linesWritten += task.getLinesWritten();
+            lostLines += task.getLostLines();
+            bytesRead += task.getBytesRead();
+            bytesWritten += task.getBytesWritten();
+            readNanos += task.getReadNanos();
+            parseNanos += task.getParseNanos();
+            compareNanos += task.getCompareNanos();
+            writeNanos += task.getWriteNanos();
+            sortNanos += task.getSortNanos();
+        }
+
+        writer.write("{\n");
+        writeField(writer, "  ", "elapsedMillis", toMillis(elapsedNanos));
+        writeField(writer, "  ", "linesRead", linesRead);
+        writeField(writer, "  ", "linesWritten", linesWritten);
+        writeField(writer, "  ", "lostLines", lostLines);
+        writeField(writer, "  ", "linesPerSecond", getRate(linesWritten, elapsedNanos));
+        writeField(writer, "  ", "bytesRead", bytesRead);
+        writeField(writer, "  ", "bytesWritten", bytesWritten);
+        writeField(writer, "  ", "temporaryBytes", temporaryBytes.get());
+        writeField(writer, "  ", "readMillis", toMillis(readNanos));
+        writeField(writer, "  ", "parseMillis", toMillis(parseNanos));
+        writeField(writer, "  ", "compareMillis", toMillis(compareNanos));
+        writeField(writer, "  ", "writeMillis", toMillis(writeNanos));
+        writeField(writer, "  ", "sortMillis", toMillis(sortNanos));
+        writeField(writer, "  ", "queueWaitMillis", toMillis(queueWaitNanos.get()));
+        writer.write("  \"tasks\": [");
+        for (int i = 0; i < tasks.size(); ++i) {
+            writer.write(i == 0 ? "\n" : ",\n");
+            writeTask(writer, tasks.get(i));
+        }
+        writer.write("\n  ]\n}\n");
+    }
+
+    private static void writeTask(Writer writer, TaskStatistics task) throws IOException {
+        long elapsedNanos = task.getElapsedNanos();
+        writer.write("    {\n");
+        writeField(writer, "      ", "stage", task.getStage());
+        writeField(writer, "      ", "outputFile", task.getOutputFilepath());
+        writeField(writer, "      ", "inputFiles", task.getInputFilesNumber());
+        writeField(writer, "      ", "elapsedMillis", toMillis(elapsedNanos));
+        writeField(writer, "      ", "linesRead", task.getLinesRead());
+        writeField(writer, "      ", "linesWritten", task.getLinesWritten());
+        writeField(writer, "      ", "lostLines", task.getLostLines());
+        writeField(writer, "      ", "linesPerSecond", getRate(task.getLinesWritten(), elapsedNanos));
+        writeField(writer, "      ", "bytesRead", task.getBytesRead());
+        writeField(writer, "      ", "bytesWritten", task.getBytesWritten());
+        writeField(writer, "      ", "readMillis", toMillis(task.getReadNanos()));
+        writeField(writer, "      ", "parseMillis", toMillis(task.getParseNanos()));
+        writeField(writer, "      ", "compareMillis", toMillis(task.getCompareNanos()));
+        writeField(writer, "      ", "writeMillis", toMillis(task.getWriteNanos()));
+        writer.write("      \"sortMillis\": " + toMillis(task.getSortNanos()) + "\n");
+        writer.write("    }");
+    }
+
+    private static void writeField(Writer writer, String indent, String name, long value) throws IOException {
+        writer.write(indent + "\"" + name + "\": " + value + ",\n");
+    }
+
+    private static void writeField(Writer writer, String indent, String name, String value) throws IOException {
+        StringBuilder escapedValue = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                escapedValue.append('\\').append(c);
+            } else if (c < ' ') {
+                escapedValue.append(String.format("\\u%04x", (int) c));
+            } else {
+                escapedValue.append(c);
+            }
+        }
+        writer.write(indent + "\"" + name + "\": \"" + escapedValue + "\",\n");
+    }
+
+    static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    static long getRate(long amount, long nanos) {
+        return nanos == 0 ? 0 : (long) (amount * 1e9 / nanos);
+    }
+}
@@ -0,0 +1,41 @@
+package mergesort;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of a merge, copy or run generation task, which allows to correlate the tasks
+ * with garbage collections and file I/O of the same recording.
+ */
+@Name("mergesort.MergeTask")
+@Label("Merge Task")
+@Category("Merge Sort")
+@Description("Merge, copy or run generation task")
+class MergeTaskEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Output File")
+    String outputFile;
+
+    @Label("Input Files")
+    int inputFiles;
+
+    @Label("Lines Written")
+    long linesWritten;
+
+    @Label("Lost Lines")
+    long lostLines;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+}
@@ -0,0 +1,137 @@
+package mergesort;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Merges files in parallel: the key space is split into ranges, every range of all the files is merged
+ * into its own temporary file by a separate merger, and the results are concatenated.
+ * The lines of a file which is not quite sorted may be cut into the wrong range; every merger drops
+ * the lines out of its range, so that the concatenation stays sorted.
+ * <p>
+ * The split, the mergers of the ranges and the concatenation run as separate mergers of the scheduler of the job,
+ * so the number of threads and the memory budget of the job apply to them, and none of them waits for another
+ * while holding a thread of the scheduler.
+ */
+class PartitionedMerger {
+    private MergeEngine<?> mergeEngine;
+    private int partitionsNumber;
+    private MergeScheduler scheduler;
+    private LostLinesReport lostLinesReport = new LostLinesReport();
+    // the ranges holding lines and their files, known once the input files have been split
+    private List<KeyPartition> partitions = new ArrayList<>();
+    private List<File> partitionFiles = new ArrayList<>();
+
+    PartitionedMerger(MergeEngine<?> mergeEngine, int partitionsNumber, MergeScheduler scheduler) {
+        this.mergeEngine = mergeEngine;
+        this.partitionsNumber = partitionsNumber;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Schedules the merger of the input files into the result file after all the dependencies complete;
+     * every range is merged with the given memory of its buffers. The completion merger runs after
+     * the concatenation, as a part of the last merger. Once the scheduler is closed, {@link #finish()}
+     * has to be called.
+     */
+    CompletableFuture<Void> schedule(File resultFile, List<File> inputFiles,
+                                     List<CompletableFuture<Void>> dependencies, long partitionMemory,
+                                     MergeScheduler.Merger completion) {
+        return scheduler.schedule(() -> split(resultFile, inputFiles), dependencies, 0)
+                .thenCompose(ignored -> {
+                    List<CompletableFuture<Void>> mergers = new ArrayList<>();
+                    for (int i = 0; i < partitions.size(); ++i) {
+                        KeyPartition partition = partitions.get(i);
+                        File partitionFile = partitionFiles.get(i);
+                        mergers.add(scheduler.schedule(() -> mergePartition(partition, partitionFile,
+                                resultFile), List.of(), partitionMemory));
+                    }
+                    return scheduler.schedule(() -> {
+                        TaskStatistics taskStatistics = mergeEngine.startTask("concatenate");
+                        taskStatistics.setFiles(resultFile, partitionFiles);
+                        concatenateFiles(resultFile, partitionFiles, taskStatistics);
+                        taskStatistics.finish();
+                        completion.merge();
+                    }, mergers, 0);
+                });
+    }
+
+    /**
+     * Reports the lost lines and deletes the partition files after the mergers have stopped.
+     */
+    void finish() {
+        lostLinesReport.print();
+        for (File partitionFile : partitionFiles) {
+            partitionFile.delete();
+        }
+    }
+
+    private void split(File resultFile, List<File> inputFiles) throws IOException {
+        StreamFactory streamFactory = mergeEngine.getStreamFactory();
+        TemporaryDirectories temporaryDirectories = streamFactory.getTemporaryDirectories();
+        // compressed partitions are compressed in parallel, and their concatenation is a gzip file
+        FileFormat partitionFormat = (streamFactory.getFormat(resultFile) == FileFormat.GZIP) ?
+                FileFormat.GZIP : FileFormat.TEXT;
+        // a range which none of the files holds would leave its merger without readers
+        for (KeyPartition partition : mergeEngine.partitionByKeys(inputFiles, partitionsNumber)) {
+            if (partition.isEmpty()) {
+                continue;
+            }
+            Set<File> sourceFiles = new HashSet<>();
+            for (FileSegment segment : partition.getSegments()) {
+                sourceFiles.add(segment.getFile());
+            }
+            File partitionFile = temporaryDirectories.createFile(".part", partition.getLength(), sourceFiles);
+            streamFactory.setFormat(partitionFile, partitionFormat);
+            partitions.add(partition);
+            partitionFiles.add(partitionFile);
+        }
+    }
+
+    private void mergePartition(KeyPartition partition, File partitionFile, File resultFile) throws IOException {
+        StreamFactory streamFactory = mergeEngine.getStreamFactory();
+        TemporaryDirectories temporaryDirectories = streamFactory.getTemporaryDirectories();
+        long reservedSpace = temporaryDirectories.reserve(partitionFile, partition.getLength(),
+                streamFactory.getFormat(partitionFile).isCompressed());
+        try {
+            TaskStatistics taskStatistics = mergeEngine.startTask("partition");
+            taskStatistics.setFiles(partitionFile, partition.getSegments());
+            mergeEngine.mergeRange(partitionFile, partition.getSegments(), partition.getLowerKey(),
+                    partition.getUpperKey(), lostLinesReport, taskStatistics);
+            taskStatistics.finish();
+        } finally {
+            temporaryDirectories.release(partitionFile, reservedSpace);
+        }
+    }
+
+    private void concatenateFiles(File resultFile, List<File> inputFiles, TaskStatistics taskStatistics)
+            throws IOException {
+        try (FileChannel resultChannel = new FileOutputStream(resultFile).getChannel()) {
+            for (File inputFile : inputFiles) {
+                try (FileChannel inputChannel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+                    long startTime = System.nanoTime();
+                    long size = inputChannel.size();
+                    long position = 0;
+                    while (position < size) {
+                        position += inputChannel.transferTo(position, size - position, resultChannel);
+                    }
+
+                    // the bytes are copied by the kernel, so the time is accounted as writing
+                    taskStatistics.addRead(size, 0);
+                    taskStatistics.addWrite(size, System.nanoTime() - startTime);
+                    if (mergeEngine.getStatistics() != null) {
+                        mergeEngine.getStatistics().addTemporaryBytes(size);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package mergesort;
+
+import java.util.Comparator;
+
+/**
+ * Comparator which also maps every line to an order-preserving prefix packed into a long. Lines whose prefixes
+ * differ compare the same way as the prefixes do as unsigned numbers; equal prefixes say nothing about the order
+ * of the lines. Readers compute the prefix once per line, so that most comparisons of a merger are comparisons
+ * of primitives, and the comparator itself is called only on ties.
+ */
+public interface PrefixComparator<T> extends Comparator<T> {
+    long getPrefix(T line);
+
+    @Override
+    default PrefixComparator<T> reversed() {
+        PrefixComparator<T> comparator = this;
+        return new PrefixComparator<T>() {
+            @Override
+            public int compare(T firstLine, T secondLine) {
+                return comparator.compare(secondLine, firstLine);
+            }
+
+            @Override
+            public long getPrefix(T line) {
+                // inverting the bits reverses the unsigned order
+                return ~comparator.getPrefix(line);
+            }
+        };
+    }
+}
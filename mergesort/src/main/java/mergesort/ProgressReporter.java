@@ -0,0 +1,71 @@
+package mergesort;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically prints the share of the planned bytes that has been written, the write rate
+ * and the estimated time remaining. A worker of a sharded merge prints the bytes instead to the standard output,
+ * as a line {@code progress <written bytes> <planned bytes>} read by its coordinator.
+ */
+class ProgressReporter {
+    private static final String[] UNITS = {"B", "KiB", "MiB", "GiB", "TiB"};
+
+    private MergeStatistics statistics;
+    private boolean isWorker;
+    private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mergesort-progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    ProgressReporter(MergeStatistics statistics, int intervalSeconds, boolean isWorker) {
+        this.statistics = statistics;
+        this.isWorker = isWorker;
+        executor.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    private void report() {
+        long bytesWritten = statistics.getBytesWritten();
+        // the plan is an estimate: merges of partially sorted files write less than planned
+        long plannedBytes = Math.max(statistics.getPlannedBytes(), bytesWritten);
+        long elapsedNanos = statistics.getElapsedNanos();
+        if (isWorker) {
+            System.out.println(ShardCoordinator.PROGRESS_PREFIX + bytesWritten + " " + plannedBytes);
+            System.out.flush();
+            return;
+        }
+        if (plannedBytes == 0) {
+            return;
+        }
+
+        String remainingTime = "unknown";
+        if (bytesWritten > 0) {
+            double remainingShare = (double) (plannedBytes - bytesWritten) / bytesWritten;
+            remainingTime = formatDuration((long) (elapsedNanos * remainingShare));
+        }
+        System.err.printf("Progress: %.1f%% (%s of %s written), %s/s, ETA %s\n",
+                100.0 * bytesWritten / plannedBytes, formatBytes(bytesWritten), formatBytes(plannedBytes),
+                formatBytes(MergeStatistics.getRate(bytesWritten, elapsedNanos)), remainingTime);
+    }
+
+    private static String formatBytes(long bytes) {
+        double value = bytes;
+        int unit = 0;
+        while (value >= 1024 && unit < UNITS.length - 1) {
+            value /= 1024;
+            ++unit;
+        }
+        return String.format("%.1f %s", value, UNITS[unit]);
+    }
+
+    private static String formatDuration(long nanos) {
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
@@ -0,0 +1,119 @@
+package mergesort;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a set of sorted files into key ranges of roughly equal size.
+ * Splitter keys are chosen among lines sampled at evenly spaced positions of the files,
+ * then every file is cut at the splitters by binary search. The positions of the splitter lines
+ * are kept as well, so that another process can read the same keys.
+ */
+class RangePartitioner<K> {
+    private static final int SAMPLES_PER_PARTITION = 32;
+
+    private KeyOrder<K> keyOrder;
+
+    RangePartitioner(KeyOrder<K> keyOrder) {
+        this.keyOrder = keyOrder;
+    }
+
+    /**
+     * Returns the key ranges with the segments of the files belonging to them, in order of the ranges.
+     * Fewer ranges than requested are returned if there are not enough distinct keys.
+     */
+    List<KeyPartition> partition(List<File> inputFiles, int partitionsNumber) throws IOException {
+        List<SortedFileSearcher<K>> searchers = new ArrayList<>();
+        try {
+            for (File inputFile : inputFiles) {
+                searchers.add(new SortedFileSearcher<>(inputFile, keyOrder));
+            }
+
+            List<Sample<K>> splitters = chooseSplitters(inputFiles, searchers, partitionsNumber);
+            List<List<FileSegment>> partitionSegments = new ArrayList<>();
+            for (int i = 0; i <= splitters.size(); ++i) {
+                partitionSegments.add(new ArrayList<>());
+            }
+
+            for (int file = 0; file < inputFiles.size(); ++file) {
+                SortedFileSearcher<K> searcher = searchers.get(file);
+                long segmentStart = 0;
+                for (int i = 0; i <= splitters.size(); ++i) {
+                    long segmentEnd = (i == splitters.size()) ? searcher.getFileSize() :
+                            searcher.findFirstNotLess(splitters.get(i).key, segmentStart, searcher.getFileSize());
+                    if (segmentEnd > segmentStart) {
+                        partitionSegments.get(i).add(new FileSegment(inputFiles.get(file), segmentStart, segmentEnd));
+                    }
+                    segmentStart = segmentEnd;
+                }
+            }
+
+            List<KeyPartition> partitions = new ArrayList<>();
+            for (int i = 0; i <= splitters.size(); ++i) {
+                Sample<K> lowerBound = (i > 0) ? splitters.get(i - 1) : null;
+                Sample<K> upperBound = (i < splitters.size()) ? splitters.get(i) : null;
+                partitions.add(new KeyPartition(partitionSegments.get(i),
+                        (lowerBound != null) ? lowerBound.key : null, (lowerBound != null) ? lowerBound.line : null,
+                        (upperBound != null) ? upperBound.key : null, (upperBound != null) ? upperBound.line : null));
+            }
+            return partitions;
+        } finally {
+            for (SortedFileSearcher<K> searcher : searchers) {
+                searcher.close();
+            }
+        }
+    }
+
+    private List<Sample<K>> chooseSplitters(List<File> inputFiles, List<SortedFileSearcher<K>> searchers,
+                                            int partitionsNumber) throws IOException {
+        long totalSize = 0;
+        for (SortedFileSearcher<K> searcher : searchers) {
+            totalSize += searcher.getFileSize();
+        }
+
+        // every file gets a number of samples proportional to its size
+        List<Sample<K>> samples = new ArrayList<>();
+        long samplesNumber = (long) partitionsNumber * SAMPLES_PER_PARTITION;
+        for (int file = 0; file < searchers.size(); ++file) {
+            SortedFileSearcher<K> searcher = searchers.get(file);
+            long fileSize = searcher.getFileSize();
+            long fileSamples = (totalSize == 0) ? 0 : Math.max(1, samplesNumber * fileSize / totalSize);
+            for (long sample = 0; sample < fileSamples; ++sample) {
+                long lineStart = searcher.findLineStart(fileSize * sample / fileSamples);
+                K key = searcher.readKey(lineStart, fileSize);
+                if (key != null) {
+                    samples.add(new Sample<>(key, new FileSegment(inputFiles.get(file), searcher.getKeyLineStart(),
+                            searcher.getKeyLineEnd())));
+                }
+            }
+        }
+        samples.sort((first, second) -> keyOrder.compare(first.key, second.key));
+
+        // the first line of every file is sampled, so the first sample is the least key; a splitter equal to it
+        // would leave the first range empty, as would a splitter equal to the previous one
+        List<Sample<K>> splitters = new ArrayList<>();
+        for (int i = 1; i < partitionsNumber && !samples.isEmpty(); ++i) {
+            Sample<K> splitter = samples.get((int) ((long) samples.size() * i / partitionsNumber));
+            Sample<K> previousSplitter = splitters.isEmpty() ? samples.get(0) : splitters.get(splitters.size() - 1);
+            if (keyOrder.compare(previousSplitter.key, splitter.key) < 0) {
+                splitters.add(splitter);
+            }
+        }
+        return splitters;
+    }
+
+    /**
+     * Key of a sampled line together with the position of the line.
+     */
+    private static class Sample<K> {
+        private K key;
+        private FileSegment line;
+
+        Sample(K key, FileSegment line) {
+            this.key = key;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package mergesort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the underlying stream in a background task, up to queueDepth blocks ahead of the consumer.
+ */
+class ReadAheadInputStream extends InputStream {
+    private static final Block END_OF_INPUT = new Block(0);
+
+    private InputStream inputStream;
+    private BlockingQueue<Block> filledBlocks;
+    private BlockingQueue<Block> freeBlocks;
+    private Future<?> readingTask;
+    private volatile IOException readError;
+
+    private Block currentBlock;
+    private int currentPosition = 0;
+    private boolean isEndOfInput = false;
+
+    ReadAheadInputStream(InputStream inputStream, int blockSize, int queueDepth, ExecutorService executor) {
+        this.inputStream = inputStream;
+        filledBlocks = new ArrayBlockingQueue<>(queueDepth + 1);
+        // the consumer and the reading task hold one block each besides the queued ones
+        freeBlocks = new ArrayBlockingQueue<>(queueDepth + 2);
+        for (int i = 0; i < queueDepth + 2; ++i) {
+            freeBlocks.add(new Block(blockSize));
+        }
+        readingTask = executor.submit(this::readBlocks);
+    }
+
+    private void readBlocks() {
+        try {
+            for (;;) {
+                Block block = freeBlocks.take();
+                block.length = inputStream.readNBytes(block.data, 0, block.data.length);
+                if (block.length > 0) {
+                    filledBlocks.put(block);
+                }
+                if (block.length < block.data.length) {
+                    filledBlocks.put(END_OF_INPUT);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            readError = e;
+            filledBlocks.offer(END_OF_INPUT);
+        } catch (InterruptedException e) {
+            // the stream has been closed
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return currentBlock.data[currentPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+
+        int bytesRead = Math.min(length, currentBlock.length - currentPosition);
+        System.arraycopy(currentBlock.data, currentPosition, bytes, offset, bytesRead);
+        currentPosition += bytesRead;
+        return bytesRead;
+    }
+
+    private boolean ensureData() throws IOException {
+        if (currentBlock != null && currentPosition < currentBlock.length) {
+            return true;
+        }
+        if (isEndOfInput) {
+            return false;
+        }
+
+        if (currentBlock != null) {
+            freeBlocks.offer(currentBlock);
+            currentBlock = null;
+        }
+        try {
+            Block block = filledBlocks.take();
+            if (block == END_OF_INPUT) {
+                isEndOfInput = true;
+                if (readError != null) {
+                    throw readError;
+                }
+                return false;
+            }
+            currentBlock = block;
+            currentPosition = 0;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reading has been interrupted");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        readingTask.cancel(true);
+        inputStream.close();
+    }
+
+    private static class Block {
+        private byte[] data;
+        private int length = 0;
+
+        Block(int size) {
+            data = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package mergesort;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the merged records, which reads the files only as far as the records are taken.
+ * It closes itself after the last record; if it is abandoned earlier, it has to be closed to release
+ * the files and delete the temporary ones. I/O errors are thrown as {@link UncheckedIOException}.
+ */
+public class RecordIterator<T> implements Iterator<T>, AutoCloseable {
+    private RecordMerger<?> recordMerger;
+    // deletes the temporary files and finishes the reports of the merger
+    private Closeable cleanup;
+    private boolean isClosed = false;
+
+    RecordIterator(RecordMerger<?> recordMerger, Closeable cleanup) {
+        this.recordMerger = recordMerger;
+        this.cleanup = cleanup;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (recordMerger.hasNext()) {
+            return true;
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return (T) recordMerger.next();
+        } catch (IOException e) {
+            UncheckedIOException exception = new UncheckedIOException(e);
+            try {
+                close();
+            } catch (UncheckedIOException closeException) {
+                exception.addSuppressed(closeException);
+            }
+            throw exception;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        try {
+            try {
+                recordMerger.close();
+            } finally {
+                cleanup.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package mergesort;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lazy counterpart of a merger: instead of writing all the merged lines, it hands them over one by one,
+ * as records or to a writer, advancing the readers only as far as the caller asks for. The lines of
+ * a concatenation, whose files follow each other in key order, are taken from the files one after another
+ * without comparisons.
+ * <p>
+ * A query selects the lines: the lines before its lower bound are skipped as the readers are opened
+ * (the segments are usually cut at the bound already), and the merger ends at the limit of lines
+ * or at the first line after the upper bound, leaving the rest of the files unread. The lines of the segments
+ * out of the key range of a shard are read all the same, to be counted as lost.
+ */
+class RecordMerger<R extends SortedReader> implements Closeable {
+    private MergeEngine<R> mergeEngine;
+    private List<R> readers = new ArrayList<>();
+    // null for a concatenation
+    private LoserTree<R> loserTree;
+    private int currentReader = 0;
+    private LineQuery query;
+    private long linesTaken = 0;
+    private TaskStatistics taskStatistics;
+    private LostLinesReport lostLinesReport = new LostLinesReport();
+    private boolean isClosed = false;
+    // whether the merger has reached the end of the selected lines
+    private boolean isEnded = false;
+
+    /**
+     * Opens the segments; the result file, which is null if the records are handed over to the caller,
+     * is only used in the statistics. The query may be null.
+     */
+    RecordMerger(MergeEngine<R> mergeEngine, File resultFile, List<FileSegment> inputSegments,
+                 boolean isConcatenation, LineQuery query) throws IOException {
+        this.mergeEngine = mergeEngine;
+        this.query = (query != null) ? query : new LineQuery(null, null, LineQuery.NO_LIMIT);
+        taskStatistics = mergeEngine.startTask(isConcatenation ? "concatenate" :
+                this.query.isBounded() || this.query.getLimit() != LineQuery.NO_LIMIT ? "select" : "merge");
+        taskStatistics.setFiles(resultFile, inputSegments);
+        try {
+            for (FileSegment inputSegment : inputSegments) {
+                R reader = mergeEngine.openReader(inputSegment, taskStatistics);
+                readers.add(reader);
+                skipLinesBefore(reader, this.query.getFromKey());
+            }
+        } catch (IOException e) {
+            try {
+                closeReaders();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+        if (!isConcatenation && !readers.isEmpty()) {
+            loserTree = new LoserTree<>(readers, mergeEngine::compare);
+        }
+    }
+
+    private void skipLinesBefore(R reader, Object key) throws IOException {
+        if (key == null) {
+            return;
+        }
+        long linesSkipped = 0;
+        while (!reader.hasReachedEnd() && mergeEngine.compareKey(key, reader) > 0) {
+            reader.moveToNextLineInOrder();
+            ++linesSkipped;
+        }
+        if (query.isShard()) {
+            MergeEngine.addLinesOutOfRange(reader, linesSkipped, lostLinesReport, taskStatistics);
+        }
+    }
+
+    TaskStatistics getTaskStatistics() {
+        return taskStatistics;
+    }
+
+    boolean hasNext() {
+        if (isClosed || linesTaken >= query.getLimit()) {
+            return false;
+        }
+        R reader = getNextReader();
+        if (reader != null && (query.getToKey() == null ||
+                query.isBeforeUpperBound(mergeEngine.compareKey(query.getToKey(), reader)))) {
+            return true;
+        }
+        isEnded = true;
+        return false;
+    }
+
+    private R getNextReader() {
+        if (loserTree != null) {
+            return loserTree.hasReachedEnd() ? null : loserTree.getWinner();
+        }
+        while (currentReader < readers.size() && readers.get(currentReader).hasReachedEnd()) {
+            ++currentReader;
+        }
+        return (currentReader < readers.size()) ? readers.get(currentReader) : null;
+    }
+
+    /**
+     * Returns the next record and advances its reader; {@link #hasNext()} has to be checked first.
+     */
+    Object next() throws IOException {
+        R reader = getNextReader();
+        // the reader may reuse the buffer of the line, so the record is taken before it moves on
+        Object record = mergeEngine.getRecord(reader);
+        moveToNextLine(reader);
+        return record;
+    }
+
+    /**
+     * Writes the next line and advances its reader; {@link #hasNext()} has to be checked first.
+     */
+    void writeNext(LineWriter lineWriter) throws IOException {
+        R reader = getNextReader();
+        reader.writeCurrentLine(lineWriter);
+        moveToNextLine(reader);
+    }
+
+    private void moveToNextLine(R reader) throws IOException {
+        if (loserTree != null) {
+            loserTree.moveWinnerToNextLine();
+        } else {
+            reader.moveToNextLineInOrder();
+        }
+        ++linesTaken;
+        taskStatistics.addLineWritten();
+    }
+
+    /**
+     * Closes the readers and reports the lost lines. The lines which have not been read are not counted,
+     * except the lines after the key range of a shard.
+     */
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        for (R reader : readers) {
+            if (isEnded && query.isShard()) {
+                long linesSkipped = 0;
+                while (!reader.hasReachedEnd()) {
+                    reader.moveToNextLineInOrder();
+                    ++linesSkipped;
+                }
+                MergeEngine.addLinesOutOfRange(reader, linesSkipped, lostLinesReport, taskStatistics);
+            }
+            lostLinesReport.addReader(reader);
+            taskStatistics.addReader(reader);
+        }
+        closeReaders();
+        taskStatistics.finish();
+        lostLinesReport.print();
+    }
+
+    private void closeReaders() throws IOException {
+        IOException exception = null;
+        for (R reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                exception = (exception == null) ? e : exception;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package mergesort;
+
+import mergesort.exceptions.FileMergerException;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publisher of the merged records with backpressure. Every subscriber gets its own merger, which is started
+ * on its first request and reads the files only as far as the subscriber has requested records.
+ * The records are delivered by a task of the executor, which runs while there is outstanding demand;
+ * cancelling the subscription closes the merger.
+ */
+public class RecordPublisher<T> implements Flow.Publisher<T> {
+    private static final ExecutorService defaultExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "mergesort-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    interface RecordSource<T> {
+        RecordIterator<T> open() throws FileMergerException;
+    }
+
+    private RecordSource<T> recordSource;
+    private Executor executor;
+
+    /**
+     * Creates a publisher delivering the records by the given executor, or by daemon threads if it is null.
+     */
+    RecordPublisher(RecordSource<T> recordSource, Executor executor) {
+        this.recordSource = recordSource;
+        this.executor = (executor != null) ? executor : defaultExecutor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new RecordSubscription<>(subscriber, recordSource, executor));
+    }
+
+    private static class RecordSubscription<T> implements Flow.Subscription, Runnable {
+        private Flow.Subscriber<? super T> subscriber;
+        private RecordSource<T> recordSource;
+        private Executor executor;
+
+        private AtomicLong demand = new AtomicLong();
+        // the number of times the delivery has been requested since the running task started
+        private AtomicInteger pendingDeliveries = new AtomicInteger();
+        private volatile boolean isCancelled = false;
+        private volatile Throwable requestError;
+
+        // accessed only by the delivery task
+        private RecordIterator<T> records;
+        private boolean isDone = false;
+
+        RecordSubscription(Flow.Subscriber<? super T> subscriber, RecordSource<T> recordSource, Executor executor) {
+            this.subscriber = subscriber;
+            this.recordSource = recordSource;
+            this.executor = executor;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("Number of requested records has to be positive");
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> (current + added < 0) ? Long.MAX_VALUE :
+                        current + added);
+            }
+            scheduleDelivery();
+        }
+
+        @Override
+        public void cancel() {
+            isCancelled = true;
+            scheduleDelivery();
+        }
+
+        private void scheduleDelivery() {
+            if (pendingDeliveries.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int deliveries = pendingDeliveries.get();
+            do {
+                deliver();
+                deliveries = pendingDeliveries.addAndGet(-deliveries);
+            } while (deliveries != 0);
+        }
+
+        private void deliver() {
+            if (isDone) {
+                return;
+            }
+            if (isCancelled) {
+                finish();
+                return;
+            }
+            if (requestError != null) {
+                finish();
+                subscriber.onError(requestError);
+                return;
+            }
+
+            try {
+                if (records == null) {
+                    records = recordSource.open();
+                }
+                long requested = demand.get();
+                long delivered = 0;
+                while (delivered < requested && records.hasNext()) {
+                    if (isCancelled) {
+                        finish();
+                        return;
+                    }
+                    subscriber.onNext(records.next());
+                    ++delivered;
+                }
+                if (!records.hasNext()) {
+                    finish();
+                    subscriber.onComplete();
+                    return;
+                }
+                if (requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-delivered);
+                }
+            } catch (FileMergerException | RuntimeException e) {
+                finish();
+                subscriber.onError(e);
+            }
+        }
+
+        private void finish() {
+            isDone = true;
+            if (records != null) {
+                try {
+                    records.close();
+                } catch (RuntimeException e) {
+                    // the subscriber is notified of the first error only
+                }
+            }
+        }
+    }
+}
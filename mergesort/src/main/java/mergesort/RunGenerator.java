@@ -0,0 +1,101 @@
+package mergesort;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Cuts unsorted input files into sorted runs: lines are collected in memory until the memory budget is reached,
+ * then they are sorted and written to a temporary file. The runs can be merged as usual sorted files.
+ */
+abstract class RunGenerator {
+    private StreamFactory streamFactory;
+    private long memoryBudget;
+    private TaskStatistics statistics;
+    // the input file being read, which the runs are written from
+    private File inputFile;
+
+    RunGenerator(StreamFactory streamFactory, long memoryBudget) {
+        this.streamFactory = streamFactory;
+        this.memoryBudget = memoryBudget;
+    }
+
+    StreamFactory getStreamFactory() {
+        return streamFactory;
+    }
+
+    long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    TaskStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Adds the run files to the list as soon as they are created, so that the caller can delete them
+     * even if an error occurs.
+     */
+    void generateRuns(List<File> inputFiles, List<File> runFiles, TaskStatistics statistics) throws IOException {
+        this.statistics = statistics;
+        for (File inputFile : inputFiles) {
+            this.inputFile = inputFile;
+            long invalidLines = addLines(inputFile, runFiles);
+            statistics.addLostLines(invalidLines);
+            if (invalidLines != 0) {
+                System.err.printf("Warning: file \"%s\" contains %d invalid lines; " +
+                        "some data have been lost\n", inputFile.getPath(), invalidLines);
+            }
+        }
+
+        if (!isRunEmpty()) {
+            writeRun(runFiles);
+        }
+    }
+
+    /**
+     * Reads all lines of the input file, writing a run whenever the memory budget is exhausted.
+     * Returns the number of invalid lines.
+     */
+    abstract long addLines(File inputFile, List<File> runFiles) throws IOException;
+
+    abstract boolean isRunEmpty();
+
+    abstract void sortRun();
+
+    abstract void writeRun(LineWriter runWriter) throws IOException;
+
+    abstract void clearRun();
+
+    /**
+     * Estimates the length of the run file from the memory the run takes.
+     */
+    abstract long estimateRunLength();
+
+    /**
+     * Writes the run to a new temporary file, failing before the run is written if the space
+     * of the temporary directory is not enough for it.
+     */
+    void writeRun(List<File> runFiles) throws IOException {
+        long runLength = estimateRunLength();
+        File runFile = streamFactory.createTemporaryFile(".run", runLength, List.of(inputFile));
+        runFiles.add(runFile);
+
+        TemporaryDirectories temporaryDirectories = streamFactory.getTemporaryDirectories();
+        long reservedSpace = temporaryDirectories.reserve(runFile, runLength,
+                streamFactory.getFormat(runFile).isCompressed());
+        try {
+            long sortStartTime = System.nanoTime();
+            sortRun();
+            statistics.addSortTime(System.nanoTime() - sortStartTime);
+
+            try (LineWriter runWriter = streamFactory.openLineWriter(runFile, statistics)) {
+                writeRun(runWriter);
+                statistics.addLinesWritten(runWriter.getLinesNumber());
+            }
+        } finally {
+            temporaryDirectories.release(runFile, reservedSpace);
+        }
+        clearRun();
+    }
+}
@@ -0,0 +1,106 @@
+package mergesort;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the lines and numbers written by {@link RunWriter}. The current line is available
+ * through the methods of {@link ByteLineReader}, as for the text readers.
+ */
+class RunReader extends StreamLineReader {
+    // the beginning of the next record in the buffer
+    private int position = 0;
+    private long value = 0;
+    private boolean isSpelled = false;
+
+    RunReader(InputStream inputStream, int bufferSize) {
+        super(inputStream, bufferSize);
+    }
+
+    @Override
+    boolean readLine() throws IOException {
+        if (!fill(RunWriter.MAX_VARINT_LENGTH)) {
+            return false;
+        }
+        readBytes((int) readVarint());
+        return true;
+    }
+
+    /**
+     * Reads the line and decodes it with the default charset, as the text readers do.
+     * Returns null at the end of the run.
+     */
+    String readString() throws IOException {
+        if (!readLine()) {
+            return null;
+        }
+        return new String(getBuffer().array(), getLineStart(), getLineEnd() - getLineStart());
+    }
+
+    boolean readNumber() throws IOException {
+        if (!fill(RunWriter.MAX_VARINT_LENGTH)) {
+            return false;
+        }
+
+        long head = readVarint();
+        if ((head & 1) == 0) {
+            value += RunWriter.decodeZigzag(head >>> 1);
+            isSpelled = false;
+            return true;
+        }
+
+        fill(2 * RunWriter.MAX_VARINT_LENGTH);
+        value += RunWriter.decodeZigzag(readVarint());
+        int length = (int) readVarint();
+        isSpelled = length > 0;
+        readBytes(length);
+        return true;
+    }
+
+    long getValue() {
+        return value;
+    }
+
+    /**
+     * Returns the spelling of the current number if it differs from {@link Long#toString(long)}, otherwise null.
+     */
+    ByteBuffer getSpelling() {
+        return isSpelled ? getLine() : null;
+    }
+
+    private void readBytes(int length) throws IOException {
+        fill(length);
+        if (getBuffer().limit() - position < length) {
+            throw new EOFException("Temporary file is truncated");
+        }
+        setLine(position, position + length);
+        position += length;
+    }
+
+    private long readVarint() throws IOException {
+        ByteBuffer buffer = getBuffer();
+        long value = 0;
+        for (int shift = 0; position < buffer.limit(); shift += 7) {
+            byte b = buffer.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new EOFException("Temporary file is truncated");
+    }
+
+    /**
+     * Reads more data until at least the given number of bytes follow the position or the input ends.
+     * Returns false if there are no bytes left at all.
+     */
+    private boolean fill(int length) throws IOException {
+        while (getBuffer().limit() - position < length && !isEndOfInput()) {
+            fillBuffer(position);
+            position = 0;
+        }
+        return getBuffer().limit() > position;
+    }
+}
@@ -0,0 +1,92 @@
+package mergesort;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes lines in the binary run format used for temporary files.
+ * A line is written as its length (a varint) followed by its bytes.
+ * A number is written as the zigzag-encoded difference with the previous number (a varint shifted left by one bit),
+ * so that runs of close numbers take one or two bytes per line. Numbers which are not spelled as
+ * {@link Long#toString(long)} would do it, and differences which do not fit into 63 bits, are written
+ * as an escape byte 1 followed by the difference and the length and bytes of the spelling (0 for none).
+ */
+class RunWriter extends LineWriter {
+    static final int MAX_VARINT_LENGTH = 10;
+
+    private byte[] varint = new byte[MAX_VARINT_LENGTH];
+    private byte[] formattedNumber = new byte[MAX_LONG_LENGTH];
+    private long prevValue = 0;
+
+    RunWriter(OutputStream outputStream, int bufferSize) {
+        super(outputStream, bufferSize);
+    }
+
+    @Override
+    boolean isRawCopySupported() {
+        return false;
+    }
+
+    @Override
+    void beginLine(int length) throws IOException {
+        writeVarint(length);
+    }
+
+    @Override
+    void endLine() {
+        addLine();
+    }
+
+    @Override
+    void writeNumber(long value, ByteBuffer line) throws IOException {
+        long difference = encodeZigzag(value - prevValue);
+        prevValue = value;
+
+        boolean isSpelled = line != null && !isFormatted(value, line);
+        if (!isSpelled && difference >>> 63 == 0) {
+            writeVarint(difference << 1);
+        } else {
+            writeVarint(1);
+            writeVarint(difference);
+            if (isSpelled) {
+                writeVarint(line.remaining());
+                write(line);
+            } else {
+                writeVarint(0);
+            }
+        }
+        addLine();
+    }
+
+    private boolean isFormatted(long value, ByteBuffer line) {
+        int start = formatNumber(value, formattedNumber);
+        if (line.remaining() != MAX_LONG_LENGTH - start) {
+            return false;
+        }
+        for (int i = start, j = line.position(); i < MAX_LONG_LENGTH; ++i, ++j) {
+            if (formattedNumber[i] != line.get(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeVarint(long value) throws IOException {
+        int length = 0;
+        while ((value & ~0x7FL) != 0) {
+            varint[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        varint[length++] = (byte) value;
+        write(varint, 0, length);
+    }
+
+    static long encodeZigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long decodeZigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
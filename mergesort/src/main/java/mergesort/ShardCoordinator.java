@@ -0,0 +1,214 @@
+package mergesort;
+
+import mergesort.exceptions.FileMergerException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Merges files by several worker processes: the key space is split into ranges, as for a partitioned merger,
+ * every range of all the files (a shard) is merged into its own temporary file by a worker launched
+ * on this machine, and the results are concatenated. A worker is started by the given command, to which
+ * the coordinator appends its temporary directories and the worker arguments: the bounds of the key range,
+ * {@code --worker}, the output file and the input segments as {@code file@start:end}. The bounds are given
+ * as the positions of their lines in the input files, {@code --worker-from file@start:end} and
+ * {@code --worker-to file@start:end}, since a line might not survive as a process argument; the worker
+ * drops the lines of its segments out of the range, which a file not quite sorted may hold.
+ * <p>
+ * The coordinator reads the standard output and error of a worker through a pipe: lines
+ * {@code progress <written bytes> <planned bytes>} report the progress, the other lines are printed
+ * with the number of the shard. A worker which fails is started again for its shard, up to {@link #MAX_ATTEMPTS}
+ * times, while the other shards go on; if a shard fails for good, the other workers are stopped.
+ */
+class ShardCoordinator {
+    static final int MAX_ATTEMPTS = 3;
+    static final String WORKER_OPTION = "--worker";
+    static final String WORKER_FROM_OPTION = "--worker-from";
+    static final String WORKER_TO_OPTION = "--worker-to";
+    static final String PROGRESS_PREFIX = "progress ";
+
+    private MergeEngine<?> mergeEngine;
+    private int workersNumber;
+    private List<String> workerCommand;
+    private Set<Process> workers = ConcurrentHashMap.newKeySet();
+
+    ShardCoordinator(MergeEngine<?> mergeEngine, int workersNumber, List<String> workerCommand) {
+        this.mergeEngine = mergeEngine;
+        this.workersNumber = workersNumber;
+        this.workerCommand = workerCommand;
+    }
+
+    void mergeFiles(File resultFile, List<File> inputFiles, List<File> temporaryDirectories)
+            throws IOException, FileMergerException {
+        List<KeyPartition> shards = new ArrayList<>();
+        for (KeyPartition partition : mergeEngine.partitionByKeys(inputFiles, workersNumber)) {
+            List<FileSegment> segments = new ArrayList<>();
+            for (FileSegment segment : partition.getSegments()) {
+                if (!segment.isEmpty()) {
+                    segments.add(segment);
+                }
+            }
+            if (!segments.isEmpty()) {
+                shards.add(new KeyPartition(segments, partition.getLowerKey(), partition.getLowerKeyLine(),
+                        partition.getUpperKey(), partition.getUpperKeyLine()));
+            }
+        }
+
+        TemporaryDirectories directories = mergeEngine.getStreamFactory().getTemporaryDirectories();
+        List<File> shardFiles = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(shards.size(), 1));
+        try {
+            List<Future<?>> shardMergers = new ArrayList<>();
+            for (int i = 0; i < shards.size(); ++i) {
+                KeyPartition shard = shards.get(i);
+                long shardLength = shard.getLength();
+                Set<File> sourceFiles = new HashSet<>();
+                for (FileSegment segment : shard.getSegments()) {
+                    sourceFiles.add(segment.getFile());
+                }
+                File shardFile = directories.createFile(".shard", shardLength, sourceFiles);
+                shardFiles.add(shardFile);
+                // every worker gets its own share of the temporary directories, so the workers use different disks
+                List<File> workerDirectories = new ArrayList<>();
+                for (int j = i % Math.max(temporaryDirectories.size(), 1); j < temporaryDirectories.size();
+                     j += shards.size()) {
+                    workerDirectories.add(temporaryDirectories.get(j));
+                }
+                int shardNumber = i + 1;
+                addPlannedBytes(2 * shardLength);
+                shardMergers.add(executor.submit(() -> {
+                    long reservedSpace = directories.reserve(shardFile, shardLength, false);
+                    try {
+                        mergeShard(shardNumber, shard, shardFile, workerDirectories);
+                    } finally {
+                        directories.release(shardFile, reservedSpace);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> shardMerger : shardMergers) {
+                shardMerger.get();
+            }
+            // every worker writes the valid lines of its key range in order, so the shard files follow each other
+            mergeEngine.concatenateFiles(resultFile, shardFiles, new HashSet<>(shardFiles));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Sharded merger has been interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FileMergerException) {
+                throw (FileMergerException) e.getCause();
+            }
+            throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            // the interrupted threads do not start the workers again
+            executor.shutdownNow();
+            for (Process worker : workers) {
+                worker.destroyForcibly();
+            }
+            for (File shardFile : shardFiles) {
+                shardFile.delete();
+            }
+        }
+    }
+
+    private void mergeShard(int shardNumber, KeyPartition shard, File shardFile, List<File> workerDirectories)
+            throws IOException, InterruptedException, FileMergerException {
+        List<String> command = new ArrayList<>(workerCommand);
+        for (File workerDirectory : workerDirectories) {
+            command.add("--tmpdir");
+            command.add(workerDirectory.getPath());
+        }
+        if (shard.getLowerKeyLine() != null) {
+            command.add(WORKER_FROM_OPTION);
+            command.add(toArgument(shard.getLowerKeyLine()));
+        }
+        if (shard.getUpperKeyLine() != null) {
+            command.add(WORKER_TO_OPTION);
+            command.add(toArgument(shard.getUpperKeyLine()));
+        }
+        command.add(WORKER_OPTION);
+        command.add(shardFile.getPath());
+        for (FileSegment segment : shard.getSegments()) {
+            command.add(toArgument(segment));
+        }
+
+        for (int attempt = 1; ; ++attempt) {
+            int exitCode = runWorker(shardNumber, command);
+            if (exitCode == 0) {
+                return;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                throw new FileMergerException(String.format("Error: the worker of shard %d has failed %d times, " +
+                        "the last time with exit code %d", shardNumber, MAX_ATTEMPTS, exitCode));
+            }
+            System.err.printf("Warning: the worker of shard %d has failed with exit code %d, it is started again\n",
+                    shardNumber, exitCode);
+        }
+    }
+
+    /**
+     * Runs the worker until it exits, relaying its progress and messages, and returns its exit code.
+     */
+    private int runWorker(int shardNumber, List<String> command) throws IOException, InterruptedException {
+        Process worker = new ProcessBuilder(command).redirectErrorStream(true).start();
+        workers.add(worker);
+        long bytesWritten = 0;
+        int exitCode = -1;
+        try {
+            try (BufferedReader output = new BufferedReader(new InputStreamReader(worker.getInputStream()))) {
+                String line;
+                while ((line = output.readLine()) != null) {
+                    if (line.startsWith(PROGRESS_PREFIX)) {
+                        long reportedBytes = Long.parseLong(line.substring(PROGRESS_PREFIX.length()).split(" ")[0]);
+                        addProgress(reportedBytes - bytesWritten);
+                        bytesWritten = reportedBytes;
+                    } else {
+                        System.err.printf("Shard %d: %s\n", shardNumber, line);
+                    }
+                }
+            }
+            exitCode = worker.waitFor();
+            return exitCode;
+        } finally {
+            if (exitCode != 0) {
+                // the progress of a failed worker is made again by the next one
+                addProgress(-bytesWritten);
+            }
+            workers.remove(worker);
+            worker.destroyForcibly();
+        }
+    }
+
+    private void addProgress(long bytes) {
+        if (mergeEngine.getStatistics() != null) {
+            mergeEngine.getStatistics().addProgress(bytes);
+        }
+    }
+
+    private void addPlannedBytes(long bytes) {
+        if (mergeEngine.getStatistics() != null) {
+            mergeEngine.getStatistics().addPlannedBytes(bytes);
+        }
+    }
+
+    private static String toArgument(FileSegment segment) {
+        long end = Math.min(segment.getEnd(), segment.getFile().length());
+        return segment.getFilepath() + "@" + segment.getStart() + ":" + end;
+    }
+}
@@ -3,11 +3,16 @@ package mergesort;
 import mergesort.exceptions.LineConverterException;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.util.Comparator;
 
-public class SortedFileReader<T> implements Closeable {
-    private File file;
+public class SortedFileReader<T> implements SortedReader {
+    private String filepath;
     private BufferedReader fileReader;
+    // set instead of the file reader for temporary files, which are known to be valid and sorted
+    private RunReader runReader;
+    // set instead of the file reader for trusted input files, which are not checked for order
+    private ByteLineReader trustedLineReader;
 
     private long invalidLines = 0;
     private LineConverter<T> lineConverter;
@@ -18,37 +23,70 @@ public class SortedFileReader<T> implements Closeable {
     private T currentConvertedLine;
     private String currentLine;
 
-    SortedFileReader(File file, LineConverter<T> lineConverter, Comparator<T> lineComparator) throws IOException {
-        fileReader = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
-        this.file = file;
+    // null unless the merger compares the prefixes of the lines first
+    private PrefixComparator<T> prefixComparator;
+    private long currentPrefix;
+
+    SortedFileReader(BufferedReader fileReader, String filepath, LineConverter<T> lineConverter,
+                     Comparator<T> lineComparator) throws IOException {
+        this.fileReader = fileReader;
+        this.filepath = filepath;
         this.lineComparator = lineComparator;
         this.lineConverter = lineConverter;
 
         moveToNextValidLine();
     }
 
-    boolean hasReachedEnd() {
+    SortedFileReader(RunReader runReader, String filepath, LineConverter<T> lineConverter) throws IOException {
+        this.runReader = runReader;
+        this.filepath = filepath;
+        this.lineConverter = lineConverter;
+
+        moveToNextValidLine();
+    }
+
+    SortedFileReader(ByteLineReader trustedLineReader, String filepath, LineConverter<T> lineConverter)
+            throws IOException {
+        this.trustedLineReader = trustedLineReader;
+        this.filepath = filepath;
+        this.lineConverter = lineConverter;
+
+        moveToNextValidLine();
+    }
+
+    @Override
+    public boolean hasReachedEnd() {
         return currentLine == null;
     }
 
-    boolean isValid() {
+    @Override
+    public boolean isValid() {
         return invalidLines == 0;
     }
 
-    long getInvalidLinesNumber() {
+    @Override
+    public long getInvalidLinesNumber() {
         return invalidLines;
     }
 
-    boolean isOrdered() {
+    @Override
+    public boolean isOrdered() {
         return unorderedLines == 0;
     }
 
-    long getUnorderedLinesNumber() {
+    @Override
+    public long getUnorderedLinesNumber() {
         return unorderedLines;
     }
 
-    String getFilepath() {
-        return file.getPath();
+    @Override
+    public String getFilepath() {
+        return filepath;
+    }
+
+    @Override
+    public ByteLineReader getTrustedLineReader() {
+        return trustedLineReader;
     }
 
     String getCurrentLine() {
@@ -59,7 +97,30 @@ public class SortedFileReader<T> implements Closeable {
         return currentConvertedLine;
     }
 
-    void moveToNextLineInOrder() throws IOException {
+    /**
+     * Makes the reader compute the prefix of every line as it is read, starting with the current one.
+     */
+    void setPrefixComparator(PrefixComparator<T> prefixComparator) {
+        this.prefixComparator = prefixComparator;
+        updatePrefix();
+    }
+
+    long getCurrentPrefix() {
+        return currentPrefix;
+    }
+
+    @Override
+    public void writeCurrentLine(LineWriter lineWriter) throws IOException {
+        lineWriter.writeLine(currentLine);
+    }
+
+    @Override
+    public void moveToNextLineInOrder() throws IOException {
+        if (runReader != null || trustedLineReader != null) {
+            moveToNextValidLine();
+            return;
+        }
+
         T prevConvertedLine = currentConvertedLine;
         moveToNextValidLine();
         while (currentConvertedLine != null && lineComparator.compare(prevConvertedLine, currentConvertedLine) > 0) {
@@ -70,7 +131,8 @@ public class SortedFileReader<T> implements Closeable {
 
     private void moveToNextValidLine() throws IOException {
         for (;;) {
-            currentLine = fileReader.readLine();
+            currentLine = (runReader != null) ? runReader.readString() :
+                    (trustedLineReader != null) ? readTrustedLine() : fileReader.readLine();
             if (hasReachedEnd()) {
                 currentConvertedLine = null;
                 return;
@@ -78,6 +140,7 @@ public class SortedFileReader<T> implements Closeable {
 
             try {
                 currentConvertedLine = lineConverter.convertLine(currentLine);
+                updatePrefix();
                 return;
             } catch (LineConverterException e) {
                 ++invalidLines;
@@ -85,10 +148,29 @@ public class SortedFileReader<T> implements Closeable {
         }
     }
 
+    private void updatePrefix() {
+        if (prefixComparator != null && currentConvertedLine != null) {
+            currentPrefix = prefixComparator.getPrefix(currentConvertedLine);
+        }
+    }
+
+    private String readTrustedLine() throws IOException {
+        if (!trustedLineReader.readLine()) {
+            return null;
+        }
+        return Charset.defaultCharset().decode(trustedLineReader.getLine()).toString();
+    }
+
     @Override
     public void close() throws IOException {
         if (fileReader != null) {
             fileReader.close();
         }
+        if (trustedLineReader != null) {
+            trustedLineReader.close();
+        }
+        if (runReader != null) {
+            runReader.close();
+        }
     }
 }
@@ -0,0 +1,264 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Looks up keys in a sorted file by binary search over its bytes.
+ * Invalid lines are skipped; out-of-order lines may make the result approximate, but never lose lines,
+ * since the results are only used as boundaries of file segments.
+ */
+class SortedFileSearcher<K> implements Closeable {
+    private static final int INITIAL_BUFFER_SIZE = 1 << 10;
+    private static final int LINES_SAMPLE_SIZE = 1 << 16;
+
+    private FileChannel fileChannel;
+    private long fileSize;
+    private KeyOrder<K> keyOrder;
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    // the line found by the last call to readKey
+    private long keyLineStart;
+    private long keyLineEnd;
+
+    SortedFileSearcher(File file, KeyOrder<K> keyOrder) throws IOException {
+        fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileSize = fileChannel.size();
+        this.keyOrder = keyOrder;
+    }
+
+    long getFileSize() {
+        return fileSize;
+    }
+
+    long getKeyLineStart() {
+        return keyLineStart;
+    }
+
+    long getKeyLineEnd() {
+        return keyLineEnd;
+    }
+
+    /**
+     * Returns the first line start which is not less than the position, or the file size if there is none.
+     */
+    long findLineStart(long position) throws IOException {
+        if (position <= 0) {
+            return 0;
+        }
+        long newline = findNewline(position - 1);
+        return newline < 0 ? fileSize : newline + 1;
+    }
+
+    /**
+     * Returns the key of the first valid line starting in [lineStart, limit), or null if there is no such line.
+     * The bounds of the line are available through {@link #getKeyLineStart()} and {@link #getKeyLineEnd()},
+     * the end including the line terminator.
+     */
+    K readKey(long lineStart, long limit) throws IOException {
+        while (lineStart < limit && lineStart < fileSize) {
+            readLine(lineStart);
+            try {
+                return keyOrder.convertLine(buffer);
+            } catch (LineConverterException e) {
+                lineStart = keyLineEnd;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the key of the last valid line of the file, or null if there is none.
+     */
+    K readLastKey() throws IOException {
+        // the end of the line preceding the current one, that is the position of its terminator or the file size
+        long lineEnd = fileSize;
+        if (lineEnd > 0 && findPreviousNewline(lineEnd) == lineEnd - 1) {
+            --lineEnd;
+        }
+        while (lineEnd > 0) {
+            long lineStart = findPreviousNewline(lineEnd) + 1;
+            K key = readKey(lineStart, lineStart + 1);
+            if (key != null) {
+                return key;
+            }
+            lineEnd = lineStart - 1;
+        }
+        return null;
+    }
+
+    /**
+     * Estimates the number of lines of the file from the average length of the lines at its beginning.
+     */
+    long estimateLinesNumber() throws IOException {
+        ByteBuffer sample = ByteBuffer.allocate((int) Math.min(LINES_SAMPLE_SIZE, fileSize));
+        readFully(sample, 0);
+        long lines = 0;
+        for (int i = 0; i < sample.position(); ++i) {
+            if (sample.get(i) == '\n') {
+                ++lines;
+            }
+        }
+        if (lines == 0) {
+            return (fileSize > 0) ? 1 : 0;
+        }
+        return Math.max(fileSize * lines / sample.position(), 1);
+    }
+
+    /**
+     * Returns the start of the first line in [from, to) whose key is not less than the given one,
+     * or {@code to} if there is none. Both bounds have to be line starts (or the file size).
+     */
+    long findFirstNotLess(K key, long from, long to) throws IOException {
+        return findFirstAfter(key, from, to, false);
+    }
+
+    /**
+     * Returns the start of the first line in [from, to) whose key is greater than the given one,
+     * or {@code to} if there is none. Both bounds have to be line starts (or the file size).
+     */
+    long findFirstGreater(K key, long from, long to) throws IOException {
+        return findFirstAfter(key, from, to, true);
+    }
+
+    /**
+     * Returns the start of the first line in [from, to) whose key goes after the given one, or is equal to it
+     * unless the equal keys are skipped.
+     */
+    private long findFirstAfter(K key, long from, long to, boolean isEqualSkipped) throws IOException {
+        long low = from;
+        long high = to;
+        while (low < high) {
+            long middle = low + (high - low) / 2;
+            long lineStart = findLineStart(middle);
+            if (lineStart >= high) {
+                // all lines of [low, high) start before the middle, they are few enough to be checked one by one
+                return findFirstAfterLinearly(key, low, high, isEqualSkipped);
+            }
+
+            K middleKey = readKey(lineStart, high);
+            if (middleKey == null) {
+                high = lineStart;
+            } else if (isBefore(middleKey, key, isEqualSkipped)) {
+                low = keyLineEnd;
+            } else {
+                high = keyLineStart;
+            }
+        }
+        return low;
+    }
+
+    private long findFirstAfterLinearly(K key, long from, long to, boolean isEqualSkipped) throws IOException {
+        long lineStart = from;
+        while (lineStart < to) {
+            K lineKey = readKey(lineStart, to);
+            if (lineKey == null) {
+                return to;
+            }
+            if (!isBefore(lineKey, key, isEqualSkipped)) {
+                return keyLineStart;
+            }
+            lineStart = keyLineEnd;
+        }
+        return to;
+    }
+
+    private boolean isBefore(K lineKey, K key, boolean isEqualSkipped) {
+        int comparison = keyOrder.compare(lineKey, key);
+        return comparison < 0 || (isEqualSkipped && comparison == 0);
+    }
+
+    /**
+     * Reads the line starting at the given position into the buffer, without the line terminator.
+     */
+    private void readLine(long lineStart) throws IOException {
+        buffer.clear();
+        long position = lineStart;
+        for (;;) {
+            if (!buffer.hasRemaining()) {
+                ByteBuffer grownBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                grownBuffer.put(buffer);
+                buffer = grownBuffer;
+            }
+
+            int searchStart = buffer.position();
+            int bytesRead = fileChannel.read(buffer, position);
+            if (bytesRead < 0) {
+                keyLineStart = lineStart;
+                keyLineEnd = fileSize;
+                buffer.flip();
+                return;
+            }
+            position += bytesRead;
+
+            for (int i = searchStart; i < buffer.position(); ++i) {
+                if (buffer.get(i) == '\n') {
+                    keyLineStart = lineStart;
+                    keyLineEnd = lineStart + i + 1;
+                    int lineEnd = (i > 0 && buffer.get(i - 1) == '\r') ? i - 1 : i;
+                    buffer.limit(lineEnd).position(0);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the last newline before the given position, or -1 if there is none.
+     */
+    private long findPreviousNewline(long position) throws IOException {
+        ByteBuffer searchBuffer = ByteBuffer.allocate(buffer.capacity());
+        while (position > 0) {
+            long chunkStart = Math.max(position - searchBuffer.capacity(), 0);
+            searchBuffer.clear().limit((int) (position - chunkStart));
+            readFully(searchBuffer, chunkStart);
+            for (int i = searchBuffer.position() - 1; i >= 0; --i) {
+                if (searchBuffer.get(i) == '\n') {
+                    return chunkStart + i;
+                }
+            }
+            position = chunkStart;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the file from the position into the buffer until the buffer is full or the file ends.
+     */
+    private void readFully(ByteBuffer target, long position) throws IOException {
+        int bytesRead;
+        do {
+            bytesRead = fileChannel.read(target, position + target.position());
+        } while (bytesRead > 0 && target.hasRemaining());
+    }
+
+    private long findNewline(long position) throws IOException {
+        ByteBuffer searchBuffer = buffer;
+        while (position < fileSize) {
+            searchBuffer.clear();
+            int bytesRead = fileChannel.read(searchBuffer, position);
+            if (bytesRead < 0) {
+                break;
+            }
+            for (int i = 0; i < bytesRead; ++i) {
+                if (searchBuffer.get(i) == '\n') {
+                    return position + i;
+                }
+            }
+            position += bytesRead;
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+}
@@ -0,0 +1,31 @@
+package mergesort;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+interface SortedReader extends Closeable {
+    boolean hasReachedEnd();
+
+    void moveToNextLineInOrder() throws IOException;
+
+    void writeCurrentLine(LineWriter lineWriter) throws IOException;
+
+    boolean isValid();
+
+    long getInvalidLinesNumber();
+
+    boolean isOrdered();
+
+    long getUnorderedLinesNumber();
+
+    String getFilepath();
+
+    /**
+     * Returns the reader of the text lines if they are read without validation and order checks
+     * (the input is trusted to be sorted), so that they can be copied to the output as raw bytes,
+     * or null otherwise.
+     */
+    default ByteLineReader getTrustedLineReader() {
+        return null;
+    }
+}
@@ -0,0 +1,205 @@
+package mergesort;
+
+import mergesort.exceptions.LineConverterException;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sparse index of a sorted file: the offsets and the lines of the first lines starting after every interval
+ * of bytes. It is kept in a sidecar file next to the indexed one, which starts with a header holding
+ * the interval and the length of the indexed file, followed by a line describing the type and the order
+ * of the lines, so that an index of a file changed since or searched in another order is ignored.
+ * Every entry is the decimal offset, a space and the bytes of the line, ending with a newline.
+ */
+class SparseIndex {
+    static final String SUFFIX = ".idx";
+    static final int DEFAULT_INTERVAL = 1 << 20;
+    private static final String HEADER = "mergesort-index 2";
+
+    private long interval;
+    private String description;
+    private List<Long> offsets = new ArrayList<>();
+    private List<byte[]> lines = new ArrayList<>();
+
+    SparseIndex(long interval, String description) {
+        this.interval = interval;
+        this.description = description;
+    }
+
+    static File getIndexFile(File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    long getInterval() {
+        return interval;
+    }
+
+    int getEntriesNumber() {
+        return offsets.size();
+    }
+
+    /**
+     * Returns the offset the next entry has to be added at or after.
+     */
+    long getNextEntryOffset() {
+        return offsets.isEmpty() ? 0 : offsets.get(offsets.size() - 1) + interval;
+    }
+
+    void addEntry(long offset, byte[] line) {
+        offsets.add(offset);
+        lines.add(line);
+    }
+
+    /**
+     * Returns the index of the entries preceding the given offset, for a file cut at this offset.
+     */
+    SparseIndex truncate(long offset) {
+        SparseIndex index = new SparseIndex(interval, description);
+        for (int i = 0; i < offsets.size() && offsets.get(i) < offset; ++i) {
+            index.addEntry(offsets.get(i), lines.get(i));
+        }
+        return index;
+    }
+
+    /**
+     * Returns the bounds [start, end) of the block of the file holding the first line not less than the key:
+     * the offsets of the last entry less than the key and of the next entry, or null if an entry
+     * cannot be converted to a key.
+     */
+    <K> long[] findBlock(KeyOrder<K> keyOrder, K key, long fileLength) {
+        int low = 0;
+        int high = offsets.size();
+        try {
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                K middleKey = keyOrder.convertLine(ByteBuffer.wrap(lines.get(middle)));
+                if (keyOrder.compare(middleKey, key) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+        } catch (LineConverterException e) {
+            return null;
+        }
+        long start = (low == 0) ? 0 : offsets.get(low - 1);
+        long end = (low == offsets.size()) ? fileLength : offsets.get(low);
+        return new long[] {start, end};
+    }
+
+    /**
+     * Builds the index of the first bytes of the file, up to the given length ending at a line end,
+     * by reading them.
+     */
+    static SparseIndex build(StreamFactory streamFactory, File file, long length, long interval,
+            String description) throws IOException {
+        SparseIndex index = new SparseIndex(interval, description);
+        try (ByteLineReader lineReader = streamFactory.openLineReader(new FileSegment(file, 0, length), null)) {
+            while (lineReader.readLine()) {
+                long offset = lineReader.getLineOffset();
+                if (offset >= index.getNextEntryOffset()) {
+                    ByteBuffer line = lineReader.getLine();
+                    byte[] bytes = new byte[line.remaining()];
+                    line.get(bytes);
+                    index.addEntry(offset, bytes);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Loads the index of the file, or returns null if there is none or it does not match the file
+     * or the description of its lines.
+     */
+    static SparseIndex load(File file, String description) throws IOException {
+        File indexFile = getIndexFile(file);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        byte[] bytes = Files.readAllBytes(indexFile.toPath());
+        int lineEnd = indexOf(bytes, 0);
+        String[] header = (lineEnd < 0) ? new String[0] :
+                new String(bytes, 0, lineEnd, StandardCharsets.US_ASCII).split(" ");
+        if (header.length != 4 || !(header[0] + " " + header[1]).equals(HEADER)) {
+            return null;
+        }
+
+        int descriptionEnd = indexOf(bytes, lineEnd + 1);
+        if (descriptionEnd < 0 || !new String(bytes, lineEnd + 1, descriptionEnd - lineEnd - 1,
+                StandardCharsets.UTF_8).equals(description)) {
+            return null;
+        }
+        lineEnd = descriptionEnd;
+
+        try {
+            SparseIndex index = new SparseIndex(Long.parseLong(header[2]), description);
+            if (Long.parseLong(header[3]) != file.length()) {
+                return null;
+            }
+            for (int lineStart = lineEnd + 1; lineStart < bytes.length; lineStart = lineEnd + 1) {
+                lineEnd = indexOf(bytes, lineStart);
+                int separator = indexOf(bytes, lineStart, (byte) ' ');
+                if (lineEnd < 0 || separator < 0 || separator > lineEnd) {
+                    return null;
+                }
+                long offset = Long.parseLong(new String(bytes, lineStart, separator - lineStart,
+                        StandardCharsets.US_ASCII));
+                index.addEntry(offset, Arrays.copyOfRange(bytes, separator + 1, lineEnd));
+            }
+            return index;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the index of the file of the given length to its sidecar file, replacing the previous one
+     * by an atomic rename.
+     */
+    void write(File file, long fileLength) throws IOException {
+        File indexFile = getIndexFile(file);
+        File temporaryFile = File.createTempFile("mergesort", SUFFIX, indexFile.getAbsoluteFile().getParentFile());
+        try {
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(temporaryFile))) {
+                outputStream.write(String.format("%s %d %d\n", HEADER, interval, fileLength)
+                        .getBytes(StandardCharsets.US_ASCII));
+                outputStream.write((description + "\n").getBytes(StandardCharsets.UTF_8));
+                for (int i = 0; i < offsets.size(); ++i) {
+                    outputStream.write((offsets.get(i) + " ").getBytes(StandardCharsets.US_ASCII));
+                    outputStream.write(lines.get(i));
+                    outputStream.write('\n');
+                }
+            }
+            Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int from) {
+        return indexOf(bytes, from, (byte) '\n');
+    }
+
+    private static int indexOf(byte[] bytes, int from, byte value) {
+        for (int i = from; i < bytes.length; ++i) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
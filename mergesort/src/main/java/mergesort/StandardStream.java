@@ -0,0 +1,59 @@
+package mergesort;
+
+import java.io.*;
+
+/**
+ * Standard input or output, given as "-" instead of a file name and stood for by a {@link File} of that path;
+ * a file actually named so is given as "./-". Like pipes, the streams can be read or written only once
+ * and cannot be sought.
+ */
+final class StandardStream {
+    static final String NAME = "-";
+
+    private StandardStream() {
+    }
+
+    static File newFile() {
+        return new File(NAME);
+    }
+
+    static boolean isStandardStream(File file) {
+        return NAME.equals(file.getPath());
+    }
+
+    /**
+     * Tells whether the file is a regular file, unlike the standard streams, pipes and devices,
+     * which cannot be reopened, sought or memory-mapped.
+     */
+    static boolean isRegularFile(File file) {
+        return !isStandardStream(file) && file.isFile();
+    }
+
+    /**
+     * Returns the standard input, which is left open when the returned stream is closed.
+     */
+    static InputStream openInput() {
+        return new FilterInputStream(new FileInputStream(FileDescriptor.in)) {
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Returns the standard output, which is flushed but left open when the returned stream is closed.
+     */
+    static OutputStream openOutput() {
+        return new FilterOutputStream(new FileOutputStream(FileDescriptor.out)) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+}
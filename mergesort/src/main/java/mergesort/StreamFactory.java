@@ -0,0 +1,493 @@
+package mergesort;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Opens the streams used by the mergers according to the I/O settings.
+ * In the asynchronous mode reading and writing are moved to background tasks,
+ * so that the merging thread neither waits for the disk nor leaves it idle.
+ */
+class StreamFactory {
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    static final int DEFAULT_QUEUE_DEPTH = 4;
+
+    private static final ExecutorService platformIoExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "mergesort-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static ExecutorService virtualIoExecutor;
+
+    private ExecutorService ioExecutor = platformIoExecutor;
+    // limits the number of reads and writes of files in progress; null if unlimited
+    private Semaphore ioPermits;
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int queueDepth = DEFAULT_QUEUE_DEPTH;
+    private boolean isAsynchronous = false;
+    private boolean isRunFormatUsed = false;
+    private boolean isRunCompressed = false;
+    private TemporaryDirectories temporaryDirectories;
+    // the formats of the files written in other formats than text, by their paths
+    private Map<File, FileFormat> fileFormats = new ConcurrentHashMap<>();
+    // the output files written together with their indexes, by their paths
+    private Map<File, IndexedOutput> indexedOutputs = new ConcurrentHashMap<>();
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    int getQueueDepth() {
+        return queueDepth;
+    }
+
+    void setQueueDepth(int queueDepth) {
+        this.queueDepth = queueDepth;
+    }
+
+    boolean isAsynchronous() {
+        return isAsynchronous;
+    }
+
+    void setAsynchronous(boolean isAsynchronous) {
+        this.isAsynchronous = isAsynchronous;
+    }
+
+    void setIoParallelism(int ioParallelism) {
+        ioPermits = (ioParallelism > 0) ? new Semaphore(ioParallelism) : null;
+    }
+
+    /**
+     * Runs the read-ahead and write-behind tasks, each of which serves one stream, in virtual threads
+     * if the JVM supports them.
+     */
+    void setVirtualThreads(boolean isVirtualThreads) {
+        ioExecutor = platformIoExecutor;
+        if (isVirtualThreads) {
+            synchronized (StreamFactory.class) {
+                if (virtualIoExecutor == null) {
+                    virtualIoExecutor = MergeScheduler.newVirtualThreadExecutor();
+                }
+                if (virtualIoExecutor != null) {
+                    ioExecutor = virtualIoExecutor;
+                }
+            }
+        }
+    }
+
+    void setRunFormatUsed(boolean isRunFormatUsed) {
+        this.isRunFormatUsed = isRunFormatUsed;
+    }
+
+    boolean isRunCompressed() {
+        return isRunCompressed;
+    }
+
+    void setRunCompressed(boolean isRunCompressed) {
+        this.isRunCompressed = isRunCompressed;
+    }
+
+    /**
+     * Sets the directories of the temporary files of a new job; no directories stand for the default
+     * temporary directory.
+     */
+    void setTemporaryDirectories(List<File> directories) throws IOException {
+        temporaryDirectories = new TemporaryDirectories(directories);
+    }
+
+    TemporaryDirectories getTemporaryDirectories() throws IOException {
+        if (temporaryDirectories == null) {
+            temporaryDirectories = new TemporaryDirectories(List.of());
+        }
+        return temporaryDirectories;
+    }
+
+    FileFormat getFormat(File file) {
+        return fileFormats.getOrDefault(file, FileFormat.TEXT);
+    }
+
+    /**
+     * Records the format the file is written and read in, replacing the format recorded for an earlier file
+     * of the same path.
+     */
+    void setFormat(File file, FileFormat format) {
+        if (format == FileFormat.TEXT) {
+            fileFormats.remove(file);
+        } else {
+            fileFormats.put(file, format);
+        }
+    }
+
+    boolean isRunFile(File file) {
+        return getFormat(file).isRun();
+    }
+
+    /**
+     * Returns how the text file is written together with its index, or null if it is written without an index.
+     */
+    IndexedOutput getIndexedOutput(File file) {
+        return indexedOutputs.get(file);
+    }
+
+    /**
+     * Records how the text file is written together with its index; null stands for a file without an index.
+     */
+    void setIndexedOutput(File file, IndexedOutput indexedOutput) {
+        if (indexedOutput == null) {
+            indexedOutputs.remove(file);
+        } else {
+            indexedOutputs.put(file, indexedOutput);
+        }
+    }
+
+    /**
+     * Creates a temporary file, which is written in the binary run format if it is used, placing it
+     * by the expected length and the files it is written from (see {@link TemporaryDirectories}).
+     */
+    File createTemporaryFile(String suffix, long length, Collection<File> sourceFiles) throws IOException {
+        return toTemporaryFile(getTemporaryDirectories().createFile(suffix, length, sourceFiles));
+    }
+
+    /**
+     * Returns the given file as a temporary file written by the merger, recording the binary run format
+     * for it if the format is used.
+     */
+    File toTemporaryFile(File file) {
+        FileFormat format = FileFormat.TEXT;
+        if (isRunFormatUsed) {
+            format = isRunCompressed ? FileFormat.COMPRESSED_RUN : FileFormat.RUN;
+        }
+        setFormat(file, format);
+        return file;
+    }
+
+    /**
+     * Opens the segment and, if the task statistics are enabled, meters the reads of the returned stream,
+     * which are made by the task thread even in the asynchronous mode (as the time it waits for the data).
+     */
+    InputStream openInputStream(FileSegment segment, TaskStatistics statistics) throws IOException {
+        InputStream inputStream;
+        if (StandardStream.isStandardStream(segment.getFile())) {
+            inputStream = StandardStream.openInput();
+        } else {
+            FileInputStream fileInputStream = new FileInputStream(segment.getFile());
+            if (segment.getStart() > 0) {
+                fileInputStream.getChannel().position(segment.getStart());
+            }
+            inputStream = fileInputStream;
+        }
+        if (ioPermits != null) {
+            inputStream = new ThrottledInputStream(inputStream, ioPermits);
+        }
+        if (segment.getEnd() != FileSegment.TO_END_OF_FILE) {
+            inputStream = new SegmentInputStream(inputStream, segment.getEnd() - segment.getStart());
+        }
+
+        // only input files may be compressed, and they are never cut into segments,
+        // since the partitioned merger is not used for them
+        boolean isCompressed = false;
+        if (segment.getStart() == 0 && !isRunFile(segment.getFile())) {
+            InputStream decompressedStream = Compression.decompress(inputStream, segment.getFilepath(), bufferSize);
+            isCompressed = (decompressedStream instanceof GZIPInputStream);
+            inputStream = decompressedStream;
+        }
+
+        // decompression always runs in the background task, even in the synchronous mode
+        if (isAsynchronous || isCompressed) {
+            inputStream = new ReadAheadInputStream(inputStream, bufferSize, queueDepth, ioExecutor);
+        }
+        if (statistics != null && statistics.isEnabled()) {
+            inputStream = new MeteredInputStream(inputStream, statistics);
+        }
+        return inputStream;
+    }
+
+    LineWriter openLineWriter(File file) throws IOException {
+        return openLineWriter(file, null);
+    }
+
+    LineWriter openLineWriter(File file, TaskStatistics statistics) throws IOException {
+        FileFormat format = getFormat(file);
+        IndexedOutput indexedOutput = getIndexedOutput(file);
+        OutputStream outputStream;
+        FileOutputStream fileOutputStream = null;
+        if (StandardStream.isStandardStream(file)) {
+            outputStream = StandardStream.openOutput();
+        } else if (indexedOutput != null) {
+            // the bytes before the start offset are kept
+            fileOutputStream = new FileOutputStream(file, true);
+            fileOutputStream.getChannel().truncate(indexedOutput.getStartOffset());
+            outputStream = fileOutputStream;
+        } else {
+            fileOutputStream = new FileOutputStream(file);
+            outputStream = fileOutputStream;
+        }
+        if (ioPermits != null) {
+            outputStream = new ThrottledOutputStream(outputStream, ioPermits);
+        }
+        if (format == FileFormat.GZIP) {
+            outputStream = new GZIPOutputStream(outputStream, bufferSize);
+        }
+        // compression always runs in the background task, even in the synchronous mode
+        if (isAsynchronous || format == FileFormat.GZIP) {
+            outputStream = new WriteBehindOutputStream(outputStream, bufferSize, queueDepth, ioExecutor);
+        }
+        if (statistics != null && statistics.isEnabled()) {
+            outputStream = new MeteredOutputStream(outputStream, statistics);
+        }
+
+        if (format.isRun()) {
+            if (format.isCompressed()) {
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                outputStream = new DeflaterOutputStream(outputStream, deflater, bufferSize) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            deflater.end();
+                        }
+                    }
+                };
+            }
+            return new RunWriter(outputStream, bufferSize);
+        }
+        if (indexedOutput != null) {
+            return new IndexedLineWriter(outputStream, bufferSize, indexedOutput);
+        }
+        LineWriter lineWriter = new LineWriter(outputStream, bufferSize);
+        if (outputStream == fileOutputStream) {
+            // no filter has to see the bytes, so they can be transferred to the file channel directly
+            lineWriter.setOutputChannel(fileOutputStream.getChannel());
+        }
+        return lineWriter;
+    }
+
+    RunReader openRunReader(File file, TaskStatistics statistics) throws IOException {
+        InputStream inputStream = openInputStream(new FileSegment(file), statistics);
+        if (getFormat(file).isCompressed()) {
+            Inflater inflater = new Inflater();
+            inputStream = new InflaterInputStream(inputStream, inflater, bufferSize) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+        return new RunReader(inputStream, bufferSize);
+    }
+
+    BufferedReader openReader(File file, TaskStatistics statistics) throws IOException {
+        return openReader(new FileSegment(file), statistics);
+    }
+
+    BufferedReader openReader(FileSegment segment, TaskStatistics statistics) throws IOException {
+        return new BufferedReader(new InputStreamReader(openInputStream(segment, statistics)), bufferSize);
+    }
+
+    StreamLineReader openLineReader(File file) throws IOException {
+        return openLineReader(new FileSegment(file), null);
+    }
+
+    StreamLineReader openLineReader(File file, TaskStatistics statistics) throws IOException {
+        return openLineReader(new FileSegment(file), statistics);
+    }
+
+    StreamLineReader openLineReader(FileSegment segment, TaskStatistics statistics) throws IOException {
+        return new StreamLineReader(openInputStream(segment, statistics), bufferSize);
+    }
+
+    /**
+     * Maps the segment. The pages of a mapped file are read on access, so only the size of the segment
+     * is added to the task statistics. The windows of the file are loaded under the permits of the I/O, if any.
+     */
+    MappedLineReader openMappedLineReader(FileSegment segment, TaskStatistics statistics) throws IOException {
+        if (statistics != null && statistics.isEnabled()) {
+            long fileLength = segment.getFile().length();
+            statistics.addRead(Math.max(Math.min(segment.getEnd(), fileLength) - segment.getStart(), 0), 0);
+        }
+        return new MappedLineReader(segment, MappedLineReader.DEFAULT_WINDOW_SIZE,
+                isAsynchronous ? ioExecutor : null, ioPermits);
+    }
+
+    private static class ThrottledInputStream extends FilterInputStream {
+        private Semaphore ioPermits;
+
+        ThrottledInputStream(InputStream inputStream, Semaphore ioPermits) {
+            super(inputStream);
+            this.ioPermits = ioPermits;
+        }
+
+        @Override
+        public int read() throws IOException {
+            acquire(ioPermits);
+            try {
+                return super.read();
+            } finally {
+                ioPermits.release();
+            }
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            acquire(ioPermits);
+            try {
+                return super.read(bytes, offset, length);
+            } finally {
+                ioPermits.release();
+            }
+        }
+    }
+
+    private static class ThrottledOutputStream extends FilterOutputStream {
+        private Semaphore ioPermits;
+
+        ThrottledOutputStream(OutputStream outputStream, Semaphore ioPermits) {
+            super(outputStream);
+            this.ioPermits = ioPermits;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            acquire(ioPermits);
+            try {
+                out.write(bytes, offset, length);
+            } finally {
+                ioPermits.release();
+            }
+        }
+    }
+
+    static void acquire(Semaphore ioPermits) throws InterruptedIOException {
+        try {
+            ioPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("I/O has been interrupted");
+        }
+    }
+
+    private static class MeteredInputStream extends FilterInputStream {
+        private TaskStatistics statistics;
+
+        MeteredInputStream(InputStream inputStream, TaskStatistics statistics) {
+            super(inputStream);
+            this.statistics = statistics;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long startTime = System.nanoTime();
+            int b = super.read();
+            statistics.addRead(b >= 0 ? 1 : 0, System.nanoTime() - startTime);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            long startTime = System.nanoTime();
+            int bytesRead = super.read(bytes, offset, length);
+            statistics.addRead(Math.max(bytesRead, 0), System.nanoTime() - startTime);
+            return bytesRead;
+        }
+    }
+
+    private static class MeteredOutputStream extends FilterOutputStream {
+        private TaskStatistics statistics;
+
+        MeteredOutputStream(OutputStream outputStream, TaskStatistics statistics) {
+            super(outputStream);
+            this.statistics = statistics;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            long startTime = System.nanoTime();
+            out.write(bytes, offset, length);
+            statistics.addWrite(length, System.nanoTime() - startTime);
+        }
+
+        @Override
+        public void close() throws IOException {
+            long startTime = System.nanoTime();
+            super.close();
+            statistics.addWrite(0, System.nanoTime() - startTime);
+        }
+    }
+
+    private static class SegmentInputStream extends FilterInputStream {
+        private long remaining;
+
+        SegmentInputStream(InputStream inputStream, long length) {
+            super(inputStream);
+            remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                --remaining;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int bytesRead = super.read(bytes, offset, (int) Math.min(length, remaining));
+            if (bytesRead > 0) {
+                remaining -= bytesRead;
+            }
+            return bytesRead;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+    }
+}
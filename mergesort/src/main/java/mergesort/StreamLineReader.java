@@ -0,0 +1,44 @@
+package mergesort;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+class StreamLineReader extends ByteLineReader {
+    private InputStream inputStream;
+    private byte[] buffer;
+
+    StreamLineReader(InputStream inputStream, int bufferSize) {
+        this.inputStream = inputStream;
+        buffer = new byte[bufferSize];
+        setBuffer(ByteBuffer.wrap(buffer, 0, 0));
+    }
+
+    @Override
+    void fillBuffer(int keepFrom) throws IOException {
+        // keep the beginning of an incomplete line, growing the buffer if the line does not fit
+        int dataEnd = getBuffer().limit();
+        int remaining = dataEnd - keepFrom;
+        if (keepFrom == 0 && dataEnd == buffer.length) {
+            byte[] grownBuffer = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grownBuffer, 0, dataEnd);
+            buffer = grownBuffer;
+        } else {
+            System.arraycopy(buffer, keepFrom, buffer, 0, remaining);
+        }
+
+        int bytesRead = inputStream.read(buffer, remaining, buffer.length - remaining);
+        if (bytesRead < 0) {
+            setEndOfInput();
+            bytesRead = 0;
+        }
+        setBuffer(ByteBuffer.wrap(buffer, 0, remaining + bytesRead));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inputStream != null) {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package mergesort;
+
+/**
+ * Compares strings character by character, like {@link String#compareTo(String)}, or ignoring the case
+ * of the characters. The prefix of a string is its first 8 bytes when its characters are encoded
+ * the way UTF-8 encodes code points, which keeps their order: ASCII strings get their first 8 characters
+ * into the prefix.
+ */
+public class StringPrefixComparator implements PrefixComparator<String> {
+    private boolean isCaseInsensitive;
+
+    public StringPrefixComparator(boolean isCaseInsensitive) {
+        this.isCaseInsensitive = isCaseInsensitive;
+    }
+
+    @Override
+    public int compare(String firstLine, String secondLine) {
+        if (!isCaseInsensitive) {
+            return firstLine.compareTo(secondLine);
+        }
+        int length = Math.min(firstLine.length(), secondLine.length());
+        for (int i = 0; i < length; ++i) {
+            int difference = foldCase(firstLine.charAt(i)) - foldCase(secondLine.charAt(i));
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return firstLine.length() - secondLine.length();
+    }
+
+    @Override
+    public long getPrefix(String line) {
+        long prefix = 0;
+        int shift = Long.SIZE - Byte.SIZE;
+        for (int i = 0; i < line.length() && shift >= 0; ++i) {
+            char character = isCaseInsensitive ? foldCase(line.charAt(i)) : line.charAt(i);
+            int length = (character < 0x80) ? 1 : (character < 0x800) ? 2 : 3;
+            int encoded = (length == 1) ? character :
+                    (length == 2) ? 0xC080 | (character << 2) & 0x1F00 | character & 0x3F :
+                    0xE08080 | (character << 4) & 0x0F0000 | (character << 2) & 0x3F00 | character & 0x3F;
+            for (int j = length - 1; j >= 0 && shift >= 0; --j) {
+                prefix |= (long) ((encoded >>> (j * Byte.SIZE)) & 0xFF) << shift;
+                shift -= Byte.SIZE;
+            }
+        }
+        return prefix;
+    }
+
+    private static char foldCase(char character) {
+        return Character.toLowerCase(Character.toUpperCase(character));
+    }
+}
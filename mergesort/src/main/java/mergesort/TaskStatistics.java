@@ -0,0 +1,185 @@
+package mergesort;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Counters of a single merge, copy or run generation task. A task is executed by one thread,
+ * so the counters are plain fields, which are added to the {@link MergeStatistics} of the whole job
+ * when the task finishes.
+ * <p>
+ * Timing every line would cost more than merging it, so the time spent advancing the readers
+ * (reading and parsing) and comparing lines is measured on every {@link #SAMPLING_INTERVAL}-th line only.
+ */
+class TaskStatistics {
+    static final int SAMPLING_INTERVAL = 1024;
+
+    private MergeStatistics jobStatistics;
+    private MergeTaskEvent event = new MergeTaskEvent();
+    private String stage;
+    private String outputFilepath = "";
+    private int inputFilesNumber;
+
+    private long startTime = System.nanoTime();
+    private long elapsedNanos;
+    private long linesWritten;
+    private long lostLines;
+    private long bytesRead;
+    private long bytesWritten;
+    private long readNanos;
+    private long writeNanos;
+    private long advanceNanos;
+    private long compareNanos;
+    private long sortNanos;
+
+    /**
+     * Creates the counters of a task of the given job; the task is not metered if the job statistics are null.
+     */
+    TaskStatistics(MergeStatistics jobStatistics, String stage) {
+        this.jobStatistics = jobStatistics;
+        this.stage = stage;
+        event.begin();
+    }
+
+    boolean isEnabled() {
+        return jobStatistics != null;
+    }
+
+    /**
+     * Sets the files of the task; the output file is null if the lines are handed over to the caller.
+     */
+    void setFiles(File outputFile, List<?> inputFiles) {
+        outputFilepath = (outputFile != null) ? outputFile.getPath() : "";
+        inputFilesNumber = inputFiles.size();
+    }
+
+    /**
+     * Tells whether the line about to be written should be timed.
+     */
+    boolean isSampledLine() {
+        return jobStatistics != null && (linesWritten & (SAMPLING_INTERVAL - 1)) == 0;
+    }
+
+    void addLineWritten() {
+        ++linesWritten;
+    }
+
+    void addLinesWritten(long lines) {
+        linesWritten += lines;
+    }
+
+    void addLostLines(long lines) {
+        lostLines += lines;
+    }
+
+    void addReader(SortedReader reader) {
+        lostLines += reader.getInvalidLinesNumber() + reader.getUnorderedLinesNumber();
+    }
+
+    void addRead(long bytes, long nanos) {
+        bytesRead += bytes;
+        readNanos += nanos;
+    }
+
+    void addWrite(long bytes, long nanos) {
+        bytesWritten += bytes;
+        writeNanos += nanos;
+        if (jobStatistics != null) {
+            jobStatistics.addProgress(bytes);
+        }
+    }
+
+    void addAdvanceSample(long nanos) {
+        advanceNanos += nanos * SAMPLING_INTERVAL;
+    }
+
+    void addCompareSample(long nanos) {
+        compareNanos += nanos * SAMPLING_INTERVAL;
+    }
+
+    void addSortTime(long nanos) {
+        sortNanos += nanos;
+    }
+
+    /**
+     * Adds the counters to the job statistics. Has to be called once, after all the streams of the task are closed.
+     */
+    void finish() {
+        elapsedNanos = System.nanoTime() - startTime;
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage;
+            event.outputFile = outputFilepath;
+            event.inputFiles = inputFilesNumber;
+            event.linesWritten = linesWritten;
+            event.lostLines = lostLines;
+            event.bytesRead = bytesRead;
+            event.bytesWritten = bytesWritten;
+            event.commit();
+        }
+
+        if (jobStatistics != null) {
+            jobStatistics.addTask(this);
+        }
+    }
+
+    String getStage() {
+        return stage;
+    }
+
+    String getOutputFilepath() {
+        return outputFilepath;
+    }
+
+    int getInputFilesNumber() {
+        return inputFilesNumber;
+    }
+
+    long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    long getLinesRead() {
+        return linesWritten + lostLines;
+    }
+
+    long getLinesWritten() {
+        return linesWritten;
+    }
+
+    long getLostLines() {
+        return lostLines;
+    }
+
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    long getReadNanos() {
+        return readNanos;
+    }
+
+    long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * The readers are advanced by the merging thread, so the sampled advance time includes waiting for reads,
+     * which are measured exactly; the rest of it is spent splitting and converting lines.
+     */
+    long getParseNanos() {
+        return Math.max(advanceNanos - readNanos, 0);
+    }
+
+    long getCompareNanos() {
+        return compareNanos;
+    }
+
+    long getSortNanos() {
+        return sortNanos;
+    }
+}
@@ -0,0 +1,153 @@
+package mergesort;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Directories of the temporary files of a job, which may lie on different devices. A new file is placed
+ * in the least loaded directory, the one which has received the fewest bytes of the job, preferring
+ * the directories with enough usable space and on devices holding none of the files the new one is written
+ * from, so that a merger does not read and write the same device.
+ * <p>
+ * A writer reserves the expected length of its file before it starts: if the usable space of the directory,
+ * less the reservations of the other writers, is too small, the write fails at once instead of running
+ * out of space halfway.
+ */
+class TemporaryDirectories {
+    private static final String PREFIX = "mergesort";
+
+    private List<Directory> directories = new ArrayList<>();
+    // the directories of the files created here, by their paths
+    private Map<File, Directory> fileDirectories = new HashMap<>();
+
+    /**
+     * Creates the directories if they do not exist; no directories stand for the default temporary directory.
+     */
+    TemporaryDirectories(List<File> directories) throws IOException {
+        if (directories.isEmpty()) {
+            directories = List.of(new File(System.getProperty("java.io.tmpdir")));
+        }
+        for (File directory : directories) {
+            Files.createDirectories(directory.toPath());
+            this.directories.add(new Directory(directory, getFileStore(directory)));
+        }
+    }
+
+    File getFirstDirectory() {
+        return directories.get(0).path;
+    }
+
+    /**
+     * Creates an empty file of which about the given number of bytes is expected, written from the source files.
+     */
+    synchronized File createFile(String suffix, long length, Collection<File> sourceFiles) throws IOException {
+        Set<FileStore> sourceStores = new HashSet<>();
+        for (File sourceFile : sourceFiles) {
+            Directory directory = fileDirectories.get(sourceFile);
+            FileStore store = (directory != null) ? directory.store : getFileStore(sourceFile);
+            if (store != null) {
+                sourceStores.add(store);
+            }
+        }
+
+        Directory bestDirectory = null;
+        int bestRank = Integer.MAX_VALUE;
+        for (Directory directory : directories) {
+            int rank = (directory.getAvailableSpace() >= length ? 0 : 2) +
+                    (directory.store == null || !sourceStores.contains(directory.store) ? 0 : 1);
+            if (rank < bestRank || (rank == bestRank && directory.load < bestDirectory.load)) {
+                bestDirectory = directory;
+                bestRank = rank;
+            }
+        }
+
+        File file = File.createTempFile(PREFIX, suffix, bestDirectory.path);
+        bestDirectory.load += length;
+        fileDirectories.put(file, bestDirectory);
+        return file;
+    }
+
+    /**
+     * Reserves the space for a file of the given length about to be written and returns the number of bytes
+     * reserved, which is 0 for files outside the temporary directories and for compressed files, whose
+     * lengths are not known in advance.
+     */
+    synchronized long reserve(File file, long length, boolean isCompressed) throws IOException {
+        Directory directory = findDirectory(file);
+        if (directory == null || isCompressed) {
+            return 0;
+        }
+        long availableSpace = directory.getAvailableSpace();
+        if (availableSpace < length) {
+            throw new IOException(String.format("Not enough space for temporary file \"%s\": " +
+                    "%d bytes needed, %d bytes available in \"%s\"", file.getPath(), length,
+                    Math.max(availableSpace, 0), directory.path.getPath()));
+        }
+        directory.reservedSpace += length;
+        return length;
+    }
+
+    synchronized void release(File file, long reservedSpace) {
+        Directory directory = findDirectory(file);
+        if (directory != null) {
+            directory.reservedSpace -= reservedSpace;
+        }
+    }
+
+    /**
+     * Finds the directory of a file created here or of another file in one of the directories,
+     * such as a file of the journal.
+     */
+    private Directory findDirectory(File file) {
+        Directory directory = fileDirectories.get(file);
+        if (directory != null) {
+            return directory;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        for (Directory candidate : directories) {
+            if (candidate.path.getAbsoluteFile().equals(parent)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the store of an existing file, or null if it is unknown, for example for a stream.
+     */
+    private static FileStore getFileStore(File file) {
+        if (StandardStream.isStandardStream(file)) {
+            return null;
+        }
+        try {
+            return Files.getFileStore(file.toPath());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class Directory {
+        private File path;
+        private FileStore store;
+        private long load = 0;
+        private long reservedSpace = 0;
+
+        Directory(File path, FileStore store) {
+            this.path = path;
+            this.store = store;
+        }
+
+        long getAvailableSpace() {
+            return path.getUsableSpace() - reservedSpace;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package mergesort;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compares lines as sequences of unsigned bytes.
+ * For UTF-8 text it is the same as comparing the lines code point by code point.
+ */
+public class UnsignedByteComparator implements ByteLineComparator {
+    @Override
+    public int compare(ByteBuffer firstLine, ByteBuffer secondLine) {
+        int mismatch = firstLine.mismatch(secondLine);
+        if (mismatch < 0) {
+            return 0;
+        }
+        if (mismatch == firstLine.remaining() || mismatch == secondLine.remaining()) {
+            return firstLine.remaining() - secondLine.remaining();
+        }
+        return Integer.compare(firstLine.get(firstLine.position() + mismatch) & 0xFF,
+                secondLine.get(secondLine.position() + mismatch) & 0xFF);
+    }
+}
@@ -0,0 +1,159 @@
+package mergesort;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes to the underlying stream in a background task, so that the producer does not wait for the disk
+ * unless queueDepth blocks are already pending.
+ */
+class WriteBehindOutputStream extends OutputStream {
+    private static final Block FLUSH = new Block(0);
+    private static final Block END_OF_OUTPUT = new Block(0);
+
+    private OutputStream outputStream;
+    private BlockingQueue<Block> filledBlocks;
+    private BlockingQueue<Block> freeBlocks;
+    private Semaphore flushedSignal = new Semaphore(0);
+    private Future<?> writingTask;
+    private volatile IOException writeError;
+
+    private Block currentBlock;
+    private boolean isClosed = false;
+
+    WriteBehindOutputStream(OutputStream outputStream, int blockSize, int queueDepth, ExecutorService executor) {
+        this.outputStream = outputStream;
+        filledBlocks = new ArrayBlockingQueue<>(queueDepth + 2);
+        freeBlocks = new ArrayBlockingQueue<>(queueDepth + 1);
+        for (int i = 0; i < queueDepth; ++i) {
+            freeBlocks.add(new Block(blockSize));
+        }
+        currentBlock = new Block(blockSize);
+        writingTask = executor.submit(this::writeBlocks);
+    }
+
+    private void writeBlocks() {
+        try {
+            for (;;) {
+                Block block = filledBlocks.take();
+                if (block == END_OF_OUTPUT) {
+                    return;
+                }
+                if (block == FLUSH) {
+                    try {
+                        outputStream.flush();
+                    } catch (IOException e) {
+                        writeError = e;
+                    }
+                    flushedSignal.release();
+                    continue;
+                }
+
+                // after a failure the blocks are still consumed, so that the producer never blocks forever
+                if (writeError == null) {
+                    try {
+                        outputStream.write(block.data, 0, block.length);
+                    } catch (IOException e) {
+                        writeError = e;
+                    }
+                }
+                block.length = 0;
+                freeBlocks.put(block);
+            }
+        } catch (InterruptedException e) {
+            // the stream has been closed
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (currentBlock.length == currentBlock.data.length) {
+            submitCurrentBlock();
+        }
+        currentBlock.data[currentBlock.length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (currentBlock.length == currentBlock.data.length) {
+                submitCurrentBlock();
+            }
+            int bytesWritten = Math.min(length, currentBlock.data.length - currentBlock.length);
+            System.arraycopy(bytes, offset, currentBlock.data, currentBlock.length, bytesWritten);
+            currentBlock.length += bytesWritten;
+            offset += bytesWritten;
+            length -= bytesWritten;
+        }
+    }
+
+    private void submitCurrentBlock() throws IOException {
+        checkWriteError();
+        try {
+            filledBlocks.put(currentBlock);
+            currentBlock = freeBlocks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Writing has been interrupted");
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (currentBlock.length > 0) {
+            submitCurrentBlock();
+        }
+        try {
+            filledBlocks.put(FLUSH);
+            flushedSignal.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Writing has been interrupted");
+        }
+        checkWriteError();
+    }
+
+    private void checkWriteError() throws IOException {
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+
+        try {
+            flush();
+            filledBlocks.put(END_OF_OUTPUT);
+            writingTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Writing has been interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            writingTask.cancel(true);
+            outputStream.close();
+        }
+    }
+
+    private static class Block {
+        private byte[] data;
+        private int length = 0;
+
+        Block(int size) {
+            data = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package mergesort;
+
+import mergesort.exceptions.FileMergerException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MergeJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsInputAndOutputFilesInWorkDirectory() throws IOException, FileMergerException {
+        File workDirectory = folder.newFolder("work");
+        // the names look like the files of the sorter, but the files belong to the user
+        File ownFile = writeFile(new File(workDirectory, "mergesort-notes.txt"), List.of("notes"));
+        List<String> inputFilenames = new ArrayList<>();
+        List<String> expectedLines = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            File directory = (i % 2 == 0) ? workDirectory : folder.getRoot();
+            List<String> lines = numbers(i, 4, 1000);
+            inputFilenames.add(writeFile(new File(directory, "merge-" + i + ".txt"), lines).getPath());
+            expectedLines.addAll(lines);
+        }
+        expectedLines.sort(Comparator.comparingLong(Long::parseLong));
+        File resultFile = new File(workDirectory, "merge-out.txt");
+
+        FileSorter<Long> fileSorter = FileSorter.forLongs(new DecimalLongConverter(), Long::compare);
+        fileSorter.setWorkDirectory(workDirectory.getPath());
+        // the intermediate mergers are recorded in the journal
+        fileSorter.setMaxFanIn(2);
+        fileSorter.mergeSortedFiles(resultFile.getPath(), inputFilenames.toArray(new String[0]));
+
+        assertEquals(expectedLines, Files.readAllLines(resultFile.toPath()));
+        for (String inputFilename : inputFilenames) {
+            assertTrue(inputFilename + " has been deleted", new File(inputFilename).isFile());
+        }
+        assertTrue(ownFile.isFile());
+        assertFalse(MergeJournal.getJobDirectory(workDirectory).exists());
+    }
+
+    @Test
+    public void keepsInputFilesInJobDirectory() throws IOException {
+        File workDirectory = folder.newFolder("work");
+        File jobDirectory = MergeJournal.getJobDirectory(workDirectory);
+        Files.createDirectories(jobDirectory.toPath());
+        File inputFile = writeFile(new File(jobDirectory, "input.txt"), List.of("1", "2"));
+        File staleFile = writeFile(new File(jobDirectory, "mergesort1.tmp"), List.of("3"));
+
+        MergeJournal journal = new MergeJournal(workDirectory, "job", List.of(inputFile));
+        assertTrue(inputFile.isFile());
+        assertFalse(staleFile.exists());
+
+        journal.clear();
+        assertTrue(inputFile.isFile());
+    }
+
+    private static File writeFile(File file, List<String> lines) throws IOException {
+        Files.write(file.toPath(), lines);
+        return file;
+    }
+
+    private static List<String> numbers(long first, long step, int count) {
+        List<String> numbers = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            numbers.add(String.valueOf(first + i * step));
+        }
+        return numbers;
+    }
+}
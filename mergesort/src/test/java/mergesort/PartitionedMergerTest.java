@@ -0,0 +1,98 @@
+package mergesort;
+
+import mergesort.exceptions.FileMergerException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionedMergerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mergesFilesWhoseKeysAreMostlyDuplicates() throws IOException, FileMergerException {
+        List<String> firstLines = repeat("5", 5000);
+        firstLines.addAll(List.of("6", "7", "8"));
+        List<String> secondLines = repeat("5", 5000);
+        secondLines.add("9");
+        File firstFile = writeFile("dup1.txt", firstLines);
+        File secondFile = writeFile("dup2.txt", secondLines);
+        File resultFile = new File(folder.getRoot(), "result.txt");
+
+        mergePartitioned(resultFile, firstFile, secondFile);
+
+        List<String> expectedLines = new ArrayList<>(firstLines);
+        expectedLines.addAll(secondLines);
+        expectedLines.sort(Comparator.comparingLong(Long::parseLong));
+        assertEquals(expectedLines, Files.readAllLines(resultFile.toPath()));
+    }
+
+    @Test
+    public void keepsPartlySortedFilesInOrder() throws IOException, FileMergerException {
+        List<String> sortedLines = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            sortedLines.add(String.valueOf(2 * i));
+        }
+        // a great line early in the file lies in the first segment, whatever its binary search finds
+        List<String> partlySortedLines = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            partlySortedLines.add(String.valueOf(2 * i + 1));
+        }
+        partlySortedLines.add(100, "99999");
+        Collections.swap(partlySortedLines, 1500, 2500);
+        File sortedFile = writeFile("sorted.txt", sortedLines);
+        File partlySortedFile = writeFile("partly-sorted.txt", partlySortedLines);
+        File resultFile = new File(folder.getRoot(), "result.txt");
+
+        mergePartitioned(resultFile, sortedFile, partlySortedFile);
+
+        List<String> resultLines = Files.readAllLines(resultFile.toPath());
+        for (int i = 1; i < resultLines.size(); ++i) {
+            assertTrue("line " + (i + 1) + " is out of order",
+                    Long.parseLong(resultLines.get(i - 1)) <= Long.parseLong(resultLines.get(i)));
+        }
+        assertTrue(resultLines.containsAll(sortedLines));
+    }
+
+    @Test
+    public void writesEmptyFileWhenNoSegmentsAreMerged() throws IOException {
+        File resultFile = folder.newFile("result.txt");
+        Files.writeString(resultFile.toPath(), "stale\n");
+        MergeEngine<?> mergeEngine = new LongMergeEngine(new DecimalLongConverter(), Long::compare);
+
+        mergeEngine.mergeMultipleFiles(resultFile, List.of(), new LostLinesReport(), mergeEngine.startTask("merge"));
+
+        assertEquals(0, resultFile.length());
+    }
+
+    private void mergePartitioned(File resultFile, File... inputFiles) throws FileMergerException {
+        FileSorter<Long> fileSorter = FileSorter.forLongs(new DecimalLongConverter(), Long::compare);
+        fileSorter.setPartitionsNumber(3);
+        String[] inputFilenames = new String[inputFiles.length];
+        for (int i = 0; i < inputFiles.length; ++i) {
+            inputFilenames[i] = inputFiles[i].getPath();
+        }
+        fileSorter.mergeSortedFiles(resultFile.getPath(), inputFilenames);
+    }
+
+    private File writeFile(String filename, List<String> lines) throws IOException {
+        File file = new File(folder.getRoot(), filename);
+        Files.write(file.toPath(), lines);
+        return file;
+    }
+
+    private static List<String> repeat(String line, int times) {
+        return new ArrayList<>(Collections.nCopies(times, line));
+    }
+}
@@ -0,0 +1,58 @@
+package mergesort;
+
+import mergesort.exceptions.FileMergerException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+public class ShardCoordinatorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsPartlySortedFilesInOrder() throws IOException, FileMergerException {
+        List<String> sortedLines = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            sortedLines.add(String.valueOf(2 * i));
+        }
+        // the byte ranges of the shards hold lines of other shards, which the workers have to drop
+        List<String> partlySortedLines = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            partlySortedLines.add(String.valueOf(2 * i + 1));
+        }
+        partlySortedLines.add(100, "99999");
+        Collections.swap(partlySortedLines, 1500, 2500);
+        File sortedFile = writeFile("sorted.txt", sortedLines);
+        File partlySortedFile = writeFile("partly-sorted.txt", partlySortedLines);
+        File resultFile = new File(folder.getRoot(), "result.txt");
+
+        FileSorter<Long> fileSorter = FileSorter.forLongs(new DecimalLongConverter(), Long::compare);
+        fileSorter.setWorkerProcesses(3, List.of(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), "MainClass", "-i", "-a"));
+        fileSorter.mergeSortedFiles(resultFile.getPath(), sortedFile.getPath(), partlySortedFile.getPath());
+
+        List<String> resultLines = Files.readAllLines(resultFile.toPath());
+        for (int i = 1; i < resultLines.size(); ++i) {
+            assertTrue("line " + (i + 1) + " is out of order",
+                    Long.parseLong(resultLines.get(i - 1)) <= Long.parseLong(resultLines.get(i)));
+        }
+        assertTrue(resultLines.containsAll(sortedLines));
+    }
+
+    private File writeFile(String filename, List<String> lines) throws IOException {
+        File file = new File(folder.getRoot(), filename);
+        Files.write(file.toPath(), lines);
+        return file;
+    }
+}
@@ -0,0 +1,76 @@
+package mergesort;
+
+import mergesort.exceptions.FileMergerException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class SparseIndexTest {
+    private static final String NUMBERS = "numbers ascending";
+    private static final String DECIMAL_NUMBERS = "decimal numbers ascending";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rebuildsIndexWrittenForAnotherOrderWhenAppending() throws IOException, FileMergerException {
+        File resultFile = new File(folder.getRoot(), "result.txt");
+        File evenFile = writeFile("even.txt", numbers(0, 2, 2000));
+        File oddFile = writeFile("odd.txt", numbers(2001, 2, 1000));
+        mergeIndexed(resultFile, NUMBERS, 64, false, evenFile);
+        assertNotNull(SparseIndex.load(resultFile, NUMBERS));
+
+        // the new lines go in the middle of the file, so its first part is kept together with its index
+        mergeIndexed(resultFile, DECIMAL_NUMBERS, 32, true, oddFile);
+
+        List<String> expectedLines = numbers(0, 2, 2000);
+        expectedLines.addAll(numbers(2001, 2, 1000));
+        expectedLines.sort(Comparator.comparingLong(Long::parseLong));
+        assertEquals(expectedLines, Files.readAllLines(resultFile.toPath()));
+        assertNull(SparseIndex.load(resultFile, NUMBERS));
+        assertNotNull(SparseIndex.load(resultFile, DECIMAL_NUMBERS));
+
+        // the index matches the one built from scratch for the new order, even in the kept part
+        File copiedFile = new File(folder.getRoot(), "copy.txt");
+        Files.copy(resultFile.toPath(), copiedFile.toPath());
+        SparseIndex.build(new StreamFactory(), copiedFile, copiedFile.length(), 32, DECIMAL_NUMBERS)
+                .write(copiedFile, copiedFile.length());
+        assertArrayEquals(Files.readAllBytes(SparseIndex.getIndexFile(copiedFile).toPath()),
+                Files.readAllBytes(SparseIndex.getIndexFile(resultFile).toPath()));
+    }
+
+    private static void mergeIndexed(File resultFile, String jobDescription, int indexInterval, boolean isAppend,
+            File inputFile) throws FileMergerException {
+        FileSorter<Long> fileSorter = FileSorter.forLongs(new DecimalLongConverter(), Long::compare);
+        fileSorter.setJobDescription(jobDescription);
+        fileSorter.setIndexInterval(indexInterval);
+        fileSorter.setAppend(isAppend);
+        fileSorter.mergeSortedFiles(resultFile.getPath(), inputFile.getPath());
+    }
+
+    private File writeFile(String filename, List<String> lines) throws IOException {
+        File file = new File(folder.getRoot(), filename);
+        Files.write(file.toPath(), lines);
+        return file;
+    }
+
+    private static List<String> numbers(long first, long step, int count) {
+        List<String> numbers = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            numbers.add(String.valueOf(first + i * step));
+        }
+        return numbers;
+    }
+}